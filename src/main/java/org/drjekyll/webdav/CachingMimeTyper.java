@@ -0,0 +1,137 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import org.drjekyll.webdav.store.StoredObject;
+import org.drjekyll.webdav.store.WebdavStore;
+
+/**
+ * Detects mime types from the type the store keeps for a resource, or else from the extension of
+ * its name. Extensions are looked up in the mapping of the servlet container first and in a table
+ * of common types second, and the result is cached per extension, so resolving the type of each
+ * member of a large listing costs a map lookup.
+ */
+public class CachingMimeTyper implements MimeTyper {
+
+    private static final int CACHE_SIZE = 1024;
+
+    private static final String UNKNOWN = "";
+
+    private static final Map<String, String> EXTENSIONS = new HashMap<>();
+
+    static {
+        EXTENSIONS.put("css", "text/css");
+        EXTENSIONS.put("csv", "text/csv");
+        EXTENSIONS.put("htm", "text/html");
+        EXTENSIONS.put("html", "text/html");
+        EXTENSIONS.put("ics", "text/calendar");
+        EXTENSIONS.put("md", "text/markdown");
+        EXTENSIONS.put("txt", "text/plain");
+        EXTENSIONS.put("vcf", "text/vcard");
+        EXTENSIONS.put("xml", "application/xml");
+        EXTENSIONS.put("js", "application/javascript");
+        EXTENSIONS.put("json", "application/json");
+        EXTENSIONS.put("pdf", "application/pdf");
+        EXTENSIONS.put("zip", "application/zip");
+        EXTENSIONS.put("gz", "application/gzip");
+        EXTENSIONS.put("tar", "application/x-tar");
+        EXTENSIONS.put("doc", "application/msword");
+        EXTENSIONS.put("docx",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document"
+        );
+        EXTENSIONS.put("xls", "application/vnd.ms-excel");
+        EXTENSIONS.put("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        EXTENSIONS.put("ppt", "application/vnd.ms-powerpoint");
+        EXTENSIONS.put("pptx",
+            "application/vnd.openxmlformats-officedocument.presentationml.presentation"
+        );
+        EXTENSIONS.put("odt", "application/vnd.oasis.opendocument.text");
+        EXTENSIONS.put("ods", "application/vnd.oasis.opendocument.spreadsheet");
+        EXTENSIONS.put("odp", "application/vnd.oasis.opendocument.presentation");
+        EXTENSIONS.put("gif", "image/gif");
+        EXTENSIONS.put("ico", "image/vnd.microsoft.icon");
+        EXTENSIONS.put("jpeg", "image/jpeg");
+        EXTENSIONS.put("jpg", "image/jpeg");
+        EXTENSIONS.put("png", "image/png");
+        EXTENSIONS.put("svg", "image/svg+xml");
+        EXTENSIONS.put("webp", "image/webp");
+        EXTENSIONS.put("mp3", "audio/mpeg");
+        EXTENSIONS.put("wav", "audio/wav");
+        EXTENSIONS.put("mp4", "video/mp4");
+        EXTENSIONS.put("webm", "video/webm");
+    }
+
+    private final WebdavStore store;
+
+    private final Function<String, String> containerMapping;
+
+    private final Map<String, String> cache =
+        new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    /**
+     * @param store            the store, asked for the type of a resource if it is not passed
+     * @param containerMapping the mapping of the servlet container from a file name to its mime
+     *                         type, e.g. {@code ServletContext::getMimeType}
+     */
+    public CachingMimeTyper(WebdavStore store, Function<String, String> containerMapping) {
+        this.store = store;
+        this.containerMapping = containerMapping;
+    }
+
+    @Override
+    public String getMimeType(Transaction transaction, String path) {
+        return getMimeType(transaction, path, store.getStoredObject(transaction, path));
+    }
+
+    @Override
+    public String getMimeType(Transaction transaction, String path, @Nullable StoredObject so) {
+        if (so != null && so.getMimeType() != null) {
+            return so.getMimeType();
+        }
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        if (dot == -1) {
+            return containerMapping.apply(name);
+        }
+        String extension = name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        String mimeType;
+        synchronized (cache) {
+            mimeType = cache.get(extension);
+        }
+        if (mimeType == null) {
+            mimeType = containerMapping.apply("file." + extension);
+            if (mimeType == null) {
+                mimeType = EXTENSIONS.getOrDefault(extension, UNKNOWN);
+            }
+            synchronized (cache) {
+                cache.put(extension, mimeType);
+            }
+        }
+        return mimeType.equals(UNKNOWN) ? null : mimeType;
+    }
+
+}
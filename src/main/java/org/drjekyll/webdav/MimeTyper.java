@@ -1,5 +1,8 @@
 package org.drjekyll.webdav;
 
+import javax.annotation.Nullable;
+import org.drjekyll.webdav.store.StoredObject;
+
 @FunctionalInterface
 public interface MimeTyper {
 
@@ -11,4 +14,17 @@ public interface MimeTyper {
      * @return
      */
     String getMimeType(Transaction transaction, String path);
+
+    /**
+     * Detect the mime type of an object which was already looked up, e.g. a member of a listed
+     * collection. Implementations should avoid looking it up again.
+     *
+     * @param transaction indicates that the method is within the scope of a WebDAV transaction
+     * @param path        path of the object
+     * @param so          the object, {@code null} if it was not found
+     * @return the mime type, {@code null} if unknown
+     */
+    default String getMimeType(Transaction transaction, String path, @Nullable StoredObject so) {
+        return getMimeType(transaction, path);
+    }
 }
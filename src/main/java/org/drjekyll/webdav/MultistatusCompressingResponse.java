@@ -0,0 +1,97 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Compresses multistatus bodies (PROPFIND, REPORT and error reports) with gzip for clients that
+ * accept it. The writer flushes the compressor whenever it is flushed, so a method writing its
+ * multistatus in parts still streams it. The fastest compression level is used, since listings
+ * compress well anyway and latency matters more than the last few percent.
+ */
+class MultistatusCompressingResponse extends HttpServletResponseWrapper {
+
+    private static final int BUF_SIZE = 8192;
+
+    private int status = SC_OK;
+
+    private PrintWriter writer;
+
+    MultistatusCompressingResponse(HttpServletResponse response) {
+        super(response);
+    }
+
+    /**
+     * @return true if the client accepts gzip encoded responses
+     */
+    static boolean acceptsGzip(HttpServletRequest req) {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String member : acceptEncoding.split(",")) {
+            String[] parts = member.trim().toLowerCase(Locale.ROOT).split(";");
+            if (parts[0].trim().equals("gzip")) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        status = sc;
+        super.setStatus(sc);
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (status != WebdavStatus.SC_MULTI_STATUS) {
+            return super.getWriter();
+        }
+        if (writer == null) {
+            setHeader("Content-Encoding", "gzip");
+            addHeader("Vary", "Accept-Encoding");
+            OutputStream out = new GZIPOutputStream(super.getOutputStream(), BUF_SIZE, true) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+            writer = new PrintWriter(new OutputStreamWriter(out, getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    /**
+     * Completes the compressed body, if any.
+     */
+    void finish() {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+}
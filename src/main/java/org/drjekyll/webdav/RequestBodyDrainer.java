@@ -0,0 +1,127 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Deals with request bodies a method did not consume, e.g. because it rejected the request. Up to
+ * {@code limit} bytes are skipped in bulk so that the connection can be reused for the next
+ * request. Larger bodies are not read at all; the connection is marked to be closed instead.
+ * Bodies of requests with {@code Expect: 100-continue} are never read, since reading would ask the
+ * client to send a body the server is going to discard.
+ * <p>
+ * The drainer counts the drained bytes and the closed connections, so that the cost of rejected
+ * uploads can be monitored.
+ */
+@Slf4j
+public class RequestBodyDrainer {
+
+    private static final int BUF_SIZE = 8192;
+
+    private final long limit;
+
+    private final AtomicLong drainedBytes = new AtomicLong();
+
+    private final AtomicLong drainedRequests = new AtomicLong();
+
+    private final AtomicLong closedConnections = new AtomicLong();
+
+    /**
+     * @param limit maximum number of bytes to skip per request, 0 to never skip
+     */
+    public RequestBodyDrainer(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Consumes the rest of the request body or marks the connection to be closed.
+     *
+     * @return true if the body has been consumed completely
+     */
+    public boolean drain(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (req.getContentLengthLong() == 0L) {
+            return true;
+        }
+        ServletInputStream in = req.getInputStream();
+        if (in.isFinished()) {
+            return true;
+        }
+        if (limit <= 0L
+            || "100-continue".equalsIgnoreCase(req.getHeader("Expect"))
+            || req.getContentLengthLong() > limit) {
+            close(resp);
+            return false;
+        }
+
+        byte[] buffer = new byte[BUF_SIZE];
+        long drained = 0L;
+        int read = 0;
+        while (drained <= limit && read != -1) {
+            read = in.read(buffer, 0, (int) Math.min(buffer.length, limit - drained + 1L));
+            if (read > 0) {
+                drained += read;
+            }
+        }
+        if (drained > 0L) {
+            drainedBytes.addAndGet(drained);
+            drainedRequests.incrementAndGet();
+            log.trace("Drained {} bytes of unconsumed request body", drained);
+        }
+        if (read != -1) {
+            close(resp);
+            return false;
+        }
+        return true;
+    }
+
+    private void close(HttpServletResponse resp) {
+        if (resp.isCommitted()) {
+            log.trace("Unconsumed request body, but the response is already committed");
+            return;
+        }
+        resp.setHeader("Connection", "close");
+        closedConnections.incrementAndGet();
+        log.trace("Unconsumed request body, closing the connection");
+    }
+
+    /**
+     * @return number of bytes of unconsumed request bodies that have been skipped
+     */
+    public long getDrainedBytes() {
+        return drainedBytes.get();
+    }
+
+    /**
+     * @return number of requests whose unconsumed body has been skipped
+     */
+    public long getDrainedRequests() {
+        return drainedRequests.get();
+    }
+
+    /**
+     * @return number of connections marked to be closed instead of skipping the body
+     */
+    public long getClosedConnections() {
+        return closedConnections.get();
+    }
+
+}
@@ -20,8 +20,13 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.security.Principal;
+import java.time.Duration;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -30,9 +35,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.drjekyll.webdav.copy.DoCopy;
 import org.drjekyll.webdav.exceptions.UnauthenticatedException;
 import org.drjekyll.webdav.exceptions.WebdavException;
+import org.drjekyll.webdav.jobs.AsyncMethod;
+import org.drjekyll.webdav.jobs.DoJobStatus;
+import org.drjekyll.webdav.jobs.JobScheduler;
 import org.drjekyll.webdav.locking.DoLock;
 import org.drjekyll.webdav.locking.DoUnlock;
 import org.drjekyll.webdav.locking.ResourceLocks;
+import org.drjekyll.webdav.methods.ChangeJournal;
+import org.drjekyll.webdav.methods.CompressedVariantCache;
 import org.drjekyll.webdav.methods.DoDelete;
 import org.drjekyll.webdav.methods.DoGet;
 import org.drjekyll.webdav.methods.DoHead;
@@ -43,7 +53,12 @@ import org.drjekyll.webdav.methods.DoOptions;
 import org.drjekyll.webdav.methods.DoPut;
 import org.drjekyll.webdav.prop.DoPropfind;
 import org.drjekyll.webdav.prop.DoProppatch;
+import org.drjekyll.webdav.prop.DoReport;
+import org.drjekyll.webdav.prop.PropfindCache;
+import org.drjekyll.webdav.prop.PropfindPolicy;
 import org.drjekyll.webdav.store.LocalFileSystemStore;
+import org.drjekyll.webdav.store.LocalPropertyStore;
+import org.drjekyll.webdav.store.PropertyStore;
 import org.drjekyll.webdav.store.WebdavStore;
 
 /**
@@ -61,6 +76,20 @@ public class WebdavServlet extends HttpServlet {
 
     private static final boolean READ_ONLY = false;
 
+    private static final String DEFAULT_JOB_PATH = "/.jobs";
+
+    private static final int DEFAULT_DRAIN_LIMIT = 64 * 1024;
+
+    private static final int DEFAULT_COMPRESSION_CACHE_SIZE = 16 * 1024 * 1024;
+
+    private static final int DEFAULT_SYNC_JOURNAL_SIZE = 10000;
+
+    private static final int DEFAULT_PROPFIND_PAGE_SIZE = 1000;
+
+    private static final int DEFAULT_PROPFIND_CACHE_SIZE = 8 * 1024 * 1024;
+
+    private static final int DEFAULT_PROPERTY_CACHE_SIZE = 1000;
+
     private static final long serialVersionUID = -8439635344436347628L;
 
     private transient ResourceLocks resourceLocks = new ResourceLocks();
@@ -69,12 +98,49 @@ public class WebdavServlet extends HttpServlet {
 
     private WebdavStore store;
 
+    private transient JobScheduler jobScheduler;
+
+    private String jobPath = DEFAULT_JOB_PATH;
+
+    private long maxUploadSize = -1L;
+
+    private boolean digestLinking;
+
+    private transient CompressedVariantCache compressedVariants;
+
+    private boolean multistatusCompression;
+
+    private boolean syncCollection;
+
+    private boolean collectionTags;
+
+    private int propfindPageSize = DEFAULT_PROPFIND_PAGE_SIZE;
+
+    private transient ExecutorService propfindPrefetchExecutor;
+
+    private transient PropfindPolicy propfindPolicy;
+
+    private transient PropfindCache propfindCache;
+
+    private transient PropertyStore propertyStore;
+
+    private transient ChangeJournal changeJournal;
+
+    private transient RequestBodyDrainer requestBodyDrainer =
+        new RequestBodyDrainer(DEFAULT_DRAIN_LIMIT);
+
     private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
         resourceLocks = new ResourceLocks();
     }
 
     @Override
     public void destroy() {
+        if (jobScheduler != null) {
+            jobScheduler.destroy();
+        }
+        if (propfindPrefetchExecutor != null) {
+            propfindPrefetchExecutor.shutdownNow();
+        }
         if (store != null) {
             store.destroy();
         }
@@ -103,6 +169,82 @@ public class WebdavServlet extends HttpServlet {
 
         int noContentLengthHeader = getIntInitParameter();
 
+        String maxUploadSizeParameter = getInitParameter("maxUploadSize");
+        if (maxUploadSizeParameter != null && !maxUploadSizeParameter.trim().isEmpty()) {
+            maxUploadSize = Long.parseLong(maxUploadSizeParameter.trim());
+        }
+
+        digestLinking = "1".equals(getInitParameter("digestLinking"));
+
+        if ("1".equals(getInitParameter("compression"))) {
+            compressedVariants = new CompressedVariantCache(getIntInitParameter(
+                "compressionCacheSize",
+                DEFAULT_COMPRESSION_CACHE_SIZE
+            ));
+        }
+
+        multistatusCompression = "1".equals(getInitParameter("multistatusCompression"));
+
+        syncCollection = "1".equals(getInitParameter("syncCollection"));
+        collectionTags = "1".equals(getInitParameter("collectionTags"));
+        boolean cachePropfind = "1".equals(getInitParameter("propfindCache"));
+        if (syncCollection || collectionTags || cachePropfind) {
+            // without sync-collection only the change tags are needed, not the changes
+            changeJournal = new ChangeJournal(syncCollection ? getIntInitParameter(
+                "syncJournalSize",
+                DEFAULT_SYNC_JOURNAL_SIZE
+            ) : 0);
+        }
+        if (cachePropfind) {
+            propfindCache = new PropfindCache(changeJournal, getIntInitParameter(
+                "propfindCacheSize",
+                DEFAULT_PROPFIND_CACHE_SIZE
+            ));
+        }
+
+        propfindPageSize = getIntInitParameter("propfindPageSize", DEFAULT_PROPFIND_PAGE_SIZE);
+
+        String propertyStoreParameter = getInitParameter("propertyStore");
+        if (propertyStoreParameter != null && !propertyStoreParameter.trim().isEmpty()) {
+            propertyStore = new LocalPropertyStore(new File(propertyStoreParameter.trim()),
+                getIntInitParameter("propertyCacheSize", DEFAULT_PROPERTY_CACHE_SIZE)
+            );
+        }
+
+        String propfindPolicyParameter = getInitParameter("propfindPolicy");
+        if (propfindPolicyParameter != null && !propfindPolicyParameter.trim().isEmpty()) {
+            propfindPolicy = PropfindPolicy.parse(propfindPolicyParameter);
+        }
+
+        int propfindPrefetchThreads = getIntInitParameter("propfindPrefetchThreads", 0);
+        if (propfindPrefetchThreads > 0) {
+            AtomicInteger threadCount = new AtomicInteger();
+            propfindPrefetchExecutor = Executors.newFixedThreadPool(propfindPrefetchThreads,
+                runnable -> {
+                    Thread thread = new Thread(runnable,
+                        "webdav-prefetch-" + threadCount.incrementAndGet()
+                    );
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            );
+        }
+
+        requestBodyDrainer =
+            new RequestBodyDrainer(getIntInitParameter("drainLimit", DEFAULT_DRAIN_LIMIT));
+
+        int asyncJobThreads = getIntInitParameter("asyncJobThreads", 0);
+        if (asyncJobThreads > 0) {
+            jobScheduler = new JobScheduler(asyncJobThreads,
+                getIntInitParameter("asyncJobQueueSize", 16),
+                Duration.ofSeconds(getIntInitParameter("asyncJobRetention", 3600))
+            );
+            String asyncJobPath = getInitParameter("asyncJobPath");
+            if (asyncJobPath != null && !asyncJobPath.isEmpty()) {
+                jobPath = asyncJobPath;
+            }
+        }
+
         init(webdavStore,
             dftIndexFile,
             insteadOf404,
@@ -143,6 +285,13 @@ public class WebdavServlet extends HttpServlet {
         try {
             Class<?> clazz = WebdavServlet.class.getClassLoader().loadClass(clazzName);
 
+            try {
+                Constructor<?> ctor = clazz.getConstructor(File.class, Properties.class);
+                return (WebdavStore) ctor.newInstance(root, getInitParameters());
+            } catch (NoSuchMethodException e) {
+                log.trace("{} is not configurable, using the root folder only", clazzName);
+            }
+
             Constructor<?> ctor = clazz.getConstructor(File.class);
 
             return (WebdavStore) ctor.newInstance(new Object[]{root});
@@ -152,11 +301,29 @@ public class WebdavServlet extends HttpServlet {
         }
     }
 
+    private Properties getInitParameters() {
+        Properties parameters = new Properties();
+        Enumeration<String> names = getInitParameterNames();
+        while (names != null && names.hasMoreElements()) {
+            String name = names.nextElement();
+            parameters.setProperty(name, getInitParameter(name));
+        }
+        return parameters;
+    }
+
     private int getIntInitParameter() {
         return getInitParameter("no-content-length-headers") == null ? -1 : Integer.parseInt(
             getInitParameter("no-content-length-headers"));
     }
 
+    private int getIntInitParameter(String name, int defaultValue) {
+        String value = getInitParameter(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value.trim());
+    }
+
     public void init(
         WebdavStore store,
         String dftIndexFile,
@@ -167,15 +334,10 @@ public class WebdavServlet extends HttpServlet {
 
         this.store = store;
 
-        MimeTyper mimeTyper = (transaction, path) -> {
-            String retVal = this.store.getStoredObject(transaction, path).getMimeType();
-            if (retVal == null) {
-                return getServletContext().getMimeType(path);
-            }
-            return retVal;
-        };
+        MimeTyper mimeTyper =
+            new CachingMimeTyper(store, path -> getServletContext().getMimeType(path));
 
-        register("GET",
+        DoGet doGet = (DoGet) register("GET",
             new DoGet(store,
                 dftIndexFile,
                 insteadOf404,
@@ -184,7 +346,9 @@ public class WebdavServlet extends HttpServlet {
                 nocontentLenghHeaders
             )
         );
-        register("HEAD",
+        doGet.setCompressedVariants(compressedVariants);
+        doGet.setChangeJournal(collectionTags ? changeJournal : null);
+        DoHead doHead = (DoHead) register("HEAD",
             new DoHead(store,
                 dftIndexFile,
                 insteadOf404,
@@ -193,21 +357,78 @@ public class WebdavServlet extends HttpServlet {
                 nocontentLenghHeaders
             )
         );
+        doHead.setCompressedVariants(compressedVariants);
+        doHead.setChangeJournal(collectionTags ? changeJournal : null);
         DoDelete doDelete = (DoDelete) register("DELETE",
             new DoDelete(store, resourceLocks, READ_ONLY)
         );
+        doDelete.setChangeJournal(changeJournal);
+        doDelete.setPropertyStore(propertyStore);
         DoCopy doCopy = (DoCopy) register("COPY",
             new DoCopy(store, resourceLocks, doDelete, READ_ONLY)
         );
+        doCopy.setChangeJournal(changeJournal);
+        doCopy.setPropertyStore(propertyStore);
         register("LOCK", new DoLock(store, resourceLocks, READ_ONLY));
         register("UNLOCK", new DoUnlock(store, resourceLocks, READ_ONLY));
         register("MOVE", new DoMove(resourceLocks, doDelete, doCopy, READ_ONLY));
-        register("MKCOL", new DoMkcol(store, resourceLocks, READ_ONLY));
+        DoMkcol doMkcol = (DoMkcol) register("MKCOL",
+            new DoMkcol(store, resourceLocks, READ_ONLY)
+        );
+        doMkcol.setChangeJournal(changeJournal);
         register("OPTIONS", new DoOptions(store, resourceLocks));
-        register("PUT", new DoPut(store, resourceLocks, READ_ONLY, lazyFolderCreationOnPut));
-        register("PROPFIND", new DoPropfind(store, resourceLocks, mimeTyper));
-        register("PROPPATCH", new DoProppatch(store, resourceLocks, READ_ONLY));
+        DoPut doPut = (DoPut) register("PUT",
+            new DoPut(store, resourceLocks, READ_ONLY, lazyFolderCreationOnPut)
+        );
+        doPut.setMaxUploadSize(maxUploadSize);
+        doPut.setDigestLinking(digestLinking);
+        doPut.setChangeJournal(changeJournal);
+        DoPropfind doPropfind = (DoPropfind) register("PROPFIND",
+            new DoPropfind(store, resourceLocks, mimeTyper)
+        );
+        doPropfind.setChangeJournal(collectionTags ? changeJournal : null);
+        doPropfind.setMaxPageSize(propfindPageSize);
+        doPropfind.setPrefetchExecutor(propfindPrefetchExecutor);
+        doPropfind.setPolicy(propfindPolicy);
+        doPropfind.setCache(propfindCache);
+        doPropfind.setPropertyStore(propertyStore);
+        if (syncCollection) {
+            DoReport doReport =
+                (DoReport) register("REPORT", new DoReport(store, doPropfind, changeJournal));
+            doReport.setPolicy(propfindPolicy);
+        }
+        DoProppatch doProppatch = (DoProppatch) register("PROPPATCH",
+            new DoProppatch(store, resourceLocks, READ_ONLY)
+        );
+        doProppatch.setPropertyStore(propertyStore);
+        doProppatch.setChangeJournal(changeJournal);
         register("*NO*IMPL*", new DoNotImplemented(READ_ONLY));
+
+        if (jobScheduler != null) {
+            registerAsyncJobs();
+        }
+    }
+
+    /**
+     * Lets COPY, MOVE and DELETE run as background jobs if the client prefers an asynchronous
+     * response and makes the job status available through GET.
+     */
+    private void registerAsyncJobs() {
+        for (String methodName : new String[]{"COPY", "MOVE", "DELETE"}) {
+            AsyncMethod asyncMethod = (AsyncMethod) register(methodName,
+                new AsyncMethod(store, resourceLocks, jobScheduler, methods.get(methodName), jobPath)
+            );
+            asyncMethod.setChangeJournal(changeJournal);
+            asyncMethod.setPropertyStore(propertyStore);
+        }
+        register("GET", new DoJobStatus(jobScheduler, methods.get("GET"), jobPath));
+    }
+
+    /**
+     * @return the drainer of unconsumed request bodies, which also provides the drain metrics
+     */
+    public RequestBodyDrainer getRequestBodyDrainer() {
+        return requestBodyDrainer;
     }
 
     protected MethodExecutor register(String methodName, MethodExecutor method) {
@@ -228,6 +449,12 @@ public class WebdavServlet extends HttpServlet {
             debugRequest(methodName, req);
         }
 
+        MultistatusCompressingResponse compressingResponse = null;
+        if (multistatusCompression && MultistatusCompressingResponse.acceptsGzip(req)) {
+            compressingResponse = new MultistatusCompressingResponse(resp);
+            resp = compressingResponse;
+        }
+
         boolean needRollback = false;
         Transaction transaction = null;
         try {
@@ -244,22 +471,24 @@ public class WebdavServlet extends HttpServlet {
                 }
 
                 methodExecutor.execute(transaction, req, resp);
+                if (compressingResponse != null) {
+                    compressingResponse.finish();
+                }
 
                 store.commit(transaction);
+                if (propertyStore != null) {
+                    propertyStore.commit(transaction);
+                }
+                if (changeJournal != null) {
+                    changeJournal.commit(transaction);
+                }
                 /* Clear not consumed data
                  *
-                 * Clear input stream if available otherwise later access
-                 * include current input.  These cases occure if the client
-                 * sends a request with body to an not existing resource.
+                 * Otherwise later access include current input. These cases
+                 * occure if the client sends a request with body to an not
+                 * existing resource.
                  */
-                if (req.getContentLength() != 0 && req.getInputStream().available() > 0) {
-                    if (log.isTraceEnabled()) {
-                        log.trace("Clear not consumed data!");
-                    }
-                    while (req.getInputStream().available() > 0) {
-                        req.getInputStream().read();
-                    }
-                }
+                requestBodyDrainer.drain(req, resp);
                 needRollback = false;
             } catch (IOException e) {
                 java.io.StringWriter sw = new java.io.StringWriter();
@@ -281,6 +510,12 @@ public class WebdavServlet extends HttpServlet {
         } finally {
             if (needRollback) {
                 store.rollback(transaction);
+                if (propertyStore != null) {
+                    propertyStore.rollback(transaction);
+                }
+                if (changeJournal != null) {
+                    changeJournal.rollback(transaction);
+                }
             }
         }
 
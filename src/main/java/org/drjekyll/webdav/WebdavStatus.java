@@ -54,6 +54,18 @@ public final class WebdavStatus {
      */
     public static final int SC_LOCKED = 423;
 
+    /**
+     * Status code (424) indicating the method was not executed on a particular resource or
+     * property because some other part of the method failed.
+     */
+    public static final int SC_FAILED_DEPENDENCY = 424;
+
+    /**
+     * Status code (507) indicating the method could not be performed on the resource because the
+     * server is unable to store the representation needed to successfully complete the request.
+     */
+    public static final int SC_INSUFFICIENT_STORAGE = 507;
+
     /**
      * This map contains the mapping of HTTP and WebDAV status codes to descriptive text. This is a
      * static variable.
@@ -89,6 +101,8 @@ public final class WebdavStatus {
         addStatusCodeMap(SC_INSUFFICIENT_SPACE_ON_RESOURCE, "Insufficient Space On Resource");
         addStatusCodeMap(SC_METHOD_FAILURE, "Method Failure");
         addStatusCodeMap(SC_LOCKED, "Locked");
+        addStatusCodeMap(SC_FAILED_DEPENDENCY, "Failed Dependency");
+        addStatusCodeMap(SC_INSUFFICIENT_STORAGE, "Insufficient Storage");
     }
 
     private WebdavStatus() {
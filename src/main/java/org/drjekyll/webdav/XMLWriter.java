@@ -62,6 +62,16 @@ public class XMLWriter {
      */
     private Writer writer;
 
+    /**
+     * Number of characters kept in the buffer by {@link #sendData()} until anything was sent.
+     */
+    private long maxBuffered = -1;
+
+    /**
+     * Is true once data was sent to the writer
+     */
+    private boolean sent;
+
     /**
      * Is true until the root element is written
      */
@@ -84,6 +94,28 @@ public class XMLWriter {
         this.namespaces = namespaces;
     }
 
+    /**
+     * Constructor for a document which is kept in memory, e.g. to be cached, as long as it has at
+     * most {@code maxBuffered} characters. Once it has more, {@link #sendData()} sends it like
+     * any other document.
+     */
+    public XMLWriter(Writer writer, Map<String, String> namespaces, long maxBuffered) {
+        this(writer, namespaces);
+        this.maxBuffered = maxBuffered;
+    }
+
+    /**
+     * Creates a writer for elements inside the root element, e.g. to render recurring elements
+     * once and insert them with {@link #writeText(String)}.
+     *
+     * @param namespaces namespaces declared by the root element they are inserted into
+     */
+    public static XMLWriter forFragment(Map<String, String> namespaces) {
+        XMLWriter fragment = new XMLWriter(namespaces);
+        fragment.isRootElement = false;
+        return fragment;
+    }
+
     // --------------------------------------------------------- Public Methods
 
     /**
@@ -194,11 +226,19 @@ public class XMLWriter {
      * Send data and reinitializes buffer.
      */
     public void sendData() throws IOException {
-        if (writer != null) {
+        if (writer != null && (sent || buffer.length() > maxBuffered)) {
             writer.write(buffer.toString());
             writer.flush();
             buffer = new StringBuilder();
+            sent = true;
         }
     }
 
+    /**
+     * @return true if any data was sent, so that the buffer does not hold the whole document
+     */
+    public boolean hasSentData() {
+        return sent;
+    }
+
 }
@@ -28,6 +28,7 @@ import org.drjekyll.webdav.exceptions.AccessDeniedException;
 import org.drjekyll.webdav.exceptions.ObjectAlreadyExistsException;
 import org.drjekyll.webdav.exceptions.ObjectNotFoundException;
 import org.drjekyll.webdav.exceptions.WebdavException;
+import org.drjekyll.webdav.jobs.Job;
 import org.drjekyll.webdav.locking.LockFailedException;
 import org.drjekyll.webdav.locking.ResourceLocks;
 import org.drjekyll.webdav.methods.DeterminableMethod;
@@ -249,6 +250,9 @@ public class DoCopy extends Method {
                 StoredObject destinationSo = store.getStoredObject(transaction, destinationPath);
                 destinationSo.setResourceLength(resourceLength);
             }
+            recordChange(transaction, destinationPath, false);
+            copyProperties(transaction, sourcePath, destinationPath);
+            Job.reportProgress(resourceLength);
 
         } else {
 
@@ -281,6 +285,9 @@ public class DoCopy extends Method {
     ) {
 
         store.createFolder(transaction, destinationPath);
+        recordChange(transaction, destinationPath, false);
+        copyProperties(transaction, sourcePath, destinationPath);
+        Job.reportProgress(0L);
         boolean infiniteDepth = true;
         String depth = req.getHeader("Depth");
         if (depth != null) {
@@ -313,6 +320,12 @@ public class DoCopy extends Method {
                             );
                             destinationSo.setResourceLength(resourceLength);
                         }
+                        recordChange(transaction, destinationPath + children[i], false);
+                        copyProperties(transaction,
+                            sourcePath + children[i],
+                            destinationPath + children[i]
+                        );
+                        Job.reportProgress(resourceLength);
 
                     } else {
                         copyFolder(transaction,
@@ -350,10 +363,25 @@ public class DoCopy extends Method {
     private static String parseDestinationHeader(
         HttpServletRequest req, HttpServletResponse resp
     ) throws IOException {
-        String destinationPath = req.getHeader("Destination");
+        String destinationPath = getDestinationPath(req);
 
         if (destinationPath == null) {
             resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+        }
+        return destinationPath;
+    }
+
+    /**
+     * Normalizes the destination header to a path relative to this servlet.
+     *
+     * @param req Servlet request
+     * @return destinationPath or {@code null} if the request has no destination header
+     */
+    @Nullable
+    public static String getDestinationPath(HttpServletRequest req) {
+        String destinationPath = req.getHeader("Destination");
+
+        if (destinationPath == null) {
             return null;
         }
 
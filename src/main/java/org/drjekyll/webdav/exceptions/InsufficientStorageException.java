@@ -0,0 +1,40 @@
+/*
+ * Copyright 1999,2004 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drjekyll.webdav.exceptions;
+
+/**
+ * Thrown by a store if there is not enough space left to store a resource.
+ */
+public class InsufficientStorageException extends WebdavException {
+
+    private static final long serialVersionUID = -2834512960388264710L;
+
+    public InsufficientStorageException() {
+    }
+
+    public InsufficientStorageException(String message) {
+        super(message);
+    }
+
+    public InsufficientStorageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public InsufficientStorageException(Throwable cause) {
+        super(cause);
+    }
+}
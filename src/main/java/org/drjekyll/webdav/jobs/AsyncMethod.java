@@ -0,0 +1,192 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.jobs;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.drjekyll.webdav.MethodExecutor;
+import org.drjekyll.webdav.Transaction;
+import org.drjekyll.webdav.WebdavStatus;
+import org.drjekyll.webdav.copy.DoCopy;
+import org.drjekyll.webdav.locking.ResourceLocks;
+import org.drjekyll.webdav.methods.ChangeJournal;
+import org.drjekyll.webdav.methods.Method;
+import org.drjekyll.webdav.store.PropertyStore;
+import org.drjekyll.webdav.store.WebdavStore;
+
+/**
+ * Executes COPY, MOVE and DELETE requests in the background if the client asks for it with
+ * {@code Prefer: respond-async} (RFC 7240). The client immediately gets {@code 202 Accepted} and
+ * a {@code Location} header pointing to the job status, which is served by {@link DoJobStatus}.
+ * Requests without that preference are passed to the wrapped method unchanged.
+ * <p>
+ * The job holds temporary locks on the source and the destination until it is done and runs in
+ * its own store transaction.
+ */
+@Slf4j
+public class AsyncMethod extends Method {
+
+    private final WebdavStore store;
+
+    private final ResourceLocks resourceLocks;
+
+    private final JobScheduler jobScheduler;
+
+    private final MethodExecutor method;
+
+    private final String jobPath;
+
+    public AsyncMethod(
+        WebdavStore store,
+        ResourceLocks resourceLocks,
+        JobScheduler jobScheduler,
+        MethodExecutor method,
+        String jobPath
+    ) {
+        this.store = store;
+        this.resourceLocks = resourceLocks;
+        this.jobScheduler = jobScheduler;
+        this.method = method;
+        this.jobPath = jobPath;
+    }
+
+    @Override
+    public void execute(
+        Transaction transaction, HttpServletRequest req, HttpServletResponse resp
+    ) throws IOException {
+
+        if (getPreference(req, "respond-async") == null) {
+            method.execute(transaction, req, resp);
+            return;
+        }
+
+        log.trace("-- {} {}", getClass().getName(), req.getMethod());
+
+        String path = getRelativePath(req);
+        Job job = new Job(req.getMethod(), path, req.getUserPrincipal());
+        String lockOwner = "job" + job.getId();
+
+        List<String> lockedPaths = new ArrayList<>();
+        lockedPaths.add(path);
+        String destinationPath = DoCopy.getDestinationPath(req);
+        if (destinationPath != null) {
+            lockedPaths.add(destinationPath);
+        }
+        for (String lockedPath : lockedPaths) {
+            if (!resourceLocks.lock(transaction,
+                lockedPath,
+                lockOwner,
+                false,
+                INFINITY,
+                MAX_TIMEOUT,
+                TEMPORARY
+            )) {
+                unlock(transaction, lockedPaths, lockOwner);
+                Map<String, Integer> errorList = new HashMap<>();
+                errorList.put(lockedPath, WebdavStatus.SC_LOCKED);
+                sendReport(req, resp, errorList);
+                return;
+            }
+        }
+
+        Principal principal =
+            transaction == null ? req.getUserPrincipal() : transaction.getPrincipal();
+        JobRequest jobRequest = new JobRequest(req);
+        JobResponse jobResponse = new JobResponse(resp);
+
+        boolean accepted = jobScheduler.submit(job,
+            () -> run(job, principal, jobRequest, jobResponse, lockedPaths, lockOwner)
+        );
+        if (!accepted) {
+            unlock(transaction, lockedPaths, lockOwner);
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        resp.setStatus(HttpServletResponse.SC_ACCEPTED);
+        resp.setHeader("Preference-Applied", "respond-async");
+        resp.setHeader("Location",
+            req.getContextPath() + req.getServletPath() + jobPath + '/' + job.getId()
+        );
+    }
+
+    private void run(
+        Job job,
+        Principal principal,
+        JobRequest req,
+        JobResponse resp,
+        List<String> lockedPaths,
+        String lockOwner
+    ) {
+        job.start();
+        boolean needRollback = false;
+        Transaction transaction = null;
+        try {
+            transaction = store.begin(principal);
+            needRollback = true;
+            store.checkAuthentication(transaction);
+
+            method.execute(transaction, req, resp);
+
+            store.commit(transaction);
+            needRollback = false;
+            PropertyStore propertyStore = getPropertyStore();
+            if (propertyStore != null) {
+                propertyStore.commit(transaction);
+            }
+            ChangeJournal changeJournal = getChangeJournal();
+            if (changeJournal != null) {
+                changeJournal.commit(transaction);
+            }
+            job.finish(resp.getStatus() < HttpServletResponse.SC_BAD_REQUEST
+                ? Job.State.SUCCEEDED
+                : Job.State.FAILED, resp.getStatus(), resp.getBody());
+        } catch (IOException | RuntimeException e) {
+            log.error("Job {} ({} {}) failed", job.getId(), job.getMethod(), job.getPath(), e);
+            job.finish(Job.State.FAILED,
+                HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                resp.getBody()
+            );
+        } finally {
+            if (needRollback) {
+                store.rollback(transaction);
+                PropertyStore propertyStore = getPropertyStore();
+                if (propertyStore != null) {
+                    propertyStore.rollback(transaction);
+                }
+                ChangeJournal changeJournal = getChangeJournal();
+                if (changeJournal != null) {
+                    changeJournal.rollback(transaction);
+                }
+            }
+            unlock(transaction, lockedPaths, lockOwner);
+        }
+    }
+
+    private void unlock(Transaction transaction, Iterable<String> lockedPaths, String lockOwner) {
+        for (String lockedPath : lockedPaths) {
+            resourceLocks.unlockTemporaryLockedObjects(transaction, lockedPath, lockOwner);
+        }
+    }
+
+}
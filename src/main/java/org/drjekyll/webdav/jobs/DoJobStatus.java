@@ -0,0 +1,123 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.jobs;
+
+import java.io.IOException;
+import java.util.HashMap;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.drjekyll.webdav.MethodExecutor;
+import org.drjekyll.webdav.Transaction;
+import org.drjekyll.webdav.WebdavStatus;
+import org.drjekyll.webdav.XMLWriter;
+import org.drjekyll.webdav.methods.Method;
+
+/**
+ * Answers GET requests on the status URL of a background job, for the user who submitted it. All
+ * other paths are passed to the wrapped GET method.
+ * <p>
+ * The status document contains the state of the job and the number of items and bytes processed
+ * so far. Once the job is done it also contains the final status and, if there were errors, the
+ * multistatus report the method produced.
+ */
+@Slf4j
+public class DoJobStatus extends Method {
+
+    public static final String JOB_NAMESPACE = "urn:org:drjekyll:webdav:job";
+
+    private final JobScheduler jobScheduler;
+
+    private final MethodExecutor method;
+
+    private final String jobPath;
+
+    public DoJobStatus(JobScheduler jobScheduler, MethodExecutor method, String jobPath) {
+        this.jobScheduler = jobScheduler;
+        this.method = method;
+        this.jobPath = jobPath;
+    }
+
+    @Override
+    public void execute(
+        Transaction transaction, HttpServletRequest req, HttpServletResponse resp
+    ) throws IOException {
+
+        String path = getRelativePath(req);
+        if (!path.startsWith(jobPath + '/')) {
+            method.execute(transaction, req, resp);
+            return;
+        }
+
+        log.trace("-- {}", getClass().getName());
+
+        // the status of another user's job is not disclosed, not even its existence
+        Job job = jobScheduler.getJob(path.substring(jobPath.length() + 1));
+        if (job == null || !job.isSubmittedBy(req.getUserPrincipal())) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, req.getRequestURI());
+            return;
+        }
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("text/xml; charset=UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+
+        HashMap<String, String> namespaces = new HashMap<>();
+        namespaces.put("DAV:", "D");
+        namespaces.put(JOB_NAMESPACE, "J");
+
+        XMLWriter generatedXML = new XMLWriter(resp.getWriter(), namespaces);
+        generatedXML.writeXMLHeader();
+        generatedXML.writeElement(JOB_NAMESPACE + ":job", XMLWriter.OPENING);
+        generatedXML.writeElement(JOB_NAMESPACE + ":id", XMLWriter.OPENING);
+        generatedXML.writeText(job.getId());
+        generatedXML.writeElement(JOB_NAMESPACE + ":id", XMLWriter.CLOSING);
+        generatedXML.writeElement(JOB_NAMESPACE + ":method", XMLWriter.OPENING);
+        generatedXML.writeText(job.getMethod());
+        generatedXML.writeElement(JOB_NAMESPACE + ":method", XMLWriter.CLOSING);
+        generatedXML.writeElement("DAV::href", XMLWriter.OPENING);
+        generatedXML.writeText(rewriteUrl(job.getPath()));
+        generatedXML.writeElement("DAV::href", XMLWriter.CLOSING);
+        generatedXML.writeElement(JOB_NAMESPACE + ":state", XMLWriter.OPENING);
+        generatedXML.writeText(job.getState().name().toLowerCase());
+        generatedXML.writeElement(JOB_NAMESPACE + ":state", XMLWriter.CLOSING);
+        generatedXML.writeElement(JOB_NAMESPACE + ":items-processed", XMLWriter.OPENING);
+        generatedXML.writeText(String.valueOf(job.getItemsProcessed()));
+        generatedXML.writeElement(JOB_NAMESPACE + ":items-processed", XMLWriter.CLOSING);
+        generatedXML.writeElement(JOB_NAMESPACE + ":bytes-processed", XMLWriter.OPENING);
+        generatedXML.writeText(String.valueOf(job.getBytesProcessed()));
+        generatedXML.writeElement(JOB_NAMESPACE + ":bytes-processed", XMLWriter.CLOSING);
+        if (job.isDone()) {
+            generatedXML.writeElement("DAV::status", XMLWriter.OPENING);
+            generatedXML.writeText("HTTP/1.1 "
+                + job.getStatus()
+                + ' '
+                + WebdavStatus.getStatusText(job.getStatus()));
+            generatedXML.writeElement("DAV::status", XMLWriter.CLOSING);
+            String multistatus = job.getMultistatus();
+            if (multistatus != null && !multistatus.isEmpty()) {
+                // strip the XML declaration of the embedded report
+                if (multistatus.startsWith("<?xml")) {
+                    multistatus = multistatus.substring(multistatus.indexOf("?>") + 2).trim();
+                }
+                generatedXML.writeText(multistatus);
+            }
+        }
+        generatedXML.writeElement(JOB_NAMESPACE + ":job", XMLWriter.CLOSING);
+        generatedXML.sendData();
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.jobs;
+
+import java.security.Principal;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import lombok.Getter;
+
+/**
+ * A COPY, MOVE or DELETE request that is executed in the background by the {@link JobScheduler}.
+ * <p>
+ * The methods report their progress through {@link #reportProgress(long)}, which is a no-op if the
+ * current thread is not executing a job.
+ */
+@Getter
+public class Job {
+
+    private static final ThreadLocal<Job> CURRENT = new ThreadLocal<>();
+
+    private final String id = UUID.randomUUID().toString();
+
+    private final String method;
+
+    private final String path;
+
+    @Nullable
+    private final Principal principal;
+
+    private final Instant created = Instant.now();
+
+    private final AtomicLong itemsProcessed = new AtomicLong();
+
+    private final AtomicLong bytesProcessed = new AtomicLong();
+
+    private volatile State state = State.QUEUED;
+
+    private volatile Instant finished;
+
+    private volatile int status;
+
+    private volatile String multistatus;
+
+    /**
+     * @param principal the user who submitted the job, {@code null} if anonymous
+     */
+    public Job(String method, String path, @Nullable Principal principal) {
+        this.method = method;
+        this.path = path;
+        this.principal = principal;
+    }
+
+    /**
+     * Counts one processed resource for the job executed by the current thread.
+     *
+     * @param bytes number of content bytes processed with the resource
+     */
+    public static void reportProgress(long bytes) {
+        Job job = CURRENT.get();
+        if (job != null) {
+            job.itemsProcessed.incrementAndGet();
+            if (bytes > 0) {
+                job.bytesProcessed.addAndGet(bytes);
+            }
+        }
+    }
+
+    static void setCurrent(Job job) {
+        if (job == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(job);
+        }
+    }
+
+    void start() {
+        state = State.RUNNING;
+    }
+
+    void finish(State finalState, int finalStatus, String finalMultistatus) {
+        status = finalStatus;
+        multistatus = finalMultistatus;
+        finished = Instant.now();
+        state = finalState;
+    }
+
+    public long getItemsProcessed() {
+        return itemsProcessed.get();
+    }
+
+    public long getBytesProcessed() {
+        return bytesProcessed.get();
+    }
+
+    /**
+     * @return true if the job was submitted by the user, or anonymously by an anonymous user
+     */
+    public boolean isSubmittedBy(@Nullable Principal user) {
+        if (principal == null || user == null) {
+            return principal == user;
+        }
+        return principal.getName().equals(user.getName());
+    }
+
+    public boolean isDone() {
+        return state == State.SUCCEEDED || state == State.FAILED;
+    }
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+}
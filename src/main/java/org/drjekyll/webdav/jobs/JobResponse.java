@@ -0,0 +1,146 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.jobs;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Captures the status and the body a method produces while it is executed as a background job.
+ * Nothing is forwarded to the wrapped response, which may already have been recycled by the
+ * container.
+ */
+class JobResponse extends HttpServletResponseWrapper {
+
+    private final Map<String, List<String>> headers =
+        new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    private final StringWriter body = new StringWriter();
+
+    private int status = SC_OK;
+
+    private boolean committed;
+
+    JobResponse(HttpServletResponse response) {
+        super(response);
+    }
+
+    /**
+     * @return the body written by the method, e.g. a multistatus report
+     */
+    String getBody() {
+        return body.toString();
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        if (!committed) {
+            status = sc;
+        }
+    }
+
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public void sendError(int sc) {
+        sendError(sc, null);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) {
+        if (!committed) {
+            status = sc;
+            committed = true;
+        }
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        headers.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        List<String> values = new ArrayList<>();
+        values.add(value);
+        headers.put(name, values);
+    }
+
+    @Override
+    public boolean containsHeader(String name) {
+        return headers.containsKey(name);
+    }
+
+    @Override
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    @Override
+    public Collection<String> getHeaders(String name) {
+        List<String> values = headers.get(name);
+        return values == null ? Collections.emptyList() : new ArrayList<>(values);
+    }
+
+    @Override
+    public Collection<String> getHeaderNames() {
+        return new ArrayList<>(headers.keySet());
+    }
+
+    @Override
+    public void setContentType(String type) {
+        // the job status document has its own content type
+    }
+
+    @Override
+    public void setCharacterEncoding(String charset) {
+        // the job status document has its own encoding
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+        return new PrintWriter(body);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        throw new IllegalStateException("background jobs only write character data");
+    }
+
+    @Override
+    public void flushBuffer() {
+        // nothing is sent to the client
+    }
+
+}
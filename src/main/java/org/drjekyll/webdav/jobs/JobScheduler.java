@@ -0,0 +1,108 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.jobs;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded executor for background jobs. At most {@code threads} jobs run concurrently and at most
+ * {@code queueSize} jobs wait for execution; further submissions are rejected so that the caller
+ * can answer with 503 instead of piling up work.
+ * <p>
+ * Finished jobs are kept for the configured retention time so that clients can fetch their
+ * result.
+ */
+@Slf4j
+public class JobScheduler {
+
+    private final ThreadPoolExecutor executor;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    private final Duration retention;
+
+    public JobScheduler(int threads, int queueSize, Duration retention) {
+        this.retention = retention;
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "webdav-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            threadFactory
+        );
+    }
+
+    /**
+     * Queues the job for execution.
+     *
+     * @param job  the job to register
+     * @param work the work to execute on a worker thread
+     * @return false if the queue is full and the job was not accepted
+     */
+    public boolean submit(Job job, Runnable work) {
+        purgeExpiredJobs();
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> {
+                Job.setCurrent(job);
+                try {
+                    work.run();
+                } finally {
+                    Job.setCurrent(null);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn("Job queue is full, rejecting {} {}", job.getMethod(), job.getPath());
+            jobs.remove(job.getId());
+            return false;
+        }
+    }
+
+    @Nullable
+    public Job getJob(String id) {
+        purgeExpiredJobs();
+        return jobs.get(id);
+    }
+
+    public void destroy() {
+        executor.shutdownNow();
+        jobs.clear();
+    }
+
+    private void purgeExpiredJobs() {
+        Instant expiry = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.isDone() && job.getFinished().isBefore(expiry));
+    }
+
+}
@@ -370,6 +370,18 @@ public class ResourceLocks implements IResourceLocks {
         return path.substring(0, slash);
     }
 
+    /**
+     * @return true if any resource is locked, not counting temporary locks
+     */
+    public synchronized boolean hasLocks() {
+        for (LockedObject lo : locks.values()) {
+            if (lo.getOwner() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * keys: path value: Temporary LockedObject from that path
      */
@@ -0,0 +1,254 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.methods;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.drjekyll.webdav.Transaction;
+
+/**
+ * Append-only journal of the paths changed by PUT, MKCOL, DELETE, COPY and MOVE, used to answer
+ * sync-collection reports (RFC 6578) with the changes since a sync token instead of walking the
+ * whole tree.
+ * <p>
+ * Changes are collected per transaction and only become visible when the transaction is
+ * committed, so a sync token never covers a change the client cannot see yet. Removing a
+ * collection is recorded for the collection only, its members are implied. The journal keeps the
+ * last {@code capacity} changes in memory; older tokens and tokens of a previous instance are no
+ * longer valid, which makes clients fall back to a full sync.
+ * <p>
+ * The journal also maintains a change tag per collection, which changes whenever the collection
+ * itself, a member or a descendant changes. Tags are kept for changed paths only, so this costs no
+ * more than a map entry per changed path, and they are bumped along the parent chain on commit
+ * instead of being computed from the tree when they are asked for. Removing a path leaves a
+ * tombstone for its subtree, so a collection that is removed and created again never gets back the
+ * tag it had before.
+ */
+public class ChangeJournal {
+
+    private static final String TOKEN_PREFIX = "http://drjekyll.org/ns/sync/";
+
+    private final int capacity;
+
+    private final long epoch = System.currentTimeMillis();
+
+    private final Deque<Change> changes = new ArrayDeque<>();
+
+    private final Map<Transaction, List<Change>> pending = new IdentityHashMap<>();
+
+    private final TreeMap<String, Long> collectionChanges = new TreeMap<>();
+
+    private final TreeMap<String, Long> removals = new TreeMap<>();
+
+    private long sequence;
+
+    private long truncated;
+
+    public ChangeJournal(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Records a change made within the transaction.
+     *
+     * @param path    the changed path
+     * @param removed true if the resource or collection was removed
+     */
+    public synchronized void record(Transaction transaction, String path, boolean removed) {
+        pending
+            .computeIfAbsent(transaction, t -> new ArrayList<>())
+            .add(new Change(0L, normalize(path), removed));
+    }
+
+    /**
+     * Appends the changes of a committed transaction to the journal.
+     */
+    public synchronized void commit(Transaction transaction) {
+        List<Change> committed = pending.remove(transaction);
+        if (committed == null) {
+            return;
+        }
+        for (Change change : committed) {
+            String path = change.getPath();
+            changes.addLast(new Change(++sequence, path, change.isRemoved()));
+            if (change.isRemoved()) {
+                // a tombstone for the subtree, so that nothing recreated in it gets an old tag
+                collectionChanges.subMap(path + '/', path + '0').clear();
+                removals.subMap(path + '/', path + '0').clear();
+                removals.put(path, sequence);
+            }
+            for (String changed = path; changed != null; changed = getParent(changed)) {
+                collectionChanges.put(changed, sequence);
+            }
+        }
+        while (changes.size() > capacity) {
+            truncated = changes.removeFirst().getSequence();
+        }
+    }
+
+    /**
+     * Drops the changes of a transaction that was rolled back.
+     */
+    public synchronized void rollback(Transaction transaction) {
+        pending.remove(transaction);
+    }
+
+    /**
+     * @return the token of the current state of the journal
+     */
+    public synchronized String getToken() {
+        return toToken(sequence);
+    }
+
+    /**
+     * @param collection path of the collection
+     * @return the change tag of the collection, which differs whenever a descendant changed
+     */
+    public synchronized String getCollectionTag(String collection) {
+        String path = normalize(collection);
+        long tag = collectionChanges.getOrDefault(path, 0L);
+        for (String removed = path; removed != null; removed = getParent(removed)) {
+            tag = Math.max(tag, removals.getOrDefault(removed, 0L));
+        }
+        return epoch + "-" + tag;
+    }
+
+    /**
+     * @param collection path of the collection
+     * @return the change tag of the collection as a weak entity tag
+     */
+    public String getCollectionETag(String collection) {
+        return "W/\"" + getCollectionTag(collection) + '"';
+    }
+
+    /**
+     * Collects the members of a collection changed since a sync token.
+     *
+     * @param token      a token returned by the journal before
+     * @param collection path of the collection
+     * @param infinite   true to include all descendants, false for the direct members only
+     * @return the changes, or {@code null} if the token is not valid (anymore) or the collection
+     * itself was removed since
+     */
+    @Nullable
+    public synchronized Changes getChanges(String token, String collection, boolean infinite) {
+        long since = parseToken(token);
+        if (since < truncated || since > sequence) {
+            return null;
+        }
+        String folder = normalize(collection);
+        String prefix = folder.equals("/") ? folder : folder + '/';
+        Map<String, Boolean> members = new LinkedHashMap<>();
+        Iterator<Change> newest = changes.descendingIterator();
+        while (newest.hasNext()) {
+            Change change = newest.next();
+            if (change.getSequence() <= since) {
+                break;
+            }
+            String path = change.getPath();
+            if (change.isRemoved() && (folder.equals(path) || folder.startsWith(path + '/'))) {
+                // the collection or one of its parents was removed
+                return null;
+            }
+            if (path.startsWith(prefix) && path.length() > prefix.length()) {
+                boolean removed = change.isRemoved();
+                int memberEnd = path.indexOf('/', prefix.length());
+                if (!infinite && memberEnd != -1) {
+                    // a descendant changed, so did the direct member containing it
+                    path = path.substring(0, memberEnd);
+                    removed = false;
+                }
+                members.putIfAbsent(path, removed);
+            }
+        }
+        return new Changes(toToken(sequence), members);
+    }
+
+    private String toToken(long position) {
+        return TOKEN_PREFIX + epoch + '-' + position;
+    }
+
+    private long parseToken(String token) {
+        String expected = TOKEN_PREFIX + epoch + '-';
+        if (!token.startsWith(expected)) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(token.substring(expected.length()));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    @Nullable
+    private static String getParent(String path) {
+        if (path.equals("/")) {
+            return null;
+        }
+        int slash = path.lastIndexOf('/');
+        return slash <= 0 ? "/" : path.substring(0, slash);
+    }
+
+    private static String normalize(String path) {
+        String normalized = path.startsWith("/") ? path : '/' + path;
+        while (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class Change {
+
+        private final long sequence;
+
+        private final String path;
+
+        private final boolean removed;
+
+    }
+
+    /**
+     * Members of a collection changed since a sync token.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Changes {
+
+        /**
+         * Token of the state the changes lead to.
+         */
+        private final String token;
+
+        /**
+         * Changed paths, mapped to true if the member was removed, the most recent change first.
+         */
+        private final Map<String, Boolean> members;
+
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.methods;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Least recently used cache of compressed representations, keyed by path and ETag so that a
+ * changed resource never hits a stale entry. The cache holds at most {@code maxBytes} bytes;
+ * representations larger than an eighth of that are not cached but compressed while they are
+ * sent.
+ */
+public class CompressedVariantCache {
+
+    private final long maxBytes;
+
+    private final Map<String, byte[]> variants = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private long size;
+
+    public CompressedVariantCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the maximum uncompressed length of a cached representation
+     */
+    public long getMaxEntryLength() {
+        return maxBytes / 8;
+    }
+
+    @Nullable
+    public synchronized byte[] get(String path, String eTag) {
+        byte[] variant = variants.get(getKey(path, eTag));
+        (variant == null ? misses : hits).incrementAndGet();
+        return variant;
+    }
+
+    public synchronized void put(String path, String eTag, byte[] variant) {
+        byte[] previous = variants.put(getKey(path, eTag), variant);
+        size += variant.length - (previous == null ? 0 : previous.length);
+        Iterator<byte[]> eldest = variants.values().iterator();
+        while (size > maxBytes && eldest.hasNext()) {
+            size -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    private static String getKey(String path, String eTag) {
+        return eTag + ' ' + path;
+    }
+
+    /**
+     * @return number of requests served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of requests that had to compress the representation
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+}
@@ -27,6 +27,7 @@ import org.drjekyll.webdav.exceptions.AccessDeniedException;
 import org.drjekyll.webdav.exceptions.ObjectAlreadyExistsException;
 import org.drjekyll.webdav.exceptions.ObjectNotFoundException;
 import org.drjekyll.webdav.exceptions.WebdavException;
+import org.drjekyll.webdav.jobs.Job;
 import org.drjekyll.webdav.locking.ResourceLocks;
 import org.drjekyll.webdav.store.StoredObject;
 import org.drjekyll.webdav.store.WebdavStore;
@@ -131,10 +132,16 @@ public class DoDelete extends Method {
 
                 if (so.isResource()) {
                     store.removeObject(transaction, path);
+                    recordChange(transaction, path, true);
+                    removeProperties(transaction, path);
+                    Job.reportProgress(so.getResourceLength());
                 } else {
                     if (so.isFolder()) {
                         deleteFolder(transaction, path, errorList, req, resp);
                         store.removeObject(transaction, path);
+                        recordChange(transaction, path, true);
+                        removeProperties(transaction, path);
+                        Job.reportProgress(0L);
                     } else {
                         resp.sendError(HttpServletResponse.SC_NOT_FOUND);
                     }
@@ -173,12 +180,14 @@ public class DoDelete extends Method {
                 so = store.getStoredObject(transaction, path + children[i]);
                 if (so.isResource()) {
                     store.removeObject(transaction, path + children[i]);
-
+                    removeProperties(transaction, path + children[i]);
+                    Job.reportProgress(so.getResourceLength());
                 } else {
                     deleteFolder(transaction, path + children[i], errorList, req, resp);
 
                     store.removeObject(transaction, path + children[i]);
-
+                    removeProperties(transaction, path + children[i]);
+                    Job.reportProgress(0L);
                 }
             } catch (AccessDeniedException e) {
                 errorList.put(path + children[i], HttpServletResponse.SC_FORBIDDEN);
@@ -24,6 +24,8 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
@@ -51,6 +53,11 @@ public class DoGet extends DoHead {
 
     }
 
+    @Override
+    protected boolean sendsBody() {
+        return true;
+    }
+
     @Override
     protected void doBody(
         Transaction transaction, HttpServletResponse resp, String path
@@ -93,6 +100,41 @@ public class DoGet extends DoHead {
         }
     }
 
+    @Override
+    protected void doCompressedBody(
+        Transaction transaction, HttpServletResponse resp, String path, @Nullable byte[] compressed
+    ) {
+
+        try {
+            OutputStream out = resp.getOutputStream();
+            try {
+                if (compressed != null) {
+                    out.write(compressed);
+                } else {
+                    GZIPOutputStream gzip = new GZIPOutputStream(out, BUF_SIZE);
+                    try (InputStream in = store.getResourceContent(transaction, path)) {
+                        int read;
+                        byte[] copyBuffer = new byte[BUF_SIZE];
+
+                        while ((read = in.read(copyBuffer, 0, copyBuffer.length)) != -1) {
+                            gzip.write(copyBuffer, 0, read);
+                        }
+                    }
+                    gzip.finish();
+                }
+            } finally {
+                try {
+                    out.flush();
+                    out.close();
+                } catch (Exception e) {
+                    log.warn("Flushing OutputStream causes Exception!", e);
+                }
+            }
+        } catch (Exception e) {
+            log.trace(e.toString());
+        }
+    }
+
     @Override
     protected void folderBody(
         Transaction transaction, String path, HttpServletResponse resp, HttpServletRequest req
@@ -16,7 +16,13 @@ implied.
  */
 package org.drjekyll.webdav.methods;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
@@ -32,6 +38,11 @@ import org.drjekyll.webdav.store.WebdavStore;
 @Slf4j
 public class DoHead extends Method {
 
+    /**
+     * Below this length, compression does not pay off
+     */
+    private static final long MIN_COMPRESSED_LENGTH = 1024L;
+
     private final String dftIndexFile;
 
     private final WebdavStore store;
@@ -44,6 +55,8 @@ public class DoHead extends Method {
 
     private final int contentLength;
 
+    private CompressedVariantCache compressedVariants;
+
     public DoHead(
         WebdavStore store,
         String dftIndexFile,
@@ -60,6 +73,18 @@ public class DoHead extends Method {
         contentLength = contentLengthHeader;
     }
 
+    /**
+     * Enables {@code Accept-Encoding} negotiation. Precompressed siblings ({@code .br},
+     * {@code .gz}) of a resource are served when they are not older than the resource; otherwise
+     * text resources are compressed with gzip and kept in the cache. HEAD does not compress, so it
+     * only reports the length of compressed content that is already cached.
+     *
+     * @param compressedVariants cache of compressed representations, {@code null} to disable
+     */
+    public void setCompressedVariants(@Nullable CompressedVariantCache compressedVariants) {
+        this.compressedVariants = compressedVariants;
+    }
+
     @Override
     public void execute(
         Transaction transaction, HttpServletRequest req, HttpServletResponse resp
@@ -112,9 +137,26 @@ public class DoHead extends Method {
             )) {
                 try {
 
+                    // the stored object is in hand, so the type needs no further lookup
+                    String mimeType =
+                        so.isResource() ? mimeTyper.getMimeType(transaction, path, so) : null;
+                    Variant variant = null;
+                    if (compressedVariants != null && so.isResource()) {
+                        resp.addHeader("Vary", "Accept-Encoding");
+                        variant = negotiate(transaction, req, path, so, mimeType);
+                    }
+
+                    String eTag = variant == null ? getETag(so) : variant.eTag;
+                    ChangeJournal changeJournal = getChangeJournal();
+                    if (changeJournal != null && so.isFolder()) {
+                        // collections are tagged by their changes for If-None-Match polling
+                        eTag = changeJournal.getCollectionETag(path);
+                        resp.setHeader("ETag", eTag);
+                    }
+
                     String eTagMatch = req.getHeader("If-None-Match");
                     if (eTagMatch != null) {
-                        if (eTagMatch.equals(getETag(so))) {
+                        if (eTagMatch.equals(eTag)) {
                             resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
                             return;
                         }
@@ -130,10 +172,13 @@ public class DoHead extends Method {
                             long lastModified = so.getLastModified().toEpochMilli();
                             resp.setDateHeader("last-modified", lastModified);
 
-                            String eTag = getETag(so);
                             resp.addHeader("ETag", eTag);
 
                             long resourceLength = so.getResourceLength();
+                            if (variant != null) {
+                                resp.setHeader("Content-Encoding", variant.encoding);
+                                resourceLength = variant.length;
+                            }
 
                             if (contentLength == 1) {
                                 if (resourceLength > 0) {
@@ -149,7 +194,6 @@ public class DoHead extends Method {
                                 }
                             }
 
-                            String mimeType = mimeTyper.getMimeType(transaction, path);
                             if (mimeType != null) {
                                 resp.setContentType(mimeType);
                             } else {
@@ -160,7 +204,13 @@ public class DoHead extends Method {
                                 }
                             }
 
-                            doBody(transaction, resp, path);
+                            if (variant == null) {
+                                doBody(transaction, resp, path);
+                            } else if (variant.path != null) {
+                                doBody(transaction, resp, variant.path);
+                            } else {
+                                doCompressedBody(transaction, resp, path, variant.content);
+                            }
                         }
                     } else {
                         folderBody(transaction, path, resp, req);
@@ -187,15 +237,201 @@ public class DoHead extends Method {
 
     }
 
+    /**
+     * @return whether the content is sent, false for HEAD
+     */
+    protected boolean sendsBody() {
+        return false;
+    }
+
     protected void doBody(
         Transaction transaction, HttpServletResponse resp, String path
     ) {
         // no body for HEAD
     }
 
+    /**
+     * Sends the gzip compressed content of a resource.
+     *
+     * @param compressed the compressed content, {@code null} to compress while sending
+     */
+    protected void doCompressedBody(
+        Transaction transaction, HttpServletResponse resp, String path, @Nullable byte[] compressed
+    ) {
+        // no body for HEAD
+    }
+
     protected void folderBody(
         Transaction transaction, String path, HttpServletResponse resp, HttpServletRequest req
     ) throws IOException {
         // no body for HEAD
     }
+
+    /**
+     * Selects the representation for the {@code Accept-Encoding} of the request.
+     *
+     * @param mimeType the type of the resource, {@code null} if it is unknown
+     * @return the compressed representation or {@code null} to send the content as it is
+     */
+    @Nullable
+    private Variant negotiate(
+        Transaction transaction,
+        HttpServletRequest req,
+        String path,
+        StoredObject so,
+        @Nullable String mimeType
+    ) throws IOException {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return null;
+        }
+        float br = getQuality(acceptEncoding, "br");
+        float gzip = getQuality(acceptEncoding, "gzip");
+        Variant variant = null;
+        if (br > 0.0f && br >= gzip) {
+            variant = getPrecompressed(transaction, path, so, "br", ".br");
+        }
+        if (variant == null && gzip > 0.0f) {
+            variant = getPrecompressed(transaction, path, so, "gzip", ".gz");
+            if (variant == null
+                && so.getResourceLength() >= MIN_COMPRESSED_LENGTH
+                && isCompressible(mimeType)) {
+                variant = compress(transaction, path, so);
+            }
+        }
+        return variant;
+    }
+
+    @Nullable
+    private Variant getPrecompressed(
+        Transaction transaction, String path, StoredObject so, String encoding, String suffix
+    ) {
+        String siblingPath = path + suffix;
+        StoredObject sibling = store.getStoredObject(transaction, siblingPath);
+        if (sibling == null
+            || !sibling.isResource()
+            || sibling.getLastModified().isBefore(so.getLastModified())) {
+            return null;
+        }
+        return new Variant(encoding,
+            withEncoding(getETag(sibling), encoding),
+            sibling.getResourceLength(),
+            siblingPath,
+            null
+        );
+    }
+
+    @Nullable
+    private Variant compress(Transaction transaction, String path, StoredObject so)
+        throws IOException {
+        String eTag = withEncoding(getETag(so), "gzip");
+        if (so.getResourceLength() > compressedVariants.getMaxEntryLength()) {
+            return new Variant("gzip", eTag, -1L, null, null);
+        }
+        byte[] compressed = compressedVariants.get(path, eTag);
+        if (compressed == null && !sendsBody()) {
+            // the length alone is not worth compressing the content for
+            return new Variant("gzip", eTag, -1L, null, null);
+        }
+        if (compressed == null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (InputStream in = store.getResourceContent(transaction, path);
+                 OutputStream out = new GZIPOutputStream(bytes, BUF_SIZE)) {
+                byte[] buffer = new byte[BUF_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            compressed = bytes.toByteArray();
+            compressedVariants.put(path, eTag, compressed);
+        }
+        if (compressed.length >= so.getResourceLength()) {
+            return null;
+        }
+        return new Variant("gzip", eTag, compressed.length, null, compressed);
+    }
+
+    /**
+     * @return the quality value of the content coding, 0 if it is not acceptable
+     */
+    private static float getQuality(String acceptEncoding, String encoding) {
+        float wildcard = 0.0f;
+        for (String member : acceptEncoding.split(",")) {
+            String[] parts = member.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            float quality = 1.0f;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    try {
+                        quality = Float.parseFloat(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0.0f;
+                    }
+                }
+            }
+            if (coding.equals(encoding)) {
+                return quality;
+            }
+            if (coding.equals("*")) {
+                wildcard = quality;
+            }
+        }
+        return wildcard;
+    }
+
+    private static boolean isCompressible(@Nullable String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        String type = mimeType.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/")
+            || type.startsWith("application/json")
+            || type.startsWith("application/xml")
+            || type.startsWith("application/javascript")
+            || type.contains("+xml")
+            || type.contains("+json");
+    }
+
+    /**
+     * Distinguishes the ETag of an encoded representation from the ETag of the content.
+     */
+    private static String withEncoding(String eTag, String encoding) {
+        return eTag.substring(0, eTag.length() - 1) + '-' + encoding + '"';
+    }
+
+    /**
+     * An encoded representation, either a precompressed sibling resource or compressed content.
+     */
+    private static final class Variant {
+
+        private final String encoding;
+
+        private final String eTag;
+
+        private final long length;
+
+        @Nullable
+        private final String path;
+
+        @Nullable
+        private final byte[] content;
+
+        private Variant(
+            String encoding,
+            String eTag,
+            long length,
+            @Nullable String path,
+            @Nullable byte[] content
+        ) {
+            this.encoding = encoding;
+            this.eTag = eTag;
+            this.length = length;
+            this.path = path;
+            this.content = content;
+        }
+
+    }
+
 }
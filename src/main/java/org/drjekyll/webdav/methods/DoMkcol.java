@@ -89,6 +89,7 @@ public class DoMkcol extends Method {
                         StoredObject so = store.getStoredObject(transaction, path);
                         if (so == null) {
                             store.createFolder(transaction, path);
+                            recordChange(transaction, path, false);
                             resp.setStatus(HttpServletResponse.SC_CREATED);
                         } else {
                             // object already exists
@@ -121,6 +122,7 @@ public class DoMkcol extends Method {
                                     }
 
                                     if (resourceLocks.unlock(transaction, lockToken, owner)) {
+                                        recordChange(transaction, path, false);
                                         resp.setStatus(HttpServletResponse.SC_CREATED);
                                     } else {
                                         resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -16,14 +16,17 @@
 package org.drjekyll.webdav.methods;
 
 import java.io.IOException;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
+import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.drjekyll.webdav.Transaction;
 import org.drjekyll.webdav.WebdavStatus;
 import org.drjekyll.webdav.exceptions.AccessDeniedException;
+import org.drjekyll.webdav.exceptions.InsufficientStorageException;
 import org.drjekyll.webdav.exceptions.WebdavException;
 import org.drjekyll.webdav.locking.IResourceLocks;
 import org.drjekyll.webdav.locking.LockedObject;
@@ -33,6 +36,10 @@ import org.drjekyll.webdav.store.WebdavStore;
 @Slf4j
 public class DoPut extends Method {
 
+    private static final String DIGEST_ALGORITHM = "sha-256";
+
+    private static final int DIGEST_LENGTH = 32;
+
     private final WebdavStore store;
 
     private final IResourceLocks resourceLocks;
@@ -41,6 +48,10 @@ public class DoPut extends Method {
 
     private final boolean lazyFolderCreationOnPut;
 
+    private long maxUploadSize = -1L;
+
+    private boolean digestLinking;
+
     private String userAgent;
 
     public DoPut(
@@ -55,6 +66,32 @@ public class DoPut extends Method {
         this.lazyFolderCreationOnPut = lazyFolderCreationOnPut;
     }
 
+    /**
+     * Limits the size of uploads. Requests announcing a larger {@code Content-Length} are rejected
+     * with 413, requests without {@code Content-Length} with 411.
+     *
+     * @param maxUploadSize maximum number of bytes of an upload, negative for no limit
+     */
+    public void setMaxUploadSize(long maxUploadSize) {
+        this.maxUploadSize = maxUploadSize;
+    }
+
+    /**
+     * Lets clients skip uploading content the store already holds by sending its SHA-256 digest
+     * in a {@code Repr-Digest} or {@code Content-Digest} header (RFC 9530). Only enable this if
+     * all users may read all content of the store, since anybody who knows the digest of some
+     * content can link it into a folder of their own.
+     *
+     * @param digestLinking true to link known content instead of reading the body
+     */
+    public void setDigestLinking(boolean digestLinking) {
+        this.digestLinking = digestLinking;
+    }
+
+    /**
+     * All checks run before the request body is touched, so that clients which sent
+     * {@code Expect: 100-continue} get the error without uploading the content first.
+     */
     @Override
     public void execute(
         Transaction transaction, HttpServletRequest req, HttpServletResponse resp
@@ -79,6 +116,16 @@ public class DoPut extends Method {
                 return; // resource is locked
             }
 
+            long contentLength = req.getContentLengthLong();
+            if (maxUploadSize >= 0L && contentLength < 0L) {
+                resp.sendError(HttpServletResponse.SC_LENGTH_REQUIRED);
+                return;
+            }
+            if (maxUploadSize >= 0L && contentLength > maxUploadSize) {
+                resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                return;
+            }
+
             String tempLockOwner = "doPut" + System.currentTimeMillis() + req;
             if (resourceLocks.lock(transaction,
                 path,
@@ -96,10 +143,7 @@ public class DoPut extends Method {
 
                     }
                     Map<String, Integer> errorList = new HashMap<>();
-                    if (parentPath != null && parentSo == null && lazyFolderCreationOnPut) {
-                        store.createFolder(transaction, parentPath);
-
-                    } else if (parentPath != null && parentSo == null) {
+                    if (parentPath != null && parentSo == null && !lazyFolderCreationOnPut) {
                         errorList.put(parentPath, HttpServletResponse.SC_NOT_FOUND);
                         sendReport(req, resp, errorList);
                         return;
@@ -107,7 +151,25 @@ public class DoPut extends Method {
 
                     StoredObject so = store.getStoredObject(transaction, path);
 
-                    if (so == null) {
+                    if (!checkIfMatch(req, so)) {
+                        resp.sendError(HttpServletResponse.SC_PRECONDITION_FAILED);
+                        return;
+                    }
+
+                    try {
+                        store.checkStorage(transaction, path, contentLength);
+                    } catch (InsufficientStorageException e) {
+                        resp.sendError(WebdavStatus.SC_INSUFFICIENT_STORAGE);
+                        return;
+                    }
+
+                    if (parentPath != null && parentSo == null) {
+                        store.createFolder(transaction, parentPath);
+                        recordChange(transaction, parentPath, false);
+                    }
+
+                    boolean created = so == null;
+                    if (created) {
                         store.createResource(transaction, path);
                         // resp.setStatus(WebdavStatus.SC_CREATED);
                     } else {
@@ -152,18 +214,41 @@ public class DoPut extends Method {
                     // User-Agent workarounds
                     doUserAgentWorkaround(resp);
 
+                    byte[] digest = digestLinking ? getContentDigest(req) : null;
+                    long resourceLength = digest == null
+                        ? -1L
+                        : store.linkResourceContent(transaction, path, DIGEST_ALGORITHM, digest);
+                    if (resourceLength != -1) {
+                        // the store has the content already, the body is not needed
+                        log.trace("DoPut.execute() : linked known content to {}", path);
+                        so = store.getStoredObject(transaction, path);
+                        so.setResourceLength(resourceLength);
+                        recordChange(transaction, path, false);
+                        return;
+                    }
+
                     // setting resourceContent
-                    long resourceLength = store.setResourceContent(transaction,
-                        path,
-                        req.getInputStream(),
-                        null,
-                        null
-                    );
+                    try {
+                        resourceLength = store.setResourceContent(transaction,
+                            path,
+                            req.getInputStream(),
+                            null,
+                            null,
+                            contentLength
+                        );
+                    } catch (InsufficientStorageException e) {
+                        if (created) {
+                            store.removeObject(transaction, path);
+                        }
+                        resp.sendError(WebdavStatus.SC_INSUFFICIENT_STORAGE);
+                        return;
+                    }
 
                     so = store.getStoredObject(transaction, path);
                     if (resourceLength != -1) {
                         so.setResourceLength(resourceLength);
                     }
+                    recordChange(transaction, path, false);
                     // Now lets report back what was actually saved
 
                 } catch (AccessDeniedException e) {
@@ -180,6 +265,86 @@ public class DoPut extends Method {
 
     }
 
+    /**
+     * Evaluates the If-Match header. The server only issues weak entity tags, so they are compared
+     * without the weakness indicator.
+     *
+     * @return false if the precondition failed
+     */
+    private static boolean checkIfMatch(HttpServletRequest req, StoredObject so) {
+        String ifMatch = req.getHeader("If-Match");
+        if (ifMatch == null) {
+            return true;
+        }
+        if (so == null || so.isNullResource()) {
+            return false;
+        }
+        if ("*".equals(ifMatch.trim())) {
+            return true;
+        }
+        String eTag = stripWeakness(getETag(so));
+        for (String candidate : ifMatch.split(",")) {
+            if (stripWeakness(candidate.trim()).equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeakness(String eTag) {
+        return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+    }
+
+    /**
+     * Gets the SHA-256 digest of the content from the {@code Repr-Digest} header or, unless the
+     * content is encoded, from the {@code Content-Digest} header. Both are dictionaries like
+     * {@code sha-256=:base64:, sha-512=:base64:}.
+     *
+     * @return the digest or {@code null} if there is none or it is not a valid SHA-256 digest
+     */
+    @Nullable
+    private static byte[] getContentDigest(HttpServletRequest req) {
+        byte[] digest = parseDigest(req.getHeader("Repr-Digest"));
+        if (digest == null && req.getHeader("Content-Encoding") == null) {
+            digest = parseDigest(req.getHeader("Content-Digest"));
+        }
+        return digest;
+    }
+
+    @Nullable
+    private static byte[] parseDigest(@Nullable String header) {
+        if (header == null) {
+            return null;
+        }
+        for (String member : header.split(",")) {
+            int equals = member.indexOf('=');
+            if (equals < 0
+                || !DIGEST_ALGORITHM.equalsIgnoreCase(member.substring(0, equals).trim())) {
+                continue;
+            }
+            String value = member.substring(equals + 1).trim();
+            // byte sequences are enclosed in colons
+            if (value.length() < 2
+                || value.charAt(0) != ':'
+                || value.charAt(value.length() - 1) != ':') {
+                return null;
+            }
+            byte[] digest;
+            try {
+                digest = Base64.getDecoder().decode(value.substring(1, value.length() - 1));
+            } catch (IllegalArgumentException e) {
+                log.debug("Invalid digest {}", value);
+                return null;
+            }
+            if (digest.length != DIGEST_LENGTH) {
+                log.debug("Digest {} is not a SHA-256 digest", value);
+                return null;
+            }
+            return digest;
+        }
+        return null;
+    }
+
     /**
      * @param resp
      */
@@ -21,6 +21,7 @@ import java.io.Writer;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.TemporalAccessor;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -39,6 +40,7 @@ import org.drjekyll.webdav.XMLWriter;
 import org.drjekyll.webdav.locking.IResourceLocks;
 import org.drjekyll.webdav.locking.LockFailedException;
 import org.drjekyll.webdav.locking.LockedObject;
+import org.drjekyll.webdav.store.PropertyStore;
 import org.drjekyll.webdav.store.StoredObject;
 
 public abstract class Method implements MethodExecutor {
@@ -104,6 +106,80 @@ public abstract class Method implements MethodExecutor {
         URL_ENCODER.addSafeCharacter('/');
     }
 
+    @Nullable
+    private ChangeJournal changeJournal;
+
+    @Nullable
+    private PropertyStore propertyStore;
+
+    /**
+     * Sets the journal of changes. Methods changing the tree record the paths they change in it,
+     * for sync-collection reports, collection tags and cached listings; methods reading the tree
+     * take the change tags of collections from it.
+     *
+     * @param changeJournal the journal, or {@code null} to record nothing
+     */
+    public void setChangeJournal(@Nullable ChangeJournal changeJournal) {
+        this.changeJournal = changeJournal;
+    }
+
+    /**
+     * @return the journal of changes, {@code null} if there is none
+     */
+    @Nullable
+    protected ChangeJournal getChangeJournal() {
+        return changeJournal;
+    }
+
+    /**
+     * Records a change in the journal, if there is one.
+     *
+     * @param path    the changed path
+     * @param removed true if the resource or collection was removed
+     */
+    protected void recordChange(Transaction transaction, String path, boolean removed) {
+        if (changeJournal != null) {
+            changeJournal.record(transaction, path, removed);
+        }
+    }
+
+    /**
+     * Sets the store of the dead properties, which follow the resources they belong to.
+     *
+     * @param propertyStore the store of the properties, {@code null} if there are none
+     */
+    public void setPropertyStore(@Nullable PropertyStore propertyStore) {
+        this.propertyStore = propertyStore;
+    }
+
+    /**
+     * @return the store of the dead properties, {@code null} if there is none
+     */
+    @Nullable
+    protected PropertyStore getPropertyStore() {
+        return propertyStore;
+    }
+
+    /**
+     * Copies the dead properties of a copied resource, if there is a property store.
+     */
+    protected void copyProperties(
+        Transaction transaction, String sourcePath, String destinationPath
+    ) {
+        if (propertyStore != null) {
+            propertyStore.copyProperties(transaction, sourcePath, destinationPath);
+        }
+    }
+
+    /**
+     * Removes the dead properties of a removed resource, if there is a property store.
+     */
+    protected void removeProperties(Transaction transaction, String path) {
+        if (propertyStore != null) {
+            propertyStore.removeProperties(transaction, path);
+        }
+    }
+
     public static String lastModifiedDateFormat(TemporalAccessor temporalAccessor) {
         return LAST_MODIFIED_DATE_FORMAT.format(temporalAccessor);
     }
@@ -197,6 +273,37 @@ public abstract class Method implements MethodExecutor {
         return INFINITY;
     }
 
+    /**
+     * Looks up a preference in the Prefer headers of the request (RFC 7240).
+     *
+     * @param req  the request
+     * @param name name of the preference, e.g. "respond-async"
+     * @return the value of the preference, an empty string if it has no value or {@code null} if
+     * the client did not state it
+     */
+    @Nullable
+    protected static String getPreference(HttpServletRequest req, String name) {
+        Enumeration<String> headers = req.getHeaders("Prefer");
+        while (headers != null && headers.hasMoreElements()) {
+            for (String preference : headers.nextElement().split(",")) {
+                String token = preference.split(";")[0].trim();
+                String value = "";
+                int equals = token.indexOf('=');
+                if (equals != -1) {
+                    value = token.substring(equals + 1).trim();
+                    token = token.substring(0, equals).trim();
+                    if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+                        value = value.substring(1, value.length() - 1);
+                    }
+                }
+                if (token.equalsIgnoreCase(name)) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * URL rewriter.
      *
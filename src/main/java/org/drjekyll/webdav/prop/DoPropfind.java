@@ -16,15 +16,28 @@
 package org.drjekyll.webdav.prop;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.parsers.DocumentBuilder;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.drjekyll.webdav.MimeTyper;
 import org.drjekyll.webdav.Transaction;
@@ -34,7 +47,9 @@ import org.drjekyll.webdav.exceptions.AccessDeniedException;
 import org.drjekyll.webdav.exceptions.WebdavException;
 import org.drjekyll.webdav.locking.LockedObject;
 import org.drjekyll.webdav.locking.ResourceLocks;
+import org.drjekyll.webdav.methods.ChangeJournal;
 import org.drjekyll.webdav.methods.Method;
+import org.drjekyll.webdav.store.PropertyStore;
 import org.drjekyll.webdav.store.StoredObject;
 import org.drjekyll.webdav.store.WebdavStore;
 import org.w3c.dom.Document;
@@ -60,13 +75,110 @@ public class DoPropfind extends Method {
      */
     private static final int FIND_PROPERTY_NAMES = 2;
 
+    /**
+     * Namespace of the collection change tag, as used by calendar and address book clients.
+     */
+    private static final String CALENDARSERVER_NAMESPACE = "http://calendarserver.org/ns/";
+
+    private static final String GETCTAG = CALENDARSERVER_NAMESPACE + ":getctag";
+
+    /**
+     * Namespace of the continuation token of paged listings.
+     */
+    private static final String PAGING_NAMESPACE = "http://drjekyll.org/ns/";
+
+    private static final String NEXT_PAGE_TOKEN = PAGING_NAMESPACE + ":next-page-token";
+
+    /**
+     * Number of members of a collection fetched ahead of the one being written.
+     */
+    private static final int PREFETCH_WINDOW = 32;
+
+    /**
+     * Number of members after which the written part of a listing is sent.
+     */
+    private static final int FLUSH_INTERVAL = 256;
+
+    /**
+     * Supported locks of an unlocked resource. This and the property names below are the same for
+     * every resource, so they are rendered once and inserted as text.
+     */
+    private static final String SUPPORTED_LOCKS = renderFragment(fragment -> {
+        fragment.writeElement("DAV::supportedlock", XMLWriter.OPENING);
+        writeLockEntry(fragment, "DAV::exclusive", "DAV::write");
+        writeLockEntry(fragment, "DAV::shared", "DAV::write");
+        fragment.writeElement("DAV::supportedlock", XMLWriter.CLOSING);
+    });
+
+    private static final String PROPERTY_NAMES_HEAD = renderFragment(fragment -> {
+        fragment.writeElement("DAV::propstat", XMLWriter.OPENING);
+        fragment.writeElement("DAV::prop", XMLWriter.OPENING);
+        fragment.writeElement("DAV::creationdate", XMLWriter.NO_CONTENT);
+        fragment.writeElement("DAV::displayname", XMLWriter.NO_CONTENT);
+    });
+
+    private static final String RESOURCE_PROPERTY_NAMES = renderFragment(fragment -> {
+        fragment.writeElement("DAV::getcontentlanguage", XMLWriter.NO_CONTENT);
+        fragment.writeElement("DAV::getcontentlength", XMLWriter.NO_CONTENT);
+        fragment.writeElement("DAV::getcontenttype", XMLWriter.NO_CONTENT);
+        fragment.writeElement("DAV::getetag", XMLWriter.NO_CONTENT);
+        fragment.writeElement("DAV::getlastmodified", XMLWriter.NO_CONTENT);
+    });
+
+    private static final String PROPERTY_NAMES_TAIL = renderFragment(fragment -> {
+        fragment.writeElement("DAV::resourcetype", XMLWriter.NO_CONTENT);
+        fragment.writeElement("DAV::supportedlock", XMLWriter.NO_CONTENT);
+        fragment.writeElement("DAV::source", XMLWriter.NO_CONTENT);
+    });
+
+    /**
+     * Properties of a collection returned for {@code allprop}, if it has them.
+     */
+    private static final List<String> FOLDER_ALL_PROPS = Arrays.asList("DAV::creationdate",
+        "DAV::displayname",
+        "DAV::resourcetype",
+        "DAV::getetag",
+        GETCTAG,
+        "DAV::supportedlock",
+        "DAV::lockdiscovery",
+        "DAV::source"
+    );
+
+    /**
+     * Properties of a resource returned for {@code allprop}, if it has them.
+     */
+    private static final List<String> RESOURCE_ALL_PROPS = Arrays.asList("DAV::creationdate",
+        "DAV::displayname",
+        "DAV::getlastmodified",
+        "DAV::getcontentlength",
+        "DAV::getcontenttype",
+        "DAV::getetag",
+        "DAV::resourcetype",
+        "DAV::supportedlock",
+        "DAV::lockdiscovery",
+        "DAV::source"
+    );
+
     private final WebdavStore store;
 
     private final ResourceLocks resourceLocks;
 
     private final MimeTyper mimeTyper;
 
-    private int depth;
+    private final Map<String, LiveProperty> liveProperties = new HashMap<>();
+
+    private final List<String> customProperties = new ArrayList<>();
+
+    private int maxPageSize;
+
+    @Nullable
+    private ExecutorService prefetchExecutor;
+
+    @Nullable
+    private PropfindPolicy policy;
+
+    @Nullable
+    private PropfindCache cache;
 
     public DoPropfind(
         WebdavStore store, ResourceLocks resLocks, MimeTyper mimeTyper
@@ -74,6 +186,161 @@ public class DoPropfind extends Method {
         this.store = store;
         resourceLocks = resLocks;
         this.mimeTyper = mimeTyper;
+
+        liveProperties.put("DAV::creationdate", (resource, generatedXML) -> {
+            generatedXML.writeProperty("DAV::creationdate",
+                creationDateFormat(resource.getStoredObject().getCreationDate())
+            );
+            return true;
+        });
+        liveProperties.put("DAV::displayname", (resource, generatedXML) -> {
+            generatedXML.writeElement("DAV::displayname", XMLWriter.OPENING);
+            generatedXML.writeData(resource.getName());
+            generatedXML.writeElement("DAV::displayname", XMLWriter.CLOSING);
+            return true;
+        });
+        liveProperties.put("DAV::getcontentlanguage", (resource, generatedXML) -> {
+            if (resource.getStoredObject().isFolder()) {
+                return false;
+            }
+            generatedXML.writeElement("DAV::getcontentlanguage", XMLWriter.NO_CONTENT);
+            return true;
+        });
+        liveProperties.put("DAV::getcontentlength", (resource, generatedXML) -> {
+            if (resource.getStoredObject().isFolder()) {
+                return false;
+            }
+            generatedXML.writeProperty("DAV::getcontentlength",
+                String.valueOf(resource.getStoredObject().getResourceLength())
+            );
+            return true;
+        });
+        liveProperties.put("DAV::getcontenttype", (resource, generatedXML) -> {
+            String mimeType = resource.getMimeType();
+            if (mimeType == null) {
+                return false;
+            }
+            generatedXML.writeProperty("DAV::getcontenttype", mimeType);
+            return true;
+        });
+        liveProperties.put("DAV::getetag", (resource, generatedXML) -> {
+            StoredObject so = resource.getStoredObject();
+            ChangeJournal changeJournal = getChangeJournal();
+            if (so.isFolder() && changeJournal != null) {
+                generatedXML.writeProperty("DAV::getetag",
+                    changeJournal.getCollectionETag(resource.getPath())
+                );
+                return true;
+            }
+            if (so.isFolder() || so.isNullResource()) {
+                return false;
+            }
+            generatedXML.writeProperty("DAV::getetag", getETag(so));
+            return true;
+        });
+        liveProperties.put(GETCTAG, (resource, generatedXML) -> {
+            ChangeJournal changeJournal = getChangeJournal();
+            if (!resource.getStoredObject().isFolder() || changeJournal == null) {
+                return false;
+            }
+            generatedXML.writeProperty(GETCTAG, changeJournal.getCollectionTag(resource.getPath()));
+            return true;
+        });
+        liveProperties.put("DAV::getlastmodified", (resource, generatedXML) -> {
+            if (resource.getStoredObject().isFolder()) {
+                return false;
+            }
+            generatedXML.writeProperty("DAV::getlastmodified",
+                lastModifiedDateFormat(resource.getStoredObject().getLastModified())
+            );
+            return true;
+        });
+        liveProperties.put("DAV::resourcetype", (resource, generatedXML) -> {
+            if (resource.getStoredObject().isFolder()) {
+                generatedXML.writeElement("DAV::resourcetype", XMLWriter.OPENING);
+                generatedXML.writeElement("DAV::collection", XMLWriter.NO_CONTENT);
+                generatedXML.writeElement("DAV::resourcetype", XMLWriter.CLOSING);
+            } else {
+                generatedXML.writeElement("DAV::resourcetype", XMLWriter.NO_CONTENT);
+            }
+            return true;
+        });
+        liveProperties.put("DAV::source", (resource, generatedXML) -> {
+            generatedXML.writeProperty("DAV::source", "");
+            return true;
+        });
+        liveProperties.put("DAV::supportedlock", (resource, generatedXML) -> {
+            writeSupportedLockElements(resource.getTransaction(), generatedXML, resource.getPath());
+            return true;
+        });
+        liveProperties.put("DAV::lockdiscovery", (resource, generatedXML) -> {
+            writeLockDiscoveryElements(resource.getTransaction(),
+                generatedXML,
+                resource.getPath(),
+                resource.getDepth()
+            );
+            return true;
+        });
+    }
+
+    /**
+     * Adds a live property, or replaces a built-in one. Added properties are returned when they
+     * are requested by name and listed for {@code propname}, but not returned for {@code allprop}.
+     *
+     * @param name     namespace and name of the property, e.g. {@code http://example.com/ns/:quota}
+     * @param property computes the property of a resource
+     */
+    public void addLiveProperty(String name, LiveProperty property) {
+        if (liveProperties.put(name, property) == null) {
+            customProperties.add(name);
+        }
+    }
+
+    /**
+     * Lets clients page through Depth 1 listings with {@code Prefer: page-size=n}. Members are
+     * listed in the order of their names; a page which is not the last ends with a
+     * {@code next-page-token} element, which the client passes as {@code Prefer: page-token=...}
+     * to get the next page. The collection itself is only part of the first page.
+     *
+     * @param maxPageSize maximum number of members per page, 0 to disable paging
+     */
+    public void setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+
+    /**
+     * Lets PROPFIND with a depth above 1 look up the members of a collection and their members on
+     * worker threads while earlier members are written, so that a listing of slow storage takes
+     * about as long as the storage needs to deliver it rather than the sum of its latencies. The
+     * responses are still written in the order of a sequential traversal, and the multistatus is
+     * sent while it is written. The store has to allow concurrent reads within a transaction.
+     *
+     * @param prefetchExecutor the workers, {@code null} to traverse sequentially
+     */
+    public void setPrefetchExecutor(@Nullable ExecutorService prefetchExecutor) {
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * Limits PROPFIND of infinite depth and the number of resources listed per request, depending
+     * on the path and the principal. A listing which reaches the limit ends with a 507 response
+     * for the request URI carrying the {@code number-of-matches-within-limits} condition.
+     *
+     * @param policy the limits, {@code null} for no limits
+     */
+    public void setPolicy(@Nullable PropfindPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Answers repeated listings of unchanged collections from a cache of multistatus bodies.
+     * Listings are not cached while any resource is locked, since the lock discovery depends on
+     * the time, and not if they are paged.
+     *
+     * @param cache the cache, {@code null} to list collections for every request
+     */
+    public void setCache(@Nullable PropfindCache cache) {
+        this.cache = cache;
     }
 
     @Override
@@ -85,7 +352,7 @@ public class DoPropfind extends Method {
         // Retrieve the resources
         String path = getCleanPath(getRelativePath(req));
         String tempLockOwner = "doPropfind" + System.currentTimeMillis() + req;
-        depth = getDepth(req);
+        int depth = getDepth(req);
 
         if (resourceLocks.lock(transaction,
             path,
@@ -106,6 +373,30 @@ public class DoPropfind extends Method {
 
                 path = getCleanPath(getRelativePath(req));
 
+                ChangeJournal changeJournal = getChangeJournal();
+                if (changeJournal != null && so.isFolder() && matchesIfNoneMatch(req,
+                    changeJournal.getCollectionETag(path)
+                )) {
+                    resp.sendError(HttpServletResponse.SC_PRECONDITION_FAILED);
+                    return;
+                }
+
+                int maxNodes = 0;
+                PropfindPolicy.Rule rule =
+                    policy == null ? null : policy.getRule(path, req.getUserPrincipal());
+                if (rule != null) {
+                    if (depth == INFINITY && rule.getInfinity() == PropfindPolicy.Infinity.REJECT) {
+                        sendFiniteDepthRequired(resp);
+                        return;
+                    }
+                    if (depth == INFINITY
+                        && rule.getInfinity() == PropfindPolicy.Infinity.DOWNGRADE) {
+                        depth = 1;
+                    }
+                    maxNodes = rule.getMaxNodes();
+                }
+                NodeBudget budget = new NodeBudget(maxNodes);
+
                 int propertyFindType = FIND_ALL_PROP;
                 Node propNode = null;
 
@@ -134,17 +425,72 @@ public class DoPropfind extends Method {
 
                 HashMap<String, String> namespaces = new HashMap<>();
                 namespaces.put("DAV:", "D");
+                if (getChangeJournal() != null) {
+                    namespaces.put(CALENDARSERVER_NAMESPACE, "CS");
+                }
+                if (maxPageSize > 0) {
+                    namespaces.put(PAGING_NAMESPACE, "DJ");
+                }
 
                 List<String> properties = null;
                 if (propertyFindType == FIND_BY_PROPERTY) {
                     properties = XMLHelper.getPropertiesFromXML(propNode);
                 }
 
+                // Prefer: return=minimal (RFC 8144), depth-noroot and paging
+                boolean minimal = "minimal".equalsIgnoreCase(getPreference(req, "return"));
+                boolean noRoot = depth > 0 && getPreference(req, "depth-noroot") != null;
+                int pageSize = depth == 1 ? getPageSize(req) : 0;
+                String pageStart = null;
+                if (pageSize > 0) {
+                    pageStart = decodePageToken(getPreference(req, "page-token"));
+                    if (pageStart == null) {
+                        resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+                        return;
+                    }
+                }
+                if (minimal || noRoot || pageSize > 0) {
+                    StringBuilder applied = new StringBuilder();
+                    if (minimal) {
+                        applied.append("return=minimal");
+                    }
+                    if (noRoot) {
+                        applied.append(applied.length() > 0 ? ", " : "").append("depth-noroot");
+                    }
+                    if (pageSize > 0) {
+                        applied
+                            .append(applied.length() > 0 ? ", " : "")
+                            .append("page-size=")
+                            .append(pageSize);
+                    }
+                    resp.setHeader("Preference-Applied", applied.toString());
+                    resp.addHeader("Vary", "Prefer");
+                }
+
                 resp.setStatus(WebdavStatus.SC_MULTI_STATUS);
                 resp.setContentType("text/xml; charset=UTF-8");
 
-                // Create multistatus object
-                XMLWriter generatedXML = new XMLWriter(resp.getWriter(), namespaces);
+                String cacheKey = null;
+                if (cache != null && so.isFolder() && pageSize == 0 && !resourceLocks.hasLocks()) {
+                    Principal principal = req.getUserPrincipal();
+                    cacheKey = cache.getKey(path, depth
+                        + " " + propertyFindType
+                        + " " + properties
+                        + " " + minimal
+                        + " " + noRoot
+                        + " " + (principal == null ? "" : principal.getName())
+                        + " " + req.getContextPath() + req.getServletPath());
+                    String body = cache.get(cacheKey);
+                    if (body != null) {
+                        resp.getWriter().write(body);
+                        return;
+                    }
+                }
+
+                // Create multistatus object, kept in memory as long as it can be cached
+                XMLWriter generatedXML = cacheKey == null
+                    ? new XMLWriter(resp.getWriter(), namespaces)
+                    : new XMLWriter(resp.getWriter(), namespaces, cache.getMaxBodyChars());
                 generatedXML.writeXMLHeader();
                 generatedXML.writeElement("DAV::multistatus", XMLWriter.OPENING);
                 if (depth == 0) {
@@ -154,7 +500,34 @@ public class DoPropfind extends Method {
                         path,
                         propertyFindType,
                         properties,
-                        mimeTyper.getMimeType(transaction, path)
+                        minimal,
+                        depth
+                    );
+                } else if (pageSize > 0) {
+                    parsePage(transaction,
+                        path,
+                        req,
+                        generatedXML,
+                        propertyFindType,
+                        properties,
+                        minimal,
+                        !noRoot && pageStart.isEmpty(),
+                        pageStart,
+                        pageSize,
+                        depth
+                    );
+                } else if (prefetchExecutor != null && depth > 1) {
+                    prefetchingParseProperties(transaction,
+                        fetch(transaction, path, true),
+                        req,
+                        generatedXML,
+                        propertyFindType,
+                        properties,
+                        depth,
+                        depth,
+                        minimal,
+                        !noRoot,
+                        budget
                     );
                 } else {
                     recursiveParseProperties(transaction,
@@ -164,12 +537,24 @@ public class DoPropfind extends Method {
                         propertyFindType,
                         properties,
                         depth,
-                        mimeTyper.getMimeType(transaction, path)
+                        depth,
+                        minimal,
+                        !noRoot,
+                        budget
                     );
                 }
+                if (budget.isExhausted()) {
+                    writeLimitReached(req, generatedXML);
+                }
                 generatedXML.writeElement("DAV::multistatus", XMLWriter.CLOSING);
 
-                generatedXML.sendData();
+                if (cacheKey == null || generatedXML.hasSentData()) {
+                    generatedXML.sendData();
+                } else {
+                    String body = generatedXML.toString();
+                    cache.put(cacheKey, body);
+                    resp.getWriter().write(body);
+                }
             } catch (AccessDeniedException e) {
                 resp.sendError(HttpServletResponse.SC_FORBIDDEN);
             } catch (WebdavException e) {
@@ -195,8 +580,12 @@ public class DoPropfind extends Method {
      * @param generatedXML
      * @param propertyFindType
      * @param properties
-     * @param depth            depth of the propfind
-     * @throws IOException if an error in the underlying store occurs
+     * @param depth            depth left below the current path
+     * @param requestDepth     depth of the propfind
+     * @param minimal          whether to omit properties that were not found
+     * @param withSelf         whether to include the current path or only its descendants
+     * @param budget           the number of resources which may still be listed
+     * @throws IOException if the written part of the multistatus cannot be sent
      */
     private void recursiveParseProperties(
         Transaction transaction,
@@ -206,28 +595,40 @@ public class DoPropfind extends Method {
         int propertyFindType,
         List<String> properties,
         int depth,
-        String mimeType
-    ) {
+        int requestDepth,
+        boolean minimal,
+        boolean withSelf,
+        NodeBudget budget
+    ) throws IOException {
 
-        parseProperties(transaction,
-            req,
-            generatedXML,
-            currentPath,
-            propertyFindType,
-            properties,
-            mimeType
-        );
+        if (withSelf) {
+            if (!budget.take()) {
+                return;
+            }
+            parseProperties(transaction,
+                req,
+                generatedXML,
+                currentPath,
+                propertyFindType,
+                properties,
+                minimal,
+                requestDepth
+            );
+        }
 
         if (depth > 0) {
             // no need to get name if depth is already zero
             String[] names = store.getChildrenNames(transaction, currentPath);
             names = names == null ? new String[]{} : names;
-            for (String name : names) {
+            for (int written = 0; written < names.length; written++) {
+                if (budget.isExhausted()) {
+                    return;
+                }
                 String newPath = currentPath;
                 if (!newPath.endsWith("/")) {
                     newPath += "/";
                 }
-                newPath += name;
+                newPath += names[written];
                 recursiveParseProperties(transaction,
                     newPath,
                     req,
@@ -235,48 +636,306 @@ public class DoPropfind extends Method {
                     propertyFindType,
                     properties,
                     depth - 1,
-                    mimeType
+                    requestDepth,
+                    minimal,
+                    true,
+                    budget
                 );
+                if (written % FLUSH_INTERVAL == FLUSH_INTERVAL - 1) {
+                    generatedXML.sendData();
+                }
             }
         }
     }
 
     /**
-     * Propfind helper method.
+     * Traverses like {@link #recursiveParseProperties}, but with the stored objects and members
+     * of up to {@link #PREFETCH_WINDOW} members per collection being fetched on the prefetch
+     * executor ahead of the writer.
      *
-     * @param req          The servlet request
-     * @param generatedXML XML response to the Propfind request
-     * @param path         Path of the current resource
-     * @param type         Propfind type
-     * @param properties   If the propfind type is find properties by name, then this parameter
-     *                     contains those properties
+     * @param current  the current resource, fetched with its members
+     * @param withSelf whether to include the current resource or only its descendants
+     * @param budget   the number of resources which may still be listed
+     * @throws IOException if the written part of the multistatus cannot be sent
      */
-    private void parseProperties(
+    private void prefetchingParseProperties(
         Transaction transaction,
+        Prefetched current,
         HttpServletRequest req,
         XMLWriter generatedXML,
-        String path,
-        int type,
-        Iterable<String> properties,
-        String mimeType
-    ) {
+        int propertyFindType,
+        List<String> properties,
+        int depth,
+        int requestDepth,
+        boolean minimal,
+        boolean withSelf,
+        NodeBudget budget
+    ) throws IOException {
 
-        StoredObject so = store.getStoredObject(transaction, path);
+        if (withSelf) {
+            if (!budget.take()) {
+                return;
+            }
+            parseProperties(transaction,
+                req,
+                generatedXML,
+                current.path,
+                current.so,
+                propertyFindType,
+                properties,
+                minimal,
+                requestDepth
+            );
+        }
+        if (depth <= 0) {
+            return;
+        }
 
-        boolean isFolder = so.isFolder();
-        final String creationdate = creationDateFormat(so.getCreationDate());
-        final String lastModified = lastModifiedDateFormat(so.getLastModified());
-        String resourceLength = String.valueOf(so.getResourceLength());
+        String parentPath = current.path.endsWith("/") ? current.path : current.path + '/';
+        boolean withMembers = depth > 1;
+        Deque<Future<Prefetched>> window = new ArrayDeque<>();
+        int next = 0;
+        try {
+            for (int written = 0; written < current.names.length; written++) {
+                if (budget.isExhausted()) {
+                    return;
+                }
+                while (next < current.names.length && window.size() < PREFETCH_WINDOW) {
+                    String memberPath = parentPath + current.names[next++];
+                    window.addLast(prefetchExecutor.submit(() -> fetch(transaction,
+                        memberPath,
+                        withMembers
+                    )));
+                }
+                Prefetched member = await(window.removeFirst());
+                if (member.so != null) {
+                    prefetchingParseProperties(transaction,
+                        member,
+                        req,
+                        generatedXML,
+                        propertyFindType,
+                        properties,
+                        depth - 1,
+                        requestDepth,
+                        minimal,
+                        true,
+                        budget
+                    );
+                }
+                if (written % FLUSH_INTERVAL == FLUSH_INTERVAL - 1) {
+                    generatedXML.sendData();
+                }
+            }
+        } finally {
+            for (Future<Prefetched> pending : window) {
+                pending.cancel(false);
+            }
+        }
+    }
 
-        // ResourceInfo resourceInfo = new ResourceInfo(path, resources);
+    private Prefetched fetch(Transaction transaction, String path, boolean withMembers) {
+        StoredObject so = store.getStoredObject(transaction, path);
+        String[] names = null;
+        if (withMembers && so != null && so.isFolder()) {
+            names = store.getChildrenNames(transaction, path);
+        }
+        return new Prefetched(path, so, names == null ? new String[]{} : names);
+    }
 
-        generatedXML.writeElement("DAV::response", XMLWriter.OPENING);
-        String status = "HTTP/1.1 " + HttpServletResponse.SC_OK + ' ' + WebdavStatus.getStatusText(
-            HttpServletResponse.SC_OK);
+    private static Prefetched await(Future<Prefetched> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebdavException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new WebdavException(e.getCause());
+        }
+    }
 
-        // Generating href element
+    /**
+     * Tells the client that the listing was cut off (RFC 5323, section 2.3.3), so that it can list
+     * the subtrees separately.
+     */
+    private static void writeLimitReached(HttpServletRequest req, XMLWriter generatedXML) {
+        generatedXML.writeElement("DAV::response", XMLWriter.OPENING);
         generatedXML.writeElement("DAV::href", XMLWriter.OPENING);
+        generatedXML.writeText(req.getRequestURI());
+        generatedXML.writeElement("DAV::href", XMLWriter.CLOSING);
+        generatedXML.writeElement("DAV::status", XMLWriter.OPENING);
+        generatedXML.writeText("HTTP/1.1 "
+            + WebdavStatus.SC_INSUFFICIENT_STORAGE
+            + ' '
+            + WebdavStatus.getStatusText(WebdavStatus.SC_INSUFFICIENT_STORAGE));
+        generatedXML.writeElement("DAV::status", XMLWriter.CLOSING);
+        generatedXML.writeElement("DAV::error", XMLWriter.OPENING);
+        generatedXML.writeElement("DAV::number-of-matches-within-limits", XMLWriter.NO_CONTENT);
+        generatedXML.writeElement("DAV::error", XMLWriter.CLOSING);
+        generatedXML.writeElement("DAV::response", XMLWriter.CLOSING);
+    }
 
+    /**
+     * Rejects a PROPFIND of infinite depth (RFC 4918, section 9.1).
+     */
+    private static void sendFiniteDepthRequired(HttpServletResponse resp) throws IOException {
+        Map<String, String> namespaces = new HashMap<>();
+        namespaces.put("DAV:", "D");
+
+        resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+        resp.setContentType("text/xml; charset=UTF-8");
+
+        XMLWriter generatedXML = new XMLWriter(resp.getWriter(), namespaces);
+        generatedXML.writeXMLHeader();
+        generatedXML.writeElement("DAV::error", XMLWriter.OPENING);
+        generatedXML.writeElement("DAV::propfind-finite-depth", XMLWriter.NO_CONTENT);
+        generatedXML.writeElement("DAV::error", XMLWriter.CLOSING);
+        generatedXML.sendData();
+    }
+
+    /**
+     * A resource as looked up ahead of writing it.
+     */
+    @RequiredArgsConstructor
+    private static final class Prefetched {
+
+        private final String path;
+
+        @Nullable
+        private final StoredObject so;
+
+        private final String[] names;
+
+    }
+
+    /**
+     * Writes one page of a Depth 1 listing. The members are sorted by name, so that a page starts
+     * right after the last member of the previous page even if members were added or removed in
+     * between.
+     *
+     * @param withSelf  whether to include the collection itself
+     * @param pageStart name of the last member of the previous page, empty for the first page
+     * @param pageSize  maximum number of members
+     * @param depth     depth of the propfind
+     */
+    private void parsePage(
+        Transaction transaction,
+        String path,
+        HttpServletRequest req,
+        XMLWriter generatedXML,
+        int propertyFindType,
+        List<String> properties,
+        boolean minimal,
+        boolean withSelf,
+        String pageStart,
+        int pageSize,
+        int depth
+    ) {
+        if (withSelf) {
+            parseProperties(transaction,
+                req,
+                generatedXML,
+                path,
+                propertyFindType,
+                properties,
+                minimal,
+                depth
+            );
+        }
+
+        String[] names = store.getChildrenNames(transaction, path);
+        names = names == null ? new String[]{} : names;
+        Arrays.sort(names);
+        int start = 0;
+        if (!pageStart.isEmpty()) {
+            int previous = Arrays.binarySearch(names, pageStart);
+            start = previous >= 0 ? previous + 1 : -previous - 1;
+        }
+        int end = Math.min(names.length, start + pageSize);
+        String parentPath = path.endsWith("/") ? path : path + '/';
+        for (int i = start; i < end; i++) {
+            String childPath = parentPath + names[i];
+            parseProperties(transaction,
+                req,
+                generatedXML,
+                childPath,
+                propertyFindType,
+                properties,
+                minimal,
+                depth
+            );
+        }
+        if (end < names.length) {
+            generatedXML.writeProperty(NEXT_PAGE_TOKEN, Base64
+                .getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(names[end - 1].getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * @return the page size the client asked for, limited to the maximum page size, or 0 if the
+     * listing is not paged
+     */
+    private int getPageSize(HttpServletRequest req) {
+        if (maxPageSize <= 0) {
+            return 0;
+        }
+        String pageSize = getPreference(req, "page-size");
+        if (pageSize == null) {
+            return 0;
+        }
+        try {
+            return Math.min(maxPageSize, Math.max(1, Integer.parseInt(pageSize)));
+        } catch (NumberFormatException e) {
+            return maxPageSize;
+        }
+    }
+
+    /**
+     * @return the name of the last member of the previous page, an empty string for the first page
+     * or {@code null} if the token is malformed
+     */
+    @Nullable
+    private static String decodePageToken(@Nullable String pageToken) {
+        if (pageToken == null || pageToken.isEmpty()) {
+            return "";
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the response element of a resource with the given properties, as it is part of a
+     * multistatus.
+     */
+    void writeResponse(
+        Transaction transaction,
+        HttpServletRequest req,
+        XMLWriter generatedXML,
+        String path,
+        List<String> properties
+    ) {
+        parseProperties(transaction,
+            req,
+            generatedXML,
+            path,
+            FIND_BY_PROPERTY,
+            properties,
+            false,
+            0
+        );
+    }
+
+    /**
+     * @return the encoded URL of the path as it is used in the href of a response
+     */
+    static String getHref(HttpServletRequest req, String path, boolean isFolder) {
         String href = req.getContextPath();
         String servletPath = req.getServletPath();
         if (servletPath != null) {
@@ -294,16 +953,71 @@ public class DoPropfind extends Method {
         if (isFolder && !href.endsWith("/")) {
             href += "/";
         }
+        return rewriteUrl(href);
+    }
 
-        generatedXML.writeText(rewriteUrl(href));
+    /**
+     * Propfind helper method.
+     *
+     * @param req          The servlet request
+     * @param generatedXML XML response to the Propfind request
+     * @param path         Path of the current resource
+     * @param type         Propfind type
+     * @param properties   If the propfind type is find properties by name, then this parameter
+     *                     contains those properties
+     * @param minimal      whether to omit the propstat of properties that were not found
+     * @param depth        depth of the propfind
+     */
+    private void parseProperties(
+        Transaction transaction,
+        HttpServletRequest req,
+        XMLWriter generatedXML,
+        String path,
+        int type,
+        Iterable<String> properties,
+        boolean minimal,
+        int depth
+    ) {
+        parseProperties(transaction,
+            req,
+            generatedXML,
+            path,
+            store.getStoredObject(transaction, path),
+            type,
+            properties,
+            minimal,
+            depth
+        );
+    }
 
-        generatedXML.writeElement("DAV::href", XMLWriter.CLOSING);
+    private void parseProperties(
+        Transaction transaction,
+        HttpServletRequest req,
+        XMLWriter generatedXML,
+        String path,
+        StoredObject so,
+        int type,
+        Iterable<String> properties,
+        boolean minimal,
+        int depth
+    ) {
 
-        String resourceName = path;
-        int lastSlash = path.lastIndexOf('/');
-        if (lastSlash != -1) {
-            resourceName = resourceName.substring(lastSlash + 1);
-        }
+        boolean isFolder = so.isFolder();
+        LiveProperty.Resource resource =
+            new LiveProperty.Resource(transaction, path, so, depth, mimeTyper);
+
+        generatedXML.writeElement("DAV::response", XMLWriter.OPENING);
+        String status = "HTTP/1.1 " + HttpServletResponse.SC_OK + ' ' + WebdavStatus.getStatusText(
+            HttpServletResponse.SC_OK);
+
+        // Generating href element
+        generatedXML.writeElement("DAV::href", XMLWriter.OPENING);
+
+        String href = getHref(req, path, isFolder);
+
+        generatedXML.writeText(href);
+
+        generatedXML.writeElement("DAV::href", XMLWriter.CLOSING);
 
         switch (type) {
 
@@ -312,29 +1026,15 @@ public class DoPropfind extends Method {
                 generatedXML.writeElement("DAV::propstat", XMLWriter.OPENING);
                 generatedXML.writeElement("DAV::prop", XMLWriter.OPENING);
 
-                generatedXML.writeProperty("DAV::creationdate", creationdate);
-                generatedXML.writeElement("DAV::displayname", XMLWriter.OPENING);
-                generatedXML.writeData(resourceName);
-                generatedXML.writeElement("DAV::displayname", XMLWriter.CLOSING);
-                if (isFolder) {
-                    generatedXML.writeElement("DAV::resourcetype", XMLWriter.OPENING);
-                    generatedXML.writeElement("DAV::collection", XMLWriter.NO_CONTENT);
-                    generatedXML.writeElement("DAV::resourcetype", XMLWriter.CLOSING);
-                } else {
-                    generatedXML.writeProperty("DAV::getlastmodified", lastModified);
-                    generatedXML.writeProperty("DAV::getcontentlength", resourceLength);
-                    if (mimeType != null) {
-                        generatedXML.writeProperty("DAV::getcontenttype", mimeType);
-                    }
-                    generatedXML.writeProperty("DAV::getetag", getETag(so));
-                    generatedXML.writeElement("DAV::resourcetype", XMLWriter.NO_CONTENT);
+                for (String property : isFolder ? FOLDER_ALL_PROPS : RESOURCE_ALL_PROPS) {
+                    liveProperties.get(property).write(resource, generatedXML);
+                }
+                for (Map.Entry<String, String> property : getDeadProperties(transaction,
+                    path
+                ).entrySet()) {
+                    writeDeadProperty(generatedXML, property.getKey(), property.getValue());
                 }
 
-                writeSupportedLockElements(transaction, generatedXML, path);
-
-                writeLockDiscoveryElements(transaction, generatedXML, path);
-
-                generatedXML.writeProperty("DAV::source", "");
                 generatedXML.writeElement("DAV::prop", XMLWriter.CLOSING);
                 generatedXML.writeElement("DAV::status", XMLWriter.OPENING);
                 generatedXML.writeText(status);
@@ -345,22 +1045,20 @@ public class DoPropfind extends Method {
 
             case FIND_PROPERTY_NAMES:
 
-                generatedXML.writeElement("DAV::propstat", XMLWriter.OPENING);
-                generatedXML.writeElement("DAV::prop", XMLWriter.OPENING);
-
-                generatedXML.writeElement("DAV::creationdate", XMLWriter.NO_CONTENT);
-                generatedXML.writeElement("DAV::displayname", XMLWriter.NO_CONTENT);
+                generatedXML.writeText(PROPERTY_NAMES_HEAD);
                 if (!isFolder) {
-                    generatedXML.writeElement("DAV::getcontentlanguage", XMLWriter.NO_CONTENT);
-                    generatedXML.writeElement("DAV::getcontentlength", XMLWriter.NO_CONTENT);
-                    generatedXML.writeElement("DAV::getcontenttype", XMLWriter.NO_CONTENT);
+                    generatedXML.writeText(RESOURCE_PROPERTY_NAMES);
+                } else if (getChangeJournal() != null) {
                     generatedXML.writeElement("DAV::getetag", XMLWriter.NO_CONTENT);
-                    generatedXML.writeElement("DAV::getlastmodified", XMLWriter.NO_CONTENT);
+                    generatedXML.writeElement(GETCTAG, XMLWriter.NO_CONTENT);
+                }
+                generatedXML.writeText(PROPERTY_NAMES_TAIL);
+                for (String property : customProperties) {
+                    generatedXML.writeElement(property, XMLWriter.NO_CONTENT);
+                }
+                for (String property : getDeadProperties(transaction, path).keySet()) {
+                    generatedXML.writeElement(property, XMLWriter.NO_CONTENT);
                 }
-                generatedXML.writeElement("DAV::resourcetype", XMLWriter.NO_CONTENT);
-                generatedXML.writeElement("DAV::supportedlock", XMLWriter.NO_CONTENT);
-                generatedXML.writeElement("DAV::source", XMLWriter.NO_CONTENT);
-
                 generatedXML.writeElement("DAV::prop", XMLWriter.CLOSING);
                 generatedXML.writeElement("DAV::status", XMLWriter.OPENING);
                 generatedXML.writeText(status);
@@ -377,68 +1075,21 @@ public class DoPropfind extends Method {
                 generatedXML.writeElement("DAV::prop", XMLWriter.OPENING);
 
                 Collection<String> propertiesNotFound = new ArrayList<>();
+                Map<String, String> deadProperties = null;
                 for (String property : properties) {
-
-                    if ("DAV::creationdate".equals(property)) {
-                        generatedXML.writeProperty("DAV::creationdate", creationdate);
-                    } else if ("DAV::displayname".equals(property)) {
-                        generatedXML.writeElement("DAV::displayname", XMLWriter.OPENING);
-                        generatedXML.writeData(resourceName);
-                        generatedXML.writeElement("DAV::displayname", XMLWriter.CLOSING);
-                    } else if ("DAV::getcontentlanguage".equals(property)) {
-                        if (isFolder) {
-                            propertiesNotFound.add(property);
-                        } else {
-                            generatedXML.writeElement("DAV::getcontentlanguage",
-                                XMLWriter.NO_CONTENT
-                            );
-                        }
-                    } else if ("DAV::getcontentlength".equals(property)) {
-                        if (isFolder) {
-                            propertiesNotFound.add(property);
-                        } else {
-                            generatedXML.writeProperty("DAV::getcontentlength", resourceLength);
-                        }
-                    } else if ("DAV::getcontenttype".equals(property)) {
-                        if (isFolder) {
-                            propertiesNotFound.add(property);
-                        } else {
-                            generatedXML.writeProperty("DAV::getcontenttype", mimeType);
-                        }
-                    } else if ("DAV::getetag".equals(property)) {
-                        if (isFolder || so.isNullResource()) {
-                            propertiesNotFound.add(property);
-                        } else {
-                            generatedXML.writeProperty("DAV::getetag", getETag(so));
-                        }
-                    } else if ("DAV::getlastmodified".equals(property)) {
-                        if (isFolder) {
-                            propertiesNotFound.add(property);
-                        } else {
-                            generatedXML.writeProperty("DAV::getlastmodified", lastModified);
-                        }
-                    } else if ("DAV::resourcetype".equals(property)) {
-                        if (isFolder) {
-                            generatedXML.writeElement("DAV::resourcetype", XMLWriter.OPENING);
-                            generatedXML.writeElement("DAV::collection", XMLWriter.NO_CONTENT);
-                            generatedXML.writeElement("DAV::resourcetype", XMLWriter.CLOSING);
-                        } else {
-                            generatedXML.writeElement("DAV::resourcetype", XMLWriter.NO_CONTENT);
-                        }
-                    } else if ("DAV::source".equals(property)) {
-                        generatedXML.writeProperty("DAV::source", "");
-                    } else if ("DAV::supportedlock".equals(property)) {
-
-                        writeSupportedLockElements(transaction, generatedXML, path);
-
-                    } else if ("DAV::lockdiscovery".equals(property)) {
-
-                        writeLockDiscoveryElements(transaction, generatedXML, path);
-
-                    } else {
+                    LiveProperty liveProperty = liveProperties.get(property);
+                    if (liveProperty != null && liveProperty.write(resource, generatedXML)) {
+                        continue;
+                    }
+                    if (deadProperties == null) {
+                        deadProperties = getDeadProperties(transaction, path);
+                    }
+                    String value = deadProperties.get(property);
+                    if (value == null) {
                         propertiesNotFound.add(property);
+                    } else {
+                        writeDeadProperty(generatedXML, property, value);
                     }
-
                 }
 
                 generatedXML.writeElement("DAV::prop", XMLWriter.CLOSING);
@@ -447,7 +1098,7 @@ public class DoPropfind extends Method {
                 generatedXML.writeElement("DAV::status", XMLWriter.CLOSING);
                 generatedXML.writeElement("DAV::propstat", XMLWriter.CLOSING);
 
-                if (!propertiesNotFound.isEmpty()) {
+                if (!minimal && !propertiesNotFound.isEmpty()) {
 
                     status = "HTTP/1.1 "
                         + HttpServletResponse.SC_NOT_FOUND
@@ -477,65 +1128,96 @@ public class DoPropfind extends Method {
 
     }
 
+    private Map<String, String> getDeadProperties(Transaction transaction, String path) {
+        PropertyStore propertyStore = getPropertyStore();
+        return propertyStore == null
+            ? Collections.emptyMap()
+            : propertyStore.getProperties(transaction, path);
+    }
+
+    private static void writeDeadProperty(XMLWriter generatedXML, String name, String value) {
+        if (value.isEmpty()) {
+            generatedXML.writeElement(name, XMLWriter.NO_CONTENT);
+        } else {
+            generatedXML.writeElement(name, XMLWriter.OPENING);
+            generatedXML.writeText(value);
+            generatedXML.writeElement(name, XMLWriter.CLOSING);
+        }
+    }
+
+    /**
+     * Evaluates {@code If-None-Match} with the weak comparison.
+     *
+     * @return true if the header lists the entity tag or is {@code *}
+     */
+    private static boolean matchesIfNoneMatch(HttpServletRequest req, String eTag) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaqueTag = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(
+                opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void writeSupportedLockElements(
         Transaction transaction, XMLWriter generatedXML, String path
     ) {
 
         LockedObject lo = resourceLocks.getLockedObjectByPath(transaction, path);
 
-        generatedXML.writeElement("DAV::supportedlock", XMLWriter.OPENING);
-
         if (lo == null) {
             // both locks (shared/exclusive) can be granted
-            generatedXML.writeElement("DAV::lockentry", XMLWriter.OPENING);
-
-            generatedXML.writeElement("DAV::lockscope", XMLWriter.OPENING);
-            generatedXML.writeElement("DAV::exclusive", XMLWriter.NO_CONTENT);
-            generatedXML.writeElement("DAV::lockscope", XMLWriter.CLOSING);
-
-            generatedXML.writeElement("DAV::locktype", XMLWriter.OPENING);
-            generatedXML.writeElement("DAV::write", XMLWriter.NO_CONTENT);
-            generatedXML.writeElement("DAV::locktype", XMLWriter.CLOSING);
-
-            generatedXML.writeElement("DAV::lockentry", XMLWriter.CLOSING);
-
-            generatedXML.writeElement("DAV::lockentry", XMLWriter.OPENING);
+            generatedXML.writeText(SUPPORTED_LOCKS);
+            return;
+        }
 
-            generatedXML.writeElement("DAV::lockscope", XMLWriter.OPENING);
-            generatedXML.writeElement("DAV::shared", XMLWriter.NO_CONTENT);
-            generatedXML.writeElement("DAV::lockscope", XMLWriter.CLOSING);
+        generatedXML.writeElement("DAV::supportedlock", XMLWriter.OPENING);
 
-            generatedXML.writeElement("DAV::locktype", XMLWriter.OPENING);
-            generatedXML.writeElement("DAV::write", XMLWriter.NO_CONTENT);
-            generatedXML.writeElement("DAV::locktype", XMLWriter.CLOSING);
+        // LockObject exists, checking lock state
+        // if an exclusive lock exists, no further lock is possible
+        if (lo.isShared()) {
+            writeLockEntry(generatedXML, "DAV::shared", "DAV::" + lo.getType());
+        }
 
-            generatedXML.writeElement("DAV::lockentry", XMLWriter.CLOSING);
+        generatedXML.writeElement("DAV::supportedlock", XMLWriter.CLOSING);
 
-        } else {
-            // LockObject exists, checking lock state
-            // if an exclusive lock exists, no further lock is possible
-            if (lo.isShared()) {
+    }
 
-                generatedXML.writeElement("DAV::lockentry", XMLWriter.OPENING);
+    private static void writeLockEntry(XMLWriter generatedXML, String scope, String type) {
 
-                generatedXML.writeElement("DAV::lockscope", XMLWriter.OPENING);
-                generatedXML.writeElement("DAV::shared", XMLWriter.NO_CONTENT);
-                generatedXML.writeElement("DAV::lockscope", XMLWriter.CLOSING);
+        generatedXML.writeElement("DAV::lockentry", XMLWriter.OPENING);
 
-                generatedXML.writeElement("DAV::locktype", XMLWriter.OPENING);
-                generatedXML.writeElement("DAV::" + lo.getType(), XMLWriter.NO_CONTENT);
-                generatedXML.writeElement("DAV::locktype", XMLWriter.CLOSING);
+        generatedXML.writeElement("DAV::lockscope", XMLWriter.OPENING);
+        generatedXML.writeElement(scope, XMLWriter.NO_CONTENT);
+        generatedXML.writeElement("DAV::lockscope", XMLWriter.CLOSING);
 
-                generatedXML.writeElement("DAV::lockentry", XMLWriter.CLOSING);
-            }
-        }
+        generatedXML.writeElement("DAV::locktype", XMLWriter.OPENING);
+        generatedXML.writeElement(type, XMLWriter.NO_CONTENT);
+        generatedXML.writeElement("DAV::locktype", XMLWriter.CLOSING);
 
-        generatedXML.writeElement("DAV::supportedlock", XMLWriter.CLOSING);
+        generatedXML.writeElement("DAV::lockentry", XMLWriter.CLOSING);
+    }
 
+    /**
+     * Renders elements for a multistatus with the DAV namespace as prefix {@code D}.
+     */
+    private static String renderFragment(Consumer<XMLWriter> elements) {
+        Map<String, String> namespaces = new HashMap<>();
+        namespaces.put("DAV:", "D");
+        XMLWriter fragment = XMLWriter.forFragment(namespaces);
+        elements.accept(fragment);
+        return fragment.toString();
     }
 
     private void writeLockDiscoveryElements(
-        Transaction transaction, XMLWriter generatedXML, String path
+        Transaction transaction, XMLWriter generatedXML, String path, int depth
     ) {
 
         LockedObject lo = resourceLocks.getLockedObjectByPath(transaction, path);
@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import javax.servlet.ServletException;
@@ -20,6 +22,7 @@ import org.drjekyll.webdav.locking.LockedObject;
 import org.drjekyll.webdav.locking.ResourceLocks;
 import org.drjekyll.webdav.methods.DeterminableMethod;
 import org.drjekyll.webdav.methods.Method;
+import org.drjekyll.webdav.store.PropertyStore;
 import org.drjekyll.webdav.store.StoredObject;
 import org.drjekyll.webdav.store.WebdavStore;
 import org.w3c.dom.Document;
@@ -68,9 +71,6 @@ public class DoProppatch extends Method {
             return; // resource is locked
         }
 
-        // TODO for now, PROPPATCH just sends a valid response, stating that
-        // everything is fine, but doesn't do anything.
-
         // Retrieve the resources
         String tempLockOwner = "doProppatch" + System.currentTimeMillis() + req;
 
@@ -124,20 +124,33 @@ public class DoProppatch extends Method {
                     return;
                 }
                 DocumentBuilder documentBuilder = getDocumentBuilder();
-                Node toremoveNode = null;
-                Node tosetNode = null;
+                // the instructions in document order, a later one wins over an earlier one
+                Map<String, String> toset = new LinkedHashMap<>();
+                Collection<String> toremove = new LinkedHashSet<>();
                 try {
                     Document document =
                         documentBuilder.parse(new InputSource(req.getInputStream()));
                     // Get the root element of the document
                     Element rootElement = document.getDocumentElement();
 
-                    tosetNode = XMLHelper.findSubElement(XMLHelper.findSubElement(rootElement,
-                        "set"
-                    ), "prop");
-                    toremoveNode = XMLHelper.findSubElement(XMLHelper.findSubElement(rootElement,
-                        "remove"
-                    ), "prop");
+                    for (Node instruction = rootElement.getFirstChild();
+                        instruction != null;
+                        instruction = instruction.getNextSibling()) {
+                        Node propNode = XMLHelper.findSubElement(instruction, "prop");
+                        if (instruction.getNodeType() != Node.ELEMENT_NODE || propNode == null) {
+                            continue;
+                        }
+                        if ("set".equals(instruction.getLocalName())) {
+                            Map<String, String> values =
+                                XMLHelper.getPropertyValuesFromXML(propNode);
+                            toremove.removeAll(values.keySet());
+                            toset.putAll(values);
+                        } else if ("remove".equals(instruction.getLocalName())) {
+                            List<String> names = XMLHelper.getPropertiesFromXML(propNode);
+                            toset.keySet().removeAll(names);
+                            toremove.addAll(names);
+                        }
+                    }
                 } catch (Exception e) {
                     resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
                     return;
@@ -146,15 +159,19 @@ public class DoProppatch extends Method {
                 HashMap<String, String> namespaces = new HashMap<>();
                 namespaces.put("DAV:", "D");
 
-                Collection<String> tochange = new ArrayList<>();
-                if (tosetNode != null) {
-                    List<String> toset = XMLHelper.getPropertiesFromXML(tosetNode);
-                    tochange.addAll(toset);
-                }
+                Collection<String> tochange = new ArrayList<>(toset.keySet());
+                tochange.addAll(toremove);
 
-                if (toremoveNode != null) {
-                    List<String> toremove = XMLHelper.getPropertiesFromXML(toremoveNode);
-                    tochange.addAll(toremove);
+                boolean protectedChanged = false;
+                for (String property : tochange) {
+                    protectedChanged |= property.startsWith("DAV::");
+                }
+                // properties in the DAV namespace are protected, an update touching one of them
+                // fails as a whole, as the instructions are applied atomically
+                PropertyStore propertyStore = getPropertyStore();
+                if (propertyStore != null && !protectedChanged) {
+                    propertyStore.setProperties(transaction, path, toset, toremove);
+                    recordChange(transaction, path, false);
                 }
 
                 resp.setStatus(WebdavStatus.SC_MULTI_STATUS);
@@ -166,9 +183,6 @@ public class DoProppatch extends Method {
                 generatedXML.writeElement("DAV::multistatus", XMLWriter.OPENING);
 
                 generatedXML.writeElement("DAV::response", XMLWriter.OPENING);
-                String status =
-                    "HTTP/1.1 " + HttpServletResponse.SC_OK + ' ' + WebdavStatus.getStatusText(
-                        HttpServletResponse.SC_OK);
 
                 // Generating href element
                 generatedXML.writeElement("DAV::href", XMLWriter.OPENING);
@@ -188,6 +202,17 @@ public class DoProppatch extends Method {
                 generatedXML.writeElement("DAV::href", XMLWriter.CLOSING);
 
                 for (String property : tochange) {
+                    int statusCode = HttpServletResponse.SC_OK;
+                    if (propertyStore != null && protectedChanged) {
+                        statusCode = property.startsWith("DAV::")
+                            ? HttpServletResponse.SC_FORBIDDEN
+                            : WebdavStatus.SC_FAILED_DEPENDENCY;
+                    }
+                    String status = "HTTP/1.1 "
+                        + statusCode
+                        + ' '
+                        + WebdavStatus.getStatusText(statusCode);
+
                     generatedXML.writeElement("DAV::propstat", XMLWriter.OPENING);
 
                     generatedXML.writeElement("DAV::prop", XMLWriter.OPENING);
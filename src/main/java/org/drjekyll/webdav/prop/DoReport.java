@@ -0,0 +1,257 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.prop;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.drjekyll.webdav.Transaction;
+import org.drjekyll.webdav.WebdavStatus;
+import org.drjekyll.webdav.XMLWriter;
+import org.drjekyll.webdav.exceptions.AccessDeniedException;
+import org.drjekyll.webdav.exceptions.WebdavException;
+import org.drjekyll.webdav.methods.ChangeJournal;
+import org.drjekyll.webdav.methods.Method;
+import org.drjekyll.webdav.store.StoredObject;
+import org.drjekyll.webdav.store.WebdavStore;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * REPORT method supporting the sync-collection report (RFC 6578). A request without sync token
+ * lists all members of the collection; a request with the token of an earlier response only lists
+ * the members changed since, as recorded in the {@link ChangeJournal}, so polling clients no
+ * longer walk the whole tree.
+ */
+@Slf4j
+public class DoReport extends Method {
+
+    private final WebdavStore store;
+
+    private final DoPropfind doPropfind;
+
+    private final ChangeJournal changeJournal;
+
+    @Nullable
+    private PropfindPolicy policy;
+
+    public DoReport(WebdavStore store, DoPropfind doPropfind, ChangeJournal changeJournal) {
+        this.store = store;
+        this.doPropfind = doPropfind;
+        this.changeJournal = changeJournal;
+    }
+
+    /**
+     * Applies the PROPFIND limits to the report: an infinite sync level is rejected with the
+     * {@code sync-traversal-supported} condition or downgraded to level 1, and an initial sync
+     * listing more members than allowed is rejected with the
+     * {@code number-of-matches-within-limits} condition.
+     *
+     * @param policy the limits, {@code null} for no limits
+     */
+    public void setPolicy(@Nullable PropfindPolicy policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    public void execute(
+        Transaction transaction, HttpServletRequest req, HttpServletResponse resp
+    ) throws IOException {
+        log.trace("-- {}", getClass().getName());
+
+        String depth = req.getHeader("Depth");
+        if (depth != null && !"0".equals(depth.trim())) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        Element rootElement;
+        try {
+            Document document =
+                getDocumentBuilder().parse(new InputSource(req.getInputStream()));
+            rootElement = document.getDocumentElement();
+        } catch (Exception e) {
+            log.debug("could not parse report: {}", e.getMessage());
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        if (!"sync-collection".equals(rootElement.getLocalName())) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        String token = getText(XMLHelper.findSubElement(rootElement, "sync-token"));
+        boolean infinite =
+            "infinite".equals(getText(XMLHelper.findSubElement(rootElement, "sync-level")));
+        Node propNode = XMLHelper.findSubElement(rootElement, "prop");
+        List<String> properties =
+            propNode == null ? new ArrayList<>() : XMLHelper.getPropertiesFromXML(propNode);
+
+        String path = getCleanPath(getRelativePath(req));
+        try {
+            StoredObject so = store.getStoredObject(transaction, path);
+            if (so == null) {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND, req.getRequestURI());
+                return;
+            }
+            if (!so.isFolder()) {
+                resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+                return;
+            }
+
+            int maxNodes = 0;
+            PropfindPolicy.Rule rule =
+                policy == null ? null : policy.getRule(path, req.getUserPrincipal());
+            if (rule != null) {
+                if (infinite && rule.getInfinity() == PropfindPolicy.Infinity.REJECT) {
+                    sendError(resp, "DAV::sync-traversal-supported");
+                    return;
+                }
+                if (infinite && rule.getInfinity() == PropfindPolicy.Infinity.DOWNGRADE) {
+                    infinite = false;
+                }
+                maxNodes = rule.getMaxNodes();
+            }
+
+            Map<String, Boolean> members;
+            String newToken;
+            if (token.isEmpty()) {
+                newToken = changeJournal.getToken();
+                members = new LinkedHashMap<>();
+                NodeBudget budget = new NodeBudget(maxNodes);
+                collectMembers(transaction, path, infinite, members, budget);
+                if (budget.isExhausted()) {
+                    // a truncated initial sync cannot be continued with the token
+                    sendError(resp, "DAV::number-of-matches-within-limits");
+                    return;
+                }
+            } else {
+                ChangeJournal.Changes changes = changeJournal.getChanges(token, path, infinite);
+                if (changes == null) {
+                    // the client has to start over without a token
+                    sendError(resp, "DAV::valid-sync-token");
+                    return;
+                }
+                newToken = changes.getToken();
+                members = changes.getMembers();
+            }
+
+            Map<String, String> namespaces = new HashMap<>();
+            namespaces.put("DAV:", "D");
+
+            resp.setStatus(WebdavStatus.SC_MULTI_STATUS);
+            resp.setContentType("text/xml; charset=UTF-8");
+
+            XMLWriter generatedXML = new XMLWriter(resp.getWriter(), namespaces);
+            generatedXML.writeXMLHeader();
+            generatedXML.writeElement("DAV::multistatus", XMLWriter.OPENING);
+            for (Entry<String, Boolean> member : members.entrySet()) {
+                String memberPath = member.getKey();
+                if (!member.getValue() && store.getStoredObject(transaction, memberPath) != null) {
+                    doPropfind.writeResponse(transaction,
+                        req,
+                        generatedXML,
+                        memberPath,
+                        properties
+                    );
+                } else {
+                    writeRemoved(req, generatedXML, memberPath);
+                }
+            }
+            generatedXML.writeProperty("DAV::sync-token", newToken);
+            generatedXML.writeElement("DAV::multistatus", XMLWriter.CLOSING);
+            generatedXML.sendData();
+        } catch (AccessDeniedException e) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+        } catch (WebdavException e) {
+            log.warn("Sending internal error!");
+            resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private void collectMembers(
+        Transaction transaction,
+        String path,
+        boolean infinite,
+        Map<String, Boolean> members,
+        NodeBudget budget
+    ) {
+        String[] names = store.getChildrenNames(transaction, path);
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (!budget.take()) {
+                return;
+            }
+            String memberPath = path.endsWith("/") ? path + name : path + '/' + name;
+            members.put(memberPath, false);
+            if (infinite) {
+                StoredObject so = store.getStoredObject(transaction, memberPath);
+                if (so != null && so.isFolder()) {
+                    collectMembers(transaction, memberPath, true, members, budget);
+                }
+            }
+        }
+    }
+
+    private static void writeRemoved(HttpServletRequest req, XMLWriter generatedXML, String path) {
+        generatedXML.writeElement("DAV::response", XMLWriter.OPENING);
+        generatedXML.writeElement("DAV::href", XMLWriter.OPENING);
+        generatedXML.writeText(DoPropfind.getHref(req, path, false));
+        generatedXML.writeElement("DAV::href", XMLWriter.CLOSING);
+        generatedXML.writeElement("DAV::status", XMLWriter.OPENING);
+        generatedXML.writeText("HTTP/1.1 "
+            + HttpServletResponse.SC_NOT_FOUND
+            + ' '
+            + WebdavStatus.getStatusText(HttpServletResponse.SC_NOT_FOUND));
+        generatedXML.writeElement("DAV::status", XMLWriter.CLOSING);
+        generatedXML.writeElement("DAV::response", XMLWriter.CLOSING);
+    }
+
+    /**
+     * Rejects the report with a precondition (RFC 6578, section 3.6).
+     */
+    private static void sendError(HttpServletResponse resp, String condition) throws IOException {
+        Map<String, String> namespaces = new HashMap<>();
+        namespaces.put("DAV:", "D");
+
+        resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+        resp.setContentType("text/xml; charset=UTF-8");
+
+        XMLWriter generatedXML = new XMLWriter(resp.getWriter(), namespaces);
+        generatedXML.writeXMLHeader();
+        generatedXML.writeElement("DAV::error", XMLWriter.OPENING);
+        generatedXML.writeElement(condition, XMLWriter.NO_CONTENT);
+        generatedXML.writeElement("DAV::error", XMLWriter.CLOSING);
+        generatedXML.sendData();
+    }
+
+    private static String getText(Node node) {
+        return node == null ? "" : node.getTextContent().trim();
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.prop;
+
+import javax.annotation.Nullable;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.drjekyll.webdav.MimeTyper;
+import org.drjekyll.webdav.Transaction;
+import org.drjekyll.webdav.XMLWriter;
+import org.drjekyll.webdav.store.StoredObject;
+
+/**
+ * Provides a live property for PROPFIND. A property is only computed for the resources it is
+ * requested for, by name, {@code allprop} (built-in properties only) or {@code propname} (its name
+ * only).
+ *
+ * @see DoPropfind#addLiveProperty(String, LiveProperty)
+ */
+@FunctionalInterface
+public interface LiveProperty {
+
+    /**
+     * Writes the property element with its value.
+     *
+     * @param resource     the resource listed
+     * @param generatedXML XML response to the PROPFIND request
+     * @return false if the resource does not have the property, which is then reported as not
+     * found
+     */
+    boolean write(Resource resource, XMLWriter generatedXML);
+
+    /**
+     * A resource listed by PROPFIND.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    class Resource {
+
+        private final Transaction transaction;
+
+        private final String path;
+
+        private final StoredObject storedObject;
+
+        /**
+         * @return the depth of the PROPFIND request
+         */
+        private final int depth;
+
+        @Getter(AccessLevel.NONE)
+        private final MimeTyper mimeTyper;
+
+        @Getter(AccessLevel.NONE)
+        private String mimeType;
+
+        /**
+         * @return the mime type of a resource, detected when it is asked for the first time, or
+         * {@code null} for a collection or if it is unknown
+         */
+        @Nullable
+        public String getMimeType() {
+            if (mimeType == null && !storedObject.isFolder()) {
+                mimeType = mimeTyper.getMimeType(transaction, path, storedObject);
+            }
+            return mimeType;
+        }
+
+        /**
+         * @return the last segment of the path
+         */
+        public String getName() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.prop;
+
+import lombok.Getter;
+
+/**
+ * Number of resources a listing may still contain.
+ */
+final class NodeBudget {
+
+    private int remaining;
+
+    @Getter
+    private boolean exhausted;
+
+    /**
+     * @param maxNodes the maximum number of resources, 0 for no limit
+     */
+    NodeBudget(int maxNodes) {
+        remaining = maxNodes > 0 ? maxNodes : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return false if the limit is reached and the resource must not be listed
+     */
+    boolean take() {
+        if (remaining == 0) {
+            exhausted = true;
+            return false;
+        }
+        remaining--;
+        return true;
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.prop;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import org.drjekyll.webdav.methods.ChangeJournal;
+
+/**
+ * Least recently used cache of serialized PROPFIND multistatus bodies. The key contains the change
+ * tag of the collection, so any change below the collection makes its entries unreachable and
+ * they age out. The cache holds at most {@code maxChars} characters; bodies larger than an eighth
+ * of that are not cached.
+ */
+public class PropfindCache {
+
+    private final ChangeJournal changeJournal;
+
+    private final long maxChars;
+
+    private final Map<String, String> bodies = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private long size;
+
+    /**
+     * @param changeJournal the journal maintaining the change tags of the collections
+     * @param maxChars      the maximum number of characters held
+     */
+    public PropfindCache(ChangeJournal changeJournal, long maxChars) {
+        this.changeJournal = changeJournal;
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * @param collection path of the listed collection
+     * @param request    everything else the body depends on, e.g. depth and properties
+     * @return the key of the body in the current state of the collection
+     */
+    public String getKey(String collection, String request) {
+        return changeJournal.getCollectionTag(collection) + ' ' + request + ' ' + collection;
+    }
+
+    @Nullable
+    public synchronized String get(String key) {
+        String body = bodies.get(key);
+        (body == null ? misses : hits).incrementAndGet();
+        return body;
+    }
+
+    public synchronized void put(String key, String body) {
+        if (body.length() > getMaxBodyChars()) {
+            return;
+        }
+        String previous = bodies.put(key, body);
+        size += body.length() - (previous == null ? 0 : previous.length());
+        Iterator<String> eldest = bodies.values().iterator();
+        while (size > maxChars && eldest.hasNext()) {
+            size -= eldest.next().length();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return the number of characters of the largest body which is cached
+     */
+    public long getMaxBodyChars() {
+        return maxChars / 8;
+    }
+
+    /**
+     * @return number of requests answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of cacheable requests that had to list the collection
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+}
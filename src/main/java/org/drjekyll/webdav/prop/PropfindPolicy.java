@@ -0,0 +1,142 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.prop;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import javax.annotation.Nullable;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.drjekyll.webdav.exceptions.WebdavException;
+
+/**
+ * Limits what a PROPFIND may cost, per path prefix and per principal. A policy consists of rules
+ * separated by commas or semicolons, each made of four fields separated by whitespace:
+ * <ol>
+ *     <li>the path prefix the rule applies to, e.g. {@code /} or {@code /archive}</li>
+ *     <li>the name of the principal it applies to, {@code *} for everybody</li>
+ *     <li>what to do with {@code Depth: infinity}: {@code allow}, {@code reject} it with the
+ *     {@code propfind-finite-depth} precondition or {@code downgrade} it to depth 1</li>
+ *     <li>the maximum number of resources listed, 0 for no limit</li>
+ * </ol>
+ * For a request the rule with the longest matching prefix applies; of rules with the same prefix,
+ * one for the principal wins over one for everybody. For example
+ * {@code / * reject 10000, / backup allow 0} lets only {@code backup} list the whole tree.
+ */
+public class PropfindPolicy {
+
+    private final List<Rule> rules;
+
+    public PropfindPolicy(List<Rule> rules) {
+        this.rules = new ArrayList<>(rules);
+    }
+
+    /**
+     * @param policy the rules as described above
+     * @throws WebdavException if a rule is malformed
+     */
+    public static PropfindPolicy parse(String policy) {
+        List<Rule> rules = new ArrayList<>();
+        for (String rule : policy.split("[,;\\n]")) {
+            if (rule.trim().isEmpty()) {
+                continue;
+            }
+            String[] fields = rule.trim().split("\\s+");
+            if (fields.length != 4) {
+                throw new WebdavException("invalid PROPFIND policy rule: " + rule.trim());
+            }
+            try {
+                rules.add(new Rule(normalize(fields[0]),
+                    "*".equals(fields[1]) ? null : fields[1],
+                    Infinity.valueOf(fields[2].toUpperCase(Locale.ROOT)),
+                    Integer.parseInt(fields[3])
+                ));
+            } catch (IllegalArgumentException e) {
+                throw new WebdavException("invalid PROPFIND policy rule: " + rule.trim(), e);
+            }
+        }
+        return new PropfindPolicy(rules);
+    }
+
+    /**
+     * @return the rule applying to a PROPFIND on the path, or {@code null} if there is none
+     */
+    @Nullable
+    public Rule getRule(String path, @Nullable Principal principal) {
+        String normalized = normalize(path);
+        String name = principal == null ? null : principal.getName();
+        Rule applying = null;
+        for (Rule rule : rules) {
+            if (!rule.matches(normalized, name)) {
+                continue;
+            }
+            if (applying == null
+                || rule.prefix.length() > applying.prefix.length()
+                || rule.prefix.length() == applying.prefix.length()
+                && applying.principal == null
+                && rule.principal != null) {
+                applying = rule;
+            }
+        }
+        return applying;
+    }
+
+    private static String normalize(String path) {
+        String normalized = path.startsWith("/") ? path : '/' + path;
+        while (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    /**
+     * What to do with a PROPFIND of infinite depth.
+     */
+    public enum Infinity {
+        ALLOW, REJECT, DOWNGRADE
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Rule {
+
+        private final String prefix;
+
+        /**
+         * Name of the principal, {@code null} for everybody.
+         */
+        @Nullable
+        private final String principal;
+
+        private final Infinity infinity;
+
+        /**
+         * Maximum number of resources listed, 0 for no limit.
+         */
+        private final int maxNodes;
+
+        boolean matches(String path, @Nullable String principalName) {
+            boolean pathMatches = "/".equals(prefix)
+                || path.equals(prefix)
+                || path.startsWith(prefix + '/');
+            return pathMatches && (principal == null || principal.equals(principalName));
+        }
+
+    }
+
+}
@@ -1,8 +1,18 @@
 package org.drjekyll.webdav.prop;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import javax.annotation.Nullable;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.drjekyll.webdav.exceptions.WebdavException;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
@@ -44,4 +54,37 @@ public final class XMLHelper {
         return properties;
     }
 
+    /**
+     * @return the properties of a prop element by namespace and name, mapped to their content as
+     * XML
+     */
+    public static Map<String, String> getPropertyValuesFromXML(Node propNode) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        NodeList childList = propNode.getChildNodes();
+        for (int i = 0; i < childList.getLength(); i++) {
+            Node currentNode = childList.item(i);
+            if (currentNode.getNodeType() == Node.ELEMENT_NODE) {
+                properties.put(currentNode.getNamespaceURI() + ':' + currentNode.getLocalName(),
+                    getContent(currentNode)
+                );
+            }
+        }
+        return properties;
+    }
+
+    private static String getContent(Node node) {
+        StringWriter content = new StringWriter();
+        try {
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            NodeList childList = node.getChildNodes();
+            for (int i = 0; i < childList.getLength(); i++) {
+                transformer.transform(new DOMSource(childList.item(i)), new StreamResult(content));
+            }
+        } catch (TransformerException e) {
+            throw new WebdavException(e);
+        }
+        return content.toString();
+    }
+
 }
@@ -0,0 +1,287 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.store;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Immutable blobs addressed by the SHA-256 hash of their content. Blobs are stored in a two level
+ * directory tree below the blob directory, e.g. {@code ab/cd/abcd...}.
+ * <p>
+ * The blob store keeps an in-memory reference count per blob. Owners of references rebuild the
+ * counts on start by calling {@link #retain(String)} for each reference they hold. Blobs without
+ * references are deleted by a background garbage collection once they have been unreferenced for
+ * the grace period, so that a blob released and referenced again shortly after is not written
+ * twice.
+ */
+@Slf4j
+class BlobStore {
+
+    static final String ALGORITHM = "SHA-256";
+
+    static final int DIGEST_LENGTH = 32;
+
+    private static final int BUF_SIZE = 65536;
+
+    private static final String TEMP_DIR = "tmp";
+
+    private final File dir;
+
+    private final File tempDir;
+
+    private final Duration gracePeriod;
+
+    private final Map<String, Integer> references = new HashMap<>();
+
+    private ScheduledExecutorService collector;
+
+    BlobStore(File dir, Duration gracePeriod) {
+        this.dir = dir;
+        this.gracePeriod = gracePeriod;
+        tempDir = new File(dir, TEMP_DIR);
+        if (!tempDir.isDirectory() && !tempDir.mkdirs()) {
+            throw new IllegalStateException("cannot create blob directory " + tempDir);
+        }
+        // leftovers of interrupted writes
+        File[] leftovers = tempDir.listFiles();
+        if (leftovers != null) {
+            for (File leftover : leftovers) {
+                if (!leftover.delete()) {
+                    log.warn("Could not delete {}", leftover);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts collecting unreferenced blobs periodically. Must be called after all references have
+     * been retained.
+     */
+    void startGarbageCollection(Duration interval) {
+        collector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "webdav-blob-gc");
+            thread.setDaemon(true);
+            return thread;
+        });
+        collector.scheduleWithFixedDelay(this::collectGarbage,
+            interval.toMillis(),
+            interval.toMillis(),
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    void destroy() {
+        if (collector != null) {
+            collector.shutdownNow();
+        }
+    }
+
+    /**
+     * @return a new path for a file that is written before it is moved to its place, which is on
+     * the file system of the blobs and deleted on the next start if it is left over
+     */
+    Path newTempFile() {
+        return new File(tempDir, UUID.randomUUID().toString()).toPath();
+    }
+
+    /**
+     * Stores the content, unless a blob with the same content exists already, and retains a
+     * reference to it.
+     *
+     * @return the hash of the content
+     */
+    String put(InputStream content) throws IOException {
+        Path temp = newTempFile();
+        try {
+            MessageDigest digest = newDigest();
+            try (InputStream in = new DigestInputStream(content, digest);
+                 OutputStream out = Files.newOutputStream(temp)) {
+                byte[] buffer = new byte[BUF_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            String hash = toHex(digest.digest());
+            synchronized (references) {
+                File blob = getFile(hash);
+                if (blob.exists()) {
+                    log.trace("Deduplicated content {}", hash);
+                } else {
+                    Files.createDirectories(blob.getParentFile().toPath());
+                    Files.move(temp, blob.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                }
+                retain(hash);
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Stores content held in memory and retains a reference to it. Unlike
+     * {@link #put(InputStream)}, nothing is written if a blob with the same content exists.
+     *
+     * @return the hash of the content
+     */
+    String put(byte[] content, int length) throws IOException {
+        MessageDigest digest = newDigest();
+        digest.update(content, 0, length);
+        String hash = toHex(digest.digest());
+        if (retain(hash)) {
+            log.trace("Deduplicated content {}", hash);
+            return hash;
+        }
+        Path temp = newTempFile();
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                out.write(content, 0, length);
+            }
+            synchronized (references) {
+                File blob = getFile(hash);
+                if (!blob.exists()) {
+                    Files.createDirectories(blob.getParentFile().toPath());
+                    Files.move(temp, blob.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                }
+                retain(hash);
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Retains a reference to an existing blob.
+     *
+     * @return false if there is no such blob
+     */
+    boolean retain(String hash) {
+        synchronized (references) {
+            if (!getFile(hash).exists()) {
+                return false;
+            }
+            references.merge(hash, 1, Integer::sum);
+            return true;
+        }
+    }
+
+    void release(String hash) {
+        synchronized (references) {
+            Integer count = references.get(hash);
+            if (count == null || count <= 1) {
+                references.remove(hash);
+                // the grace period starts now
+                if (!getFile(hash).setLastModified(System.currentTimeMillis())) {
+                    log.trace("Could not touch unreferenced blob {}", hash);
+                }
+            } else {
+                references.put(hash, count - 1);
+            }
+        }
+    }
+
+    int getReferences(String hash) {
+        synchronized (references) {
+            return references.getOrDefault(hash, 0);
+        }
+    }
+
+    InputStream open(String hash) throws IOException {
+        return new BufferedInputStream(Files.newInputStream(getFile(hash).toPath()), BUF_SIZE);
+    }
+
+    long getLength(String hash) {
+        return getFile(hash).length();
+    }
+
+    File getFile(String hash) {
+        return new File(new File(new File(dir, hash.substring(0, 2)), hash.substring(2, 4)), hash);
+    }
+
+    /**
+     * Deletes all blobs that are not referenced and were not touched within the grace period.
+     *
+     * @return the number of deleted blobs
+     */
+    int collectGarbage() {
+        long expiry = System.currentTimeMillis() - gracePeriod.toMillis();
+        int deleted = 0;
+        File[] firstLevel = dir.listFiles(File::isDirectory);
+        if (firstLevel == null) {
+            return 0;
+        }
+        for (File first : firstLevel) {
+            if (first.getName().equals(TEMP_DIR)) {
+                continue;
+            }
+            File[] secondLevel = first.listFiles(File::isDirectory);
+            for (File second : secondLevel == null ? new File[0] : secondLevel) {
+                File[] blobs = second.listFiles();
+                for (File blob : blobs == null ? new File[0] : blobs) {
+                    synchronized (references) {
+                        if (!references.containsKey(blob.getName())
+                            && blob.lastModified() <= expiry
+                            && blob.delete()) {
+                            deleted++;
+                        }
+                    }
+                }
+            }
+        }
+        if (deleted > 0) {
+            log.debug("Deleted {} unreferenced blobs", deleted);
+        }
+        return deleted;
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not supported", e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+}
@@ -0,0 +1,373 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.drjekyll.webdav.Transaction;
+import org.drjekyll.webdav.exceptions.WebdavException;
+
+/**
+ * Store that splits content into content-defined chunks, see {@link ContentDefinedChunker}, and
+ * keeps each chunk as a blob, see {@link BlobStore}. The folder tree below {@value #FILES_DIR}
+ * mirrors the namespace; each resource is a manifest listing its chunks. Chunks are shared across
+ * versions and resources, so storing a large resource again with a few changed bytes only writes
+ * the chunks around the changes, and copying a resource within the store only writes a manifest.
+ * <p>
+ * Reference counts are rebuilt from the manifests when the store is created, and unreferenced
+ * chunks are deleted by a background garbage collection. The store is configured by the init
+ * parameters {@code chunkSize} (average chunk size in bytes, rounded down to a power of two,
+ * default 65536), {@code gcInterval} and {@code gcGracePeriod} (seconds, default 600 and 3600).
+ */
+@Slf4j
+public class ChunkingStore implements WebdavStore {
+
+    static final String FILES_DIR = "files";
+
+    static final String CHUNKS_DIR = "chunks";
+
+    private static final int HASH_LENGTH = 64;
+
+    private final File root;
+
+    private final BlobStore blobStore;
+
+    private final int chunkSize;
+
+    public ChunkingStore(File root) {
+        this(root, new Properties());
+    }
+
+    public ChunkingStore(File root, Properties parameters) {
+        this(root,
+            Integer.parseInt(parameters.getProperty("chunkSize", "65536").trim()),
+            Duration.ofSeconds(Long.parseLong(parameters.getProperty("gcInterval", "600").trim())),
+            Duration.ofSeconds(Long.parseLong(parameters
+                .getProperty("gcGracePeriod", "3600")
+                .trim()))
+        );
+    }
+
+    public ChunkingStore(
+        File root, int chunkSize, Duration gcInterval, Duration gcGracePeriod
+    ) {
+        this.chunkSize = Integer.highestOneBit(chunkSize);
+        if (this.chunkSize < 4) {
+            throw new IllegalArgumentException("chunk size too small: " + chunkSize);
+        }
+        this.root = new File(root, FILES_DIR);
+        if (!this.root.isDirectory() && !this.root.mkdirs()) {
+            throw new WebdavException("root path: "
+                + this.root.getAbsolutePath()
+                + " does not exist and could not be created");
+        }
+        blobStore = new BlobStore(new File(root, CHUNKS_DIR), gcGracePeriod);
+        retainReferences();
+        blobStore.startGarbageCollection(gcInterval);
+    }
+
+    private void retainReferences() {
+        try (Stream<Path> files = Files.walk(root.toPath())) {
+            files.filter(Files::isRegularFile).forEach(file -> {
+                for (String hash : readManifest(file.toFile())) {
+                    if (!blobStore.retain(hash)) {
+                        log.error("Chunk {} referenced by {} is missing", hash, file);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            throw new WebdavException(e);
+        }
+    }
+
+    /**
+     * @return the blob store holding the chunks
+     */
+    BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    @Override
+    public void destroy() {
+        blobStore.destroy();
+    }
+
+    @Override
+    public Transaction begin(Principal principal) {
+        log.trace("ChunkingStore.begin()");
+        return () -> principal;
+    }
+
+    @Override
+    public void checkAuthentication(Transaction transaction) {
+        log.trace("ChunkingStore.checkAuthentication()");
+    }
+
+    @Override
+    public void commit(Transaction transaction) {
+        log.trace("ChunkingStore.commit()");
+    }
+
+    @Override
+    public void rollback(Transaction transaction) {
+        log.trace("ChunkingStore.rollback()");
+    }
+
+    @Override
+    public void createFolder(Transaction transaction, String folderUri) {
+        log.trace("ChunkingStore.createFolder({})", folderUri);
+        if (!new File(root, folderUri).mkdir()) {
+            throw new WebdavException("cannot create folder: " + folderUri);
+        }
+    }
+
+    @Override
+    public void createResource(Transaction transaction, String resourceUri) {
+        log.trace("ChunkingStore.createResource({})", resourceUri);
+        try {
+            // an empty manifest stands for empty content
+            if (!new File(root, resourceUri).createNewFile()) {
+                throw new WebdavException("cannot create file: " + resourceUri);
+            }
+        } catch (IOException e) {
+            log.error("ChunkingStore.createResource({}) failed", resourceUri);
+            throw new WebdavException(e);
+        }
+    }
+
+    @Override
+    public InputStream getResourceContent(Transaction transaction, String resourceUri) {
+        log.trace("ChunkingStore.getResourceContent({})", resourceUri);
+        return new ChunkInputStream(blobStore, readManifest(new File(root, resourceUri)));
+    }
+
+    @Override
+    public long setResourceContent(
+        Transaction transaction,
+        String resourceUri,
+        InputStream content,
+        String contentType,
+        String characterEncoding
+    ) {
+        log.trace("ChunkingStore.setResourceContent({})", resourceUri);
+        List<String> hashes = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        try {
+            if (content instanceof ChunkInputStream
+                && ((ChunkInputStream) content).blobStore == blobStore) {
+                // copy within the store
+                for (String hash : ((ChunkInputStream) content).hashes) {
+                    if (!blobStore.retain(hash)) {
+                        throw new IOException("chunk " + hash + " is missing");
+                    }
+                    hashes.add(hash);
+                    lengths.add((int) blobStore.getLength(hash));
+                }
+                content.close();
+            } else {
+                ContentDefinedChunker chunker = new ContentDefinedChunker(content, chunkSize);
+                byte[] chunk = new byte[ContentDefinedChunker.getMaxSize(chunkSize)];
+                int length;
+                while ((length = chunker.next(chunk)) > 0) {
+                    hashes.add(blobStore.put(chunk, length));
+                    lengths.add(length);
+                }
+            }
+            File file = new File(root, resourceUri);
+            List<String> previous = readManifest(file);
+            long length = writeManifest(file, hashes, lengths);
+            previous.forEach(blobStore::release);
+            return length;
+        } catch (IOException e) {
+            hashes.forEach(blobStore::release);
+            log.error("ChunkingStore.setResourceContent({}) failed", resourceUri);
+            throw new WebdavException(e);
+        }
+    }
+
+    @Override
+    public String[] getChildrenNames(Transaction transaction, String folderUri) {
+        log.trace("ChunkingStore.getChildrenNames({})", folderUri);
+        File folder = new File(root, folderUri);
+        if (!folder.isDirectory()) {
+            return null;
+        }
+        String[] children = folder.list();
+        return children == null ? new String[0] : children;
+    }
+
+    @Override
+    public void removeObject(Transaction transaction, String uri) {
+        File file = new File(root, uri);
+        List<String> hashes = readManifest(file);
+        boolean success = file.delete();
+        log.trace("ChunkingStore.removeObject({})={}", uri, success);
+        if (!success) {
+            throw new WebdavException("cannot delete object: " + uri);
+        }
+        hashes.forEach(blobStore::release);
+    }
+
+    @Override
+    public long getResourceLength(Transaction transaction, String path) {
+        log.trace("ChunkingStore.getResourceLength({})", path);
+        File file = new File(root, path);
+        if (!file.isFile() || file.length() == 0L) {
+            return 0L;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+            return in.readLong();
+        } catch (IOException e) {
+            throw new WebdavException(e);
+        }
+    }
+
+    @Override
+    public StoredObject getStoredObject(Transaction transaction, String uri) {
+        File file = new File(root, uri);
+        if (!file.exists()) {
+            return null;
+        }
+        StoredObject so = new StoredObject();
+        so.setFolder(file.isDirectory());
+        so.setLastModified(Instant.ofEpochMilli(file.lastModified()));
+        so.setCreationDate(Instant.ofEpochMilli(file.lastModified()));
+        so.setResourceLength(file.isDirectory() ? 0L : getResourceLength(transaction, uri));
+        return so;
+    }
+
+    /**
+     * Writes the total length followed by the hash and length of each chunk.
+     *
+     * @return the total length
+     */
+    private long writeManifest(File file, List<String> hashes, List<Integer> lengths)
+        throws IOException {
+        long length = 0L;
+        for (int chunkLength : lengths) {
+            length += chunkLength;
+        }
+        // replaced at once, so that a crash never leaves a truncated manifest
+        Path temp = blobStore.newTempFile();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(temp)))) {
+            out.writeLong(length);
+            out.writeInt(hashes.size());
+            for (int i = 0; i < hashes.size(); i++) {
+                out.write(hashes.get(i).getBytes(StandardCharsets.US_ASCII));
+                out.writeInt(lengths.get(i));
+            }
+        }
+        LocalFileSystemStore.moveAtomically(temp, file.toPath());
+        return length;
+    }
+
+    private static List<String> readManifest(File file) {
+        if (!file.isFile() || file.length() == 0L) {
+            return Collections.emptyList();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(
+            file.toPath())))) {
+            in.readLong();
+            int count = in.readInt();
+            List<String> hashes = new ArrayList<>(count);
+            byte[] hash = new byte[HASH_LENGTH];
+            for (int i = 0; i < count; i++) {
+                in.readFully(hash);
+                in.readInt();
+                hashes.add(new String(hash, StandardCharsets.US_ASCII));
+            }
+            return hashes;
+        } catch (IOException e) {
+            throw new WebdavException(e);
+        }
+    }
+
+    /**
+     * Content of a resource, which opens one chunk after the other and remembers the chunks so
+     * that storing it again within the same store only adds references.
+     */
+    static final class ChunkInputStream extends InputStream {
+
+        private final BlobStore blobStore;
+
+        private final List<String> hashes;
+
+        private int next;
+
+        private InputStream current;
+
+        ChunkInputStream(BlobStore blobStore, List<String> hashes) {
+            this.blobStore = blobStore;
+            this.hashes = hashes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (current == null) {
+                    if (next == hashes.size()) {
+                        return -1;
+                    }
+                    current = blobStore.open(hashes.get(next++));
+                }
+                int read = current.read(b, off, len);
+                if (read != -1) {
+                    return read;
+                }
+                current.close();
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+            next = hashes.size();
+        }
+
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.drjekyll.webdav.store.LocalFileSystemTransaction.Change;
+
+/**
+ * Write-ahead log of a committed {@link LocalFileSystemTransaction}. The log lists the changes of
+ * the transaction in order and is written to the staging directory of the transaction before any
+ * change is applied. It is created under a temporary name and renamed when complete, so a
+ * transaction counts as committed exactly when its log exists.
+ * <p>
+ * Applying the changes is idempotent: folders that already exist are kept, staged files that are
+ * gone have already been moved into place, and objects that are gone have already been removed.
+ * A commit interrupted by a crash is therefore completed by replaying the log on the next start.
+ */
+@Slf4j
+final class CommitLog {
+
+    static final String FILE_NAME = "commit.log";
+
+    private static final int VERSION = 1;
+
+    private CommitLog() {
+    }
+
+    static void write(File stagingDir, Collection<Change> changes, boolean force)
+        throws IOException {
+        Path temp = new File(stagingDir, FILE_NAME + ".tmp").toPath();
+        try (FileChannel channel = FileChannel.open(temp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(VERSION);
+            out.writeInt(changes.size());
+            for (Change change : changes) {
+                out.writeByte(change.getType().ordinal());
+                out.writeUTF(change.getPath());
+                out.writeUTF(change.getStaged() == null ? "" : change.getStaged());
+            }
+            out.flush();
+            if (force) {
+                channel.force(true);
+            }
+        }
+        Files.move(temp, new File(stagingDir, FILE_NAME).toPath());
+        if (force) {
+            LocalFileSystemStore.syncDirectory(stagingDir.toPath());
+        }
+    }
+
+    static List<Change> read(File stagingDir) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(
+            new File(stagingDir, FILE_NAME).toPath())))) {
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported commit log version " + version);
+            }
+            int size = in.readInt();
+            List<Change> changes = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Change.Type type = Change.Type.values()[in.readByte()];
+                String path = in.readUTF();
+                String staged = in.readUTF();
+                changes.add(new Change(type, path, staged.isEmpty() ? null : staged));
+            }
+            return changes;
+        }
+    }
+
+    static void apply(File root, File stagingDir, Collection<Change> changes) throws IOException {
+        for (Change change : changes) {
+            File target = new File(root, change.getPath());
+            switch (change.getType()) {
+                case CREATE_FOLDER:
+                    if (!target.isDirectory()) {
+                        Files.deleteIfExists(target.toPath());
+                        Files.createDirectories(target.toPath());
+                    }
+                    break;
+                case WRITE:
+                    File staged = new File(stagingDir, change.getStaged());
+                    if (staged.exists()) {
+                        if (target.isDirectory()) {
+                            Files.delete(target.toPath());
+                        }
+                        LocalFileSystemStore.moveAtomically(staged.toPath(), target.toPath());
+                    }
+                    break;
+                case REMOVE:
+                    Files.deleteIfExists(target.toPath());
+                    break;
+                default:
+                    throw new IllegalStateException("unknown change " + change.getType());
+            }
+        }
+    }
+
+    /**
+     * Deletes the staging directory of a transaction, the log last.
+     */
+    static void discard(File stagingDir) {
+        File[] files = stagingDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.getName().equals(FILE_NAME) && !file.delete()) {
+                    log.warn("Could not delete staged file {}", file);
+                }
+            }
+        }
+        File logFile = new File(stagingDir, FILE_NAME);
+        if (logFile.exists() && !logFile.delete()) {
+            log.warn("Could not delete commit log {}", logFile);
+        }
+        if (stagingDir.exists() && !stagingDir.delete()) {
+            log.warn("Could not delete staging directory {}", stagingDir);
+        }
+    }
+
+}
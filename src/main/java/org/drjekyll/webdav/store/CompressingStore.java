@@ -0,0 +1,630 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.drjekyll.webdav.Transaction;
+import org.drjekyll.webdav.exceptions.WebdavException;
+
+/**
+ * Decorator compressing the content of resources at rest. Content is split into blocks of
+ * {@value #BLOCK_SIZE} bytes which are compressed independently with Deflate at level 1, or kept
+ * as they are if they do not compress. A trailer lists the stored length of each block and the
+ * logical length, so lengths are reported as before and skipping within the content does not
+ * decompress the skipped blocks. Content stored without a trailer, e.g. before the decorator was
+ * configured, is read as it is.
+ * <p>
+ * Configured as {@code ResourceHandlerImplementation}, the decorator wraps a
+ * {@link LocalFileSystemStore}, which receives all init parameters. The layouts of recently used
+ * resources are kept in memory, so that listing a collection does not read the content of its
+ * members; their number is configured by the init parameter {@code layoutCacheSize} (default
+ * {@value #DEFAULT_CACHED_LAYOUTS}). Only layouts of committed content are cached: a transaction
+ * reads the layouts of the resources it changed itself until it ends.
+ */
+@Slf4j
+public class CompressingStore implements WebdavStore {
+
+    static final int BLOCK_SIZE = 65536;
+
+    private static final int MAGIC = 0x57445A31;
+
+    /**
+     * Logical length, block size, block count and magic
+     */
+    private static final int TRAILER_SIZE = 20;
+
+    private static final int DEFAULT_CACHED_LAYOUTS = 16384;
+
+    /**
+     * Blocks whose index is read together with the trailer, i.e. content of up to 64 MiB
+     */
+    private static final int TAIL_BLOCKS = 1024;
+
+    private final WebdavStore delegate;
+
+    private final Map<String, Layout> layouts;
+
+    /**
+     * Paths changed by each open transaction
+     */
+    private final Map<Transaction, Set<String>> changed =
+        Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * Incremented whenever content may have changed, so that a layout read before is not cached
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    public CompressingStore(File root) {
+        this(root, new Properties());
+    }
+
+    public CompressingStore(File root, Properties parameters) {
+        this(new LocalFileSystemStore(root, parameters),
+            Integer.parseInt(parameters
+                .getProperty("layoutCacheSize", String.valueOf(DEFAULT_CACHED_LAYOUTS))
+                .trim())
+        );
+    }
+
+    public CompressingStore(WebdavStore delegate) {
+        this(delegate, DEFAULT_CACHED_LAYOUTS);
+    }
+
+    /**
+     * @param delegate        the store keeping the compressed content
+     * @param layoutCacheSize number of resources whose layout is kept in memory, which should
+     *                        exceed the number of members of the largest listed collection
+     */
+    public CompressingStore(WebdavStore delegate, int layoutCacheSize) {
+        this.delegate = delegate;
+        layouts =
+            Collections.synchronizedMap(new LinkedHashMap<String, Layout>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Layout> eldest) {
+                    return size() > layoutCacheSize;
+                }
+            });
+    }
+
+    @Override
+    public void destroy() {
+        delegate.destroy();
+    }
+
+    @Override
+    public Transaction begin(Principal principal) {
+        return delegate.begin(principal);
+    }
+
+    @Override
+    public void checkAuthentication(Transaction transaction) {
+        delegate.checkAuthentication(transaction);
+    }
+
+    @Override
+    public void commit(Transaction transaction) {
+        try {
+            delegate.commit(transaction);
+        } finally {
+            invalidate(changed.remove(transaction));
+        }
+    }
+
+    @Override
+    public void rollback(Transaction transaction) {
+        try {
+            delegate.rollback(transaction);
+        } finally {
+            invalidate(changed.remove(transaction));
+        }
+    }
+
+    @Override
+    public void createFolder(Transaction transaction, String folderUri) {
+        delegate.createFolder(transaction, folderUri);
+    }
+
+    @Override
+    public void createResource(Transaction transaction, String resourceUri) {
+        delegate.createResource(transaction, resourceUri);
+        change(transaction, resourceUri);
+    }
+
+    @Override
+    public InputStream getResourceContent(Transaction transaction, String resourceUri) {
+        log.trace("CompressingStore.getResourceContent({})", resourceUri);
+        Layout layout = getLayout(transaction, resourceUri, -1L);
+        InputStream content = delegate.getResourceContent(transaction, resourceUri);
+        return layout == null ? content : new DecompressingInputStream(content, layout);
+    }
+
+    @Override
+    public long setResourceContent(
+        Transaction transaction,
+        String resourceUri,
+        InputStream content,
+        String contentType,
+        String characterEncoding
+    ) {
+        log.trace("CompressingStore.setResourceContent({})", resourceUri);
+        CompressingInputStream compressed = new CompressingInputStream(content);
+        try {
+            delegate.setResourceContent(transaction,
+                resourceUri,
+                compressed,
+                contentType,
+                characterEncoding
+            );
+        } finally {
+            compressed.close();
+            change(transaction, resourceUri);
+        }
+        return compressed.logicalLength;
+    }
+
+    @Override
+    public void checkStorage(Transaction transaction, String resourceUri, long expectedLength) {
+        // the compressed content is at most slightly larger than the logical content
+        delegate.checkStorage(transaction, resourceUri, expectedLength);
+    }
+
+    @Override
+    public String[] getChildrenNames(Transaction transaction, String folderUri) {
+        return delegate.getChildrenNames(transaction, folderUri);
+    }
+
+    @Override
+    public long getResourceLength(Transaction transaction, String path) {
+        Layout layout = getLayout(transaction, path, -1L);
+        return layout == null
+            ? delegate.getResourceLength(transaction, path)
+            : layout.logicalLength;
+    }
+
+    @Override
+    public void removeObject(Transaction transaction, String uri) {
+        delegate.removeObject(transaction, uri);
+        change(transaction, uri);
+    }
+
+    @Override
+    public StoredObject getStoredObject(Transaction transaction, String uri) {
+        StoredObject so = delegate.getStoredObject(transaction, uri);
+        if (so != null && so.isResource()) {
+            Layout layout = getLayout(transaction, uri, so.getResourceLength());
+            if (layout != null) {
+                so.setResourceLength(layout.logicalLength);
+            }
+        }
+        return so;
+    }
+
+    /**
+     * Records a change of the object and its members once it was made, and drops their layouts.
+     */
+    private void change(Transaction transaction, String uri) {
+        String path = LocalFileSystemTransaction.normalize(uri);
+        changed.computeIfAbsent(transaction, key -> ConcurrentHashMap.newKeySet()).add(path);
+        invalidate(Collections.singleton(path));
+    }
+
+    private void invalidate(@Nullable Set<String> paths) {
+        if (paths == null) {
+            return;
+        }
+        synchronized (layouts) {
+            generation.incrementAndGet();
+            layouts.keySet().removeIf(key -> {
+                for (String path : paths) {
+                    if (path.isEmpty() || key.equals(path) || key.startsWith(path + '/')) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        }
+    }
+
+    /**
+     * @param storedLength length of the stored content if known, -1 otherwise
+     * @return the layout of compressed content or {@code null} if the content is not compressed
+     */
+    @Nullable
+    private Layout getLayout(Transaction transaction, String uri, long storedLength) {
+        long observed = generation.get();
+        long length =
+            storedLength < 0L ? delegate.getResourceLength(transaction, uri) : storedLength;
+        String path = LocalFileSystemTransaction.normalize(uri);
+        Set<String> changedPaths = changed.get(transaction);
+        boolean committed = changedPaths == null || !changedPaths.contains(path);
+        Layout layout = committed ? layouts.get(path) : null;
+        if (layout != null && layout.storedLength == length) {
+            return layout.blocks == null ? null : layout;
+        }
+        try {
+            layout = readLayout(transaction, uri, length);
+        } catch (IOException e) {
+            log.error("CompressingStore.getLayout({}) failed", uri);
+            throw new WebdavException(e);
+        }
+        if (committed) {
+            synchronized (layouts) {
+                // content may have changed while it was read
+                if (generation.get() == observed) {
+                    layouts.put(path, layout);
+                }
+            }
+        }
+        return layout.blocks == null ? null : layout;
+    }
+
+    private Layout readLayout(Transaction transaction, String uri, long storedLength)
+        throws IOException {
+        if (storedLength < TRAILER_SIZE) {
+            return new Layout(storedLength, storedLength, 0, null);
+        }
+        // the trailer and, unless the content is very large, the whole index are read at once
+        int tailLength = (int) Math.min(storedLength, TRAILER_SIZE + 4L * TAIL_BLOCKS);
+        byte[] tail = new byte[tailLength];
+        try (DataInputStream in = new DataInputStream(delegate.getResourceContent(transaction,
+            uri
+        ))) {
+            skipFully(in, storedLength - tailLength);
+            in.readFully(tail);
+        }
+        DataInputStream trailer = new DataInputStream(new ByteArrayInputStream(tail,
+            tailLength - TRAILER_SIZE,
+            TRAILER_SIZE
+        ));
+        long logicalLength = trailer.readLong();
+        int blockSize = trailer.readInt();
+        int blockCount = trailer.readInt();
+        if (trailer.readInt() != MAGIC
+            || blockSize <= 0
+            || blockCount < 0
+            || TRAILER_SIZE + 4L * blockCount > storedLength) {
+            return new Layout(storedLength, storedLength, 0, null);
+        }
+        int indexLength = 4 * blockCount;
+        int[] blocks;
+        if (TRAILER_SIZE + indexLength <= tailLength) {
+            blocks = readBlocks(new DataInputStream(new ByteArrayInputStream(tail,
+                tailLength - TRAILER_SIZE - indexLength,
+                indexLength
+            )), blockCount);
+        } else {
+            try (DataInputStream in = new DataInputStream(delegate.getResourceContent(transaction,
+                uri
+            ))) {
+                skipFully(in, storedLength - TRAILER_SIZE - indexLength);
+                blocks = readBlocks(in, blockCount);
+            }
+        }
+        long total = TRAILER_SIZE + (long) indexLength;
+        for (int block : blocks) {
+            total += Math.abs((long) block);
+        }
+        if (total != storedLength) {
+            // plain content that happens to end like a trailer
+            return new Layout(storedLength, storedLength, 0, null);
+        }
+        return new Layout(storedLength, logicalLength, blockSize, blocks);
+    }
+
+    private static int[] readBlocks(DataInputStream in, int blockCount) throws IOException {
+        int[] blocks = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            blocks[i] = in.readInt();
+        }
+        return blocks;
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+        long remaining = n;
+        while (remaining > 0L) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0L) {
+                if (in.read() == -1) {
+                    throw new EOFException();
+                }
+                skipped = 1L;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Stored length of each block, negative for blocks that are stored uncompressed.
+     */
+    private static final class Layout {
+
+        private final long storedLength;
+
+        private final long logicalLength;
+
+        private final int blockSize;
+
+        @Nullable
+        private final int[] blocks;
+
+        private Layout(
+            long storedLength, long logicalLength, int blockSize, @Nullable int[] blocks
+        ) {
+            this.storedLength = storedLength;
+            this.logicalLength = logicalLength;
+            this.blockSize = blockSize;
+            this.blocks = blocks;
+        }
+
+    }
+
+    /**
+     * Compresses content block by block while it is read, followed by the trailer.
+     */
+    static final class CompressingInputStream extends InputStream {
+
+        private final InputStream in;
+
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+
+        private final byte[] block = new byte[BLOCK_SIZE];
+
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+
+        private byte[] buffer = new byte[BLOCK_SIZE + BLOCK_SIZE / 8 + 64];
+
+        private int position;
+
+        private int limit;
+
+        private int blockCount;
+
+        private long logicalLength;
+
+        private boolean finished;
+
+        CompressingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == limit) {
+                if (finished) {
+                    return -1;
+                }
+                fill();
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private void fill() throws IOException {
+            int length = 0;
+            int read = 0;
+            while (length < block.length && read != -1) {
+                read = in.read(block, length, block.length - length);
+                if (read > 0) {
+                    length += read;
+                }
+            }
+            position = 0;
+            limit = 0;
+            if (length > 0) {
+                deflater.reset();
+                deflater.setInput(block, 0, length);
+                deflater.finish();
+                while (!deflater.finished() && limit < length) {
+                    limit += deflater.deflate(buffer, limit, buffer.length - limit);
+                }
+                int stored = limit;
+                if (limit >= length) {
+                    // incompressible
+                    System.arraycopy(block, 0, buffer, 0, length);
+                    limit = length;
+                    stored = -length;
+                }
+                new DataOutputStream(index).writeInt(stored);
+                blockCount++;
+                logicalLength += length;
+            }
+            if (read == -1) {
+                finished = true;
+                writeTrailer();
+            }
+        }
+
+        private void writeTrailer() throws IOException {
+            DataOutputStream out = new DataOutputStream(index);
+            out.writeLong(logicalLength);
+            out.writeInt(BLOCK_SIZE);
+            out.writeInt(blockCount);
+            out.writeInt(MAGIC);
+            byte[] trailer = index.toByteArray();
+            if (buffer.length < limit + trailer.length) {
+                byte[] grown = new byte[limit + trailer.length];
+                System.arraycopy(buffer, 0, grown, 0, limit);
+                buffer = grown;
+            }
+            System.arraycopy(trailer, 0, buffer, limit, trailer.length);
+            limit += trailer.length;
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+        }
+
+    }
+
+    /**
+     * Decompresses content block by block. Skipping whole blocks does not read them.
+     */
+    static final class DecompressingInputStream extends InputStream {
+
+        private final InputStream in;
+
+        private final Layout layout;
+
+        private final Inflater inflater = new Inflater(true);
+
+        private final byte[] block;
+
+        private byte[] stored = new byte[0];
+
+        private int nextBlock;
+
+        private int position;
+
+        private int limit;
+
+        private DecompressingInputStream(InputStream in, Layout layout) {
+            this.in = in;
+            this.layout = layout;
+            block = new byte[layout.blockSize];
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == limit && !nextBlock()) {
+                return -1;
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(block, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.min(Math.max(n, 0L), limit - position);
+            position += skipped;
+            // whole blocks are skipped in the stored content
+            while (skipped < n && nextBlock < layout.blocks.length) {
+                int logical = getLogicalLength(nextBlock);
+                if (skipped + logical > n) {
+                    break;
+                }
+                skipFully(in, Math.abs((long) layout.blocks[nextBlock]));
+                nextBlock++;
+                skipped += logical;
+            }
+            if (skipped < n && nextBlock()) {
+                int within = (int) Math.min(n - skipped, limit);
+                position = within;
+                skipped += within;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        private int getLogicalLength(int index) {
+            long start = (long) index * layout.blockSize;
+            return (int) Math.min(layout.blockSize, layout.logicalLength - start);
+        }
+
+        private boolean nextBlock() throws IOException {
+            if (nextBlock >= layout.blocks.length) {
+                return false;
+            }
+            int storedLength = layout.blocks[nextBlock];
+            int logical = getLogicalLength(nextBlock);
+            if (storedLength < 0) {
+                new DataInputStream(in).readFully(block, 0, -storedLength);
+            } else {
+                if (stored.length < storedLength) {
+                    stored = new byte[storedLength];
+                }
+                new DataInputStream(in).readFully(stored, 0, storedLength);
+                inflater.reset();
+                inflater.setInput(stored, 0, storedLength);
+                try {
+                    int inflated = 0;
+                    while (inflated < logical && !inflater.finished()) {
+                        int n = inflater.inflate(block, inflated, logical - inflated);
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            throw new EOFException("truncated block " + nextBlock);
+                        }
+                        inflated += n;
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("corrupt block " + nextBlock, e);
+                }
+            }
+            nextBlock++;
+            position = 0;
+            limit = logical;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            in.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Splits a stream into chunks whose boundaries depend on the content, so that inserting or
+ * removing bytes only changes the chunks around the edit. A boundary is set where a gear rolling
+ * hash over the last bytes has its top bits cleared, but not before the minimum and at the latest
+ * at the maximum chunk size.
+ */
+final class ContentDefinedChunker {
+
+    /**
+     * Random values per byte. The seed must never change, since chunks of stored content would not
+     * be recognized any more.
+     */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x5EED_C0DEL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final InputStream in;
+
+    private final int minSize;
+
+    private final long mask;
+
+    private final byte[] buffer = new byte[65536];
+
+    private int position;
+
+    private int limit;
+
+    /**
+     * @param averageSize power of two, chunks are between a quarter and four times as large
+     */
+    ContentDefinedChunker(InputStream in, int averageSize) {
+        this.in = in;
+        minSize = averageSize / 4;
+        mask = -1L << (Long.SIZE - Integer.numberOfTrailingZeros(averageSize));
+    }
+
+    static int getMaxSize(int averageSize) {
+        return averageSize * 4;
+    }
+
+    /**
+     * Reads the next chunk.
+     *
+     * @param chunk buffer of at least {@link #getMaxSize(int)} bytes
+     * @return the length of the chunk, 0 at the end of the stream
+     */
+    int next(byte[] chunk) throws IOException {
+        long hash = 0L;
+        int length = 0;
+        while (length < chunk.length) {
+            if (position == limit) {
+                limit = in.read(buffer);
+                position = 0;
+                if (limit == -1) {
+                    limit = 0;
+                    return length;
+                }
+            }
+            byte b = buffer[position++];
+            chunk[length++] = b;
+            hash = (hash << 1) + GEAR[b & 0xFF];
+            if (length >= minSize && (hash & mask) == 0L) {
+                return length;
+            }
+        }
+        return length;
+    }
+
+}
@@ -0,0 +1,319 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Properties;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.drjekyll.webdav.Transaction;
+import org.drjekyll.webdav.exceptions.WebdavException;
+
+/**
+ * Store that keeps the content of resources as content-addressed blobs, see {@link BlobStore}.
+ * The folder tree below {@value #FILES_DIR} mirrors the namespace; each resource is a small file
+ * referencing the SHA-256 hash of its content. Identical uploads share one blob, and copying a
+ * resource within the store only adds a reference instead of copying the bytes.
+ * <p>
+ * Reference counts are rebuilt from the folder tree when the store is created, and unreferenced
+ * blobs are deleted by a background garbage collection. The store is configured by the init
+ * parameters {@code gcInterval} and {@code gcGracePeriod} (seconds, default 600 and 3600).
+ */
+@Slf4j
+public class DeduplicatingStore implements WebdavStore {
+
+    static final String FILES_DIR = "files";
+
+    static final String BLOBS_DIR = "blobs";
+
+    private static final String REFERENCE_PREFIX = BlobStore.ALGORITHM + ':';
+
+    private final File root;
+
+    private final BlobStore blobStore;
+
+    public DeduplicatingStore(File root) {
+        this(root, new Properties());
+    }
+
+    public DeduplicatingStore(File root, Properties parameters) {
+        this(root,
+            Duration.ofSeconds(Long.parseLong(parameters.getProperty("gcInterval", "600").trim())),
+            Duration.ofSeconds(Long.parseLong(parameters
+                .getProperty("gcGracePeriod", "3600")
+                .trim()))
+        );
+    }
+
+    public DeduplicatingStore(File root, Duration gcInterval, Duration gcGracePeriod) {
+        this.root = new File(root, FILES_DIR);
+        if (!this.root.isDirectory() && !this.root.mkdirs()) {
+            throw new WebdavException("root path: "
+                + this.root.getAbsolutePath()
+                + " does not exist and could not be created");
+        }
+        blobStore = new BlobStore(new File(root, BLOBS_DIR), gcGracePeriod);
+        retainReferences();
+        blobStore.startGarbageCollection(gcInterval);
+    }
+
+    private void retainReferences() {
+        try (Stream<Path> files = Files.walk(root.toPath())) {
+            files.filter(Files::isRegularFile).forEach(file -> {
+                String hash = readReference(file.toFile());
+                if (hash != null && !blobStore.retain(hash)) {
+                    log.error("Blob {} referenced by {} is missing", hash, file);
+                }
+            });
+        } catch (IOException e) {
+            throw new WebdavException(e);
+        }
+    }
+
+    /**
+     * @return the blob store, e.g. to collect garbage on demand
+     */
+    BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    @Override
+    public void destroy() {
+        blobStore.destroy();
+    }
+
+    @Override
+    public Transaction begin(Principal principal) {
+        log.trace("DeduplicatingStore.begin()");
+        return () -> principal;
+    }
+
+    @Override
+    public void checkAuthentication(Transaction transaction) {
+        log.trace("DeduplicatingStore.checkAuthentication()");
+    }
+
+    @Override
+    public void commit(Transaction transaction) {
+        log.trace("DeduplicatingStore.commit()");
+    }
+
+    @Override
+    public void rollback(Transaction transaction) {
+        log.trace("DeduplicatingStore.rollback()");
+    }
+
+    @Override
+    public void createFolder(Transaction transaction, String folderUri) {
+        log.trace("DeduplicatingStore.createFolder({})", folderUri);
+        if (!new File(root, folderUri).mkdir()) {
+            throw new WebdavException("cannot create folder: " + folderUri);
+        }
+    }
+
+    @Override
+    public void createResource(Transaction transaction, String resourceUri) {
+        log.trace("DeduplicatingStore.createResource({})", resourceUri);
+        try {
+            // an empty reference file stands for empty content
+            if (!new File(root, resourceUri).createNewFile()) {
+                throw new WebdavException("cannot create file: " + resourceUri);
+            }
+        } catch (IOException e) {
+            log.error("DeduplicatingStore.createResource({}) failed", resourceUri);
+            throw new WebdavException(e);
+        }
+    }
+
+    @Override
+    public InputStream getResourceContent(Transaction transaction, String resourceUri) {
+        log.trace("DeduplicatingStore.getResourceContent({})", resourceUri);
+        String hash = readReference(new File(root, resourceUri));
+        if (hash == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        try {
+            return new BlobInputStream(blobStore, hash);
+        } catch (IOException e) {
+            log.error("DeduplicatingStore.getResourceContent({}) failed", resourceUri);
+            throw new WebdavException(e);
+        }
+    }
+
+    @Override
+    public long setResourceContent(
+        Transaction transaction,
+        String resourceUri,
+        InputStream content,
+        String contentType,
+        String characterEncoding
+    ) {
+        log.trace("DeduplicatingStore.setResourceContent({})", resourceUri);
+        try {
+            String hash;
+            if (content instanceof BlobInputStream
+                && ((BlobInputStream) content).blobStore == blobStore
+                && blobStore.retain(((BlobInputStream) content).hash)) {
+                // copy within the store
+                hash = ((BlobInputStream) content).hash;
+                content.close();
+            } else {
+                hash = blobStore.put(content);
+            }
+            setReference(transaction, resourceUri, hash);
+            return blobStore.getLength(hash);
+        } catch (IOException e) {
+            log.error("DeduplicatingStore.setResourceContent({}) failed", resourceUri);
+            throw new WebdavException(e);
+        }
+    }
+
+    @Override
+    public long linkResourceContent(
+        Transaction transaction, String resourceUri, String algorithm, byte[] digest
+    ) {
+        log.trace("DeduplicatingStore.linkResourceContent({}, {})", resourceUri, algorithm);
+        if (!BlobStore.ALGORITHM.equalsIgnoreCase(algorithm)) {
+            return -1L;
+        }
+        if (digest.length != BlobStore.DIGEST_LENGTH) {
+            throw new WebdavException("Invalid " + algorithm + " digest of " + resourceUri);
+        }
+        String hash = BlobStore.toHex(digest);
+        if (!blobStore.retain(hash)) {
+            return -1L;
+        }
+        try {
+            setReference(transaction, resourceUri, hash);
+        } catch (IOException e) {
+            blobStore.release(hash);
+            log.error("DeduplicatingStore.linkResourceContent({}) failed", resourceUri);
+            throw new WebdavException(e);
+        }
+        return blobStore.getLength(hash);
+    }
+
+    /**
+     * Lets the resource reference the blob, whose reference has already been retained, and
+     * releases the blob referenced before.
+     */
+    void setReference(Transaction transaction, String resourceUri, String hash)
+        throws IOException {
+        File file = new File(root, resourceUri);
+        String previous = readReference(file);
+        // replaced at once, so that a crash never leaves a truncated reference
+        Path temp = blobStore.newTempFile();
+        Files.write(temp, (REFERENCE_PREFIX + hash).getBytes(StandardCharsets.US_ASCII));
+        LocalFileSystemStore.moveAtomically(temp, file.toPath());
+        if (previous != null) {
+            blobStore.release(previous);
+        }
+    }
+
+    @Override
+    public String[] getChildrenNames(Transaction transaction, String folderUri) {
+        log.trace("DeduplicatingStore.getChildrenNames({})", folderUri);
+        File folder = new File(root, folderUri);
+        if (!folder.isDirectory()) {
+            return null;
+        }
+        String[] children = folder.list();
+        return children == null ? new String[0] : children;
+    }
+
+    @Override
+    public void removeObject(Transaction transaction, String uri) {
+        File file = new File(root, uri);
+        String hash = file.isFile() ? readReference(file) : null;
+        boolean success = file.delete();
+        log.trace("DeduplicatingStore.removeObject({})={}", uri, success);
+        if (!success) {
+            throw new WebdavException("cannot delete object: " + uri);
+        }
+        if (hash != null) {
+            blobStore.release(hash);
+        }
+    }
+
+    @Override
+    public long getResourceLength(Transaction transaction, String path) {
+        log.trace("DeduplicatingStore.getResourceLength({})", path);
+        String hash = readReference(new File(root, path));
+        return hash == null ? 0L : blobStore.getLength(hash);
+    }
+
+    @Override
+    public StoredObject getStoredObject(Transaction transaction, String uri) {
+        File file = new File(root, uri);
+        if (!file.exists()) {
+            return null;
+        }
+        StoredObject so = new StoredObject();
+        so.setFolder(file.isDirectory());
+        so.setLastModified(Instant.ofEpochMilli(file.lastModified()));
+        so.setCreationDate(Instant.ofEpochMilli(file.lastModified()));
+        so.setResourceLength(file.isDirectory() ? 0L : getResourceLength(transaction, uri));
+        return so;
+    }
+
+    @Nullable
+    private static String readReference(File file) {
+        if (!file.isFile() || file.length() == 0L) {
+            return null;
+        }
+        try {
+            String reference = new String(Files.readAllBytes(file.toPath()),
+                StandardCharsets.US_ASCII
+            ).trim();
+            if (!reference.startsWith(REFERENCE_PREFIX)) {
+                throw new WebdavException("invalid reference in " + file);
+            }
+            return reference.substring(REFERENCE_PREFIX.length());
+        } catch (IOException e) {
+            throw new WebdavException(e);
+        }
+    }
+
+    /**
+     * Content of a blob, which remembers the blob so that storing it again within the same store
+     * only adds a reference.
+     */
+    static final class BlobInputStream extends FilterInputStream {
+
+        private final BlobStore blobStore;
+
+        private final String hash;
+
+        BlobInputStream(BlobStore blobStore, String hash) throws IOException {
+            super(blobStore.open(hash));
+            this.blobStore = blobStore;
+            this.hash = hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.store;
+
+/**
+ * Defines when the content written by {@link LocalFileSystemStore} is forced to the storage
+ * device.
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Leave flushing to the operating system. Fastest, but uploads that have been acknowledged may
+     * be lost on a power failure.
+     */
+    NONE,
+
+    /**
+     * Force every file (and its directory entry) to the device before the upload is acknowledged.
+     */
+    PER_FILE,
+
+    /**
+     * Force all files written by a transaction when the transaction is committed. Commits that
+     * arrive within a short window are flushed together by a {@link GroupCommitScheduler}. The
+     * upload is still acknowledged only after its content is durable, but the cost of flushing is
+     * shared by all concurrent uploads.
+     */
+    GROUP_COMMIT
+
+}
@@ -0,0 +1,182 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.store;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Batches the device flushes of concurrent transactions. Committing transactions queue the files
+ * they have written; a single background thread collects all requests that arrive within a short
+ * window, forces each distinct file and each distinct parent directory once and then completes all
+ * waiting commits together. Under a high rate of small uploads the cost of a flush is thereby
+ * shared by all uploads of a window instead of being paid by each of them.
+ */
+@Slf4j
+class GroupCommitScheduler {
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000L;
+
+    private final BlockingQueue<SyncRequest> queue = new LinkedBlockingQueue<>();
+
+    private final long windowNanos;
+
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    GroupCommitScheduler(Duration window) {
+        windowNanos = window.toNanos();
+        thread = new Thread(this::run, "webdav-group-commit");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues the files for the next flush.
+     *
+     * @param files the files to force to the device
+     * @return a future that completes once all files and their directories have been forced
+     */
+    CompletableFuture<Void> sync(Collection<Path> files) {
+        SyncRequest request = new SyncRequest(new ArrayList<>(files));
+        synchronized (this) {
+            if (running) {
+                queue.add(request);
+                return request.future;
+            }
+        }
+        request.future.completeExceptionally(new IOException("group commit is shut down"));
+        return request.future;
+    }
+
+    void destroy() {
+        synchronized (this) {
+            running = false;
+        }
+        thread.interrupt();
+        try {
+            thread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // fail whatever the worker did not get to, so that no commit waits forever
+        List<SyncRequest> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        for (SyncRequest request : leftover) {
+            request.future.completeExceptionally(new IOException("group commit is shut down"));
+        }
+    }
+
+    private void run() {
+        List<SyncRequest> batch = new ArrayList<>();
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 0) {
+                    SyncRequest next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            queue.drainTo(batch);
+            flush(batch);
+            batch.clear();
+        }
+        // commits that raced with the shutdown are still flushed
+        queue.drainTo(batch);
+        flush(batch);
+    }
+
+    private static void flush(List<SyncRequest> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Set<Path> files = new LinkedHashSet<>();
+        for (SyncRequest request : batch) {
+            files.addAll(request.files);
+        }
+        log.trace("Group commit of {} files for {} transactions", files.size(), batch.size());
+
+        Map<Path, IOException> failures = new HashMap<>();
+        Set<Path> directories = new LinkedHashSet<>();
+        for (Path file : files) {
+            if (Files.isRegularFile(file)) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                } catch (IOException e) {
+                    log.error("Could not sync {}", file, e);
+                    failures.put(file, e);
+                }
+            }
+            directories.add(file.getParent());
+        }
+        for (Path directory : directories) {
+            LocalFileSystemStore.syncDirectory(directory);
+        }
+
+        for (SyncRequest request : batch) {
+            IOException failure = null;
+            for (Path file : request.files) {
+                failure = failures.get(file);
+                if (failure != null) {
+                    break;
+                }
+            }
+            if (failure == null) {
+                request.future.complete(null);
+            } else {
+                request.future.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private static class SyncRequest {
+
+        private final List<Path> files;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        SyncRequest(List<Path> files) {
+            this.files = files;
+        }
+
+    }
+
+}
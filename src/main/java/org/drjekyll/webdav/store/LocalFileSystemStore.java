@@ -21,18 +21,49 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.Principal;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
 import org.drjekyll.webdav.Transaction;
+import org.drjekyll.webdav.exceptions.InsufficientStorageException;
 import org.drjekyll.webdav.exceptions.WebdavException;
+import org.drjekyll.webdav.store.LocalFileSystemTransaction.Change;
 
 /**
  * Reference Implementation of WebdavStore
+ * <p>
+ * With {@code atomicWrites} enabled, new content is streamed into a temporary sibling of the
+ * target file which replaces the target by a rename once the upload is complete. Readers never see
+ * partial content and a failed upload leaves the previous content untouched. The
+ * {@code fsyncPolicy} defines when written content is forced to the storage device, see
+ * {@link FsyncPolicy}.
+ * <p>
+ * With {@code transactional} enabled, all changes of a transaction are staged in a directory of
+ * the transaction below {@value #STAGING_DIR} and become visible to others only when the
+ * transaction is committed. Within the transaction, reads see its own changes. A commit writes a
+ * {@link CommitLog} and then applies the changes with renames, so its cost depends on the number
+ * of changed objects only. Commits interrupted by a crash are completed when the store is created
+ * again; uncommitted transactions are discarded. Only one store may use a root folder at a time.
  *
  * @author joa
  * @author re
@@ -40,19 +71,155 @@ import org.drjekyll.webdav.exceptions.WebdavException;
 @Slf4j
 public class LocalFileSystemStore implements WebdavStore {
 
+    static final String STAGING_DIR = ".webdav-tx";
+
     private static final int BUF_SIZE = 65536;
 
+    private static final String TEMP_SUFFIX = ".webdav.tmp";
+
+    private static final Duration DEFAULT_GROUP_COMMIT_WINDOW = Duration.ofMillis(2L);
+
+    private static final Duration GROUP_COMMIT_TIMEOUT = Duration.ofSeconds(60L);
+
+    private static final long DEFAULT_PREALLOCATION_THRESHOLD = 1024L * 1024L;
+
     private final File root;
 
+    private final File stagingRoot;
+
+    private final boolean atomicWrites;
+
+    private final FsyncPolicy fsyncPolicy;
+
+    private final boolean transactional;
+
+    private long preallocationThreshold = DEFAULT_PREALLOCATION_THRESHOLD;
+
+    private long minFreeSpace;
+
+    private final GroupCommitScheduler groupCommitScheduler;
+
     public LocalFileSystemStore(File root) {
+        this(root, false, FsyncPolicy.NONE);
+    }
+
+    /**
+     * Creates a store that is configured by the init parameters {@code atomicWrites} ("1" or
+     * "true" to enable), {@code fsyncPolicy} (one of {@link FsyncPolicy}),
+     * {@code groupCommitWindow} (milliseconds to collect concurrent commits, default 2),
+     * {@code transactional} ("1" or "true" to enable), {@code preallocationThreshold} (bytes,
+     * default 1 MiB, negative to disable) and {@code minFreeSpace} (bytes, default 0).
+     *
+     * @param root       root folder of the store
+     * @param parameters init parameters of the servlet
+     */
+    public LocalFileSystemStore(File root, Properties parameters) {
+        this(root,
+            isEnabled(parameters.getProperty("atomicWrites")),
+            FsyncPolicy.valueOf(parameters
+                .getProperty("fsyncPolicy", FsyncPolicy.NONE.name())
+                .trim()
+                .toUpperCase(Locale.ROOT)),
+            getGroupCommitWindow(parameters.getProperty("groupCommitWindow")),
+            isEnabled(parameters.getProperty("transactional"))
+        );
+        preallocationThreshold = getLong(parameters.getProperty("preallocationThreshold"),
+            DEFAULT_PREALLOCATION_THRESHOLD
+        );
+        minFreeSpace = getLong(parameters.getProperty("minFreeSpace"), 0L);
+    }
+
+    public LocalFileSystemStore(File root, boolean atomicWrites, FsyncPolicy fsyncPolicy) {
+        this(root, atomicWrites, fsyncPolicy, DEFAULT_GROUP_COMMIT_WINDOW);
+    }
+
+    public LocalFileSystemStore(
+        File root, boolean atomicWrites, FsyncPolicy fsyncPolicy, Duration groupCommitWindow
+    ) {
+        this(root, atomicWrites, fsyncPolicy, groupCommitWindow, false);
+    }
+
+    public LocalFileSystemStore(
+        File root,
+        boolean atomicWrites,
+        FsyncPolicy fsyncPolicy,
+        Duration groupCommitWindow,
+        boolean transactional
+    ) {
         this.root = root;
+        this.atomicWrites = atomicWrites;
+        this.fsyncPolicy = fsyncPolicy;
+        this.transactional = transactional;
+        stagingRoot = new File(root, STAGING_DIR);
+        groupCommitScheduler = fsyncPolicy == FsyncPolicy.GROUP_COMMIT
+            ? new GroupCommitScheduler(groupCommitWindow)
+            : null;
+        if (transactional) {
+            recover();
+        }
+    }
+
+    private static boolean isEnabled(String parameter) {
+        return "1".equals(parameter) || "true".equalsIgnoreCase(parameter);
+    }
+
+    private static Duration getGroupCommitWindow(String parameter) {
+        return Duration.ofMillis(getLong(parameter, DEFAULT_GROUP_COMMIT_WINDOW.toMillis()));
+    }
+
+    private static long getLong(String parameter, long defaultValue) {
+        if (parameter == null || parameter.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Long.parseLong(parameter.trim());
+    }
+
+    /**
+     * @param preallocationThreshold minimum expected length of content to preallocate, negative to
+     *                               never preallocate
+     */
+    public void setPreallocationThreshold(long preallocationThreshold) {
+        this.preallocationThreshold = preallocationThreshold;
+    }
+
+    /**
+     * @param minFreeSpace number of bytes that must stay free on the device after storing content
+     */
+    public void setMinFreeSpace(long minFreeSpace) {
+        this.minFreeSpace = minFreeSpace;
+    }
+
+    /**
+     * Completes the commits that were interrupted and discards all other staged transactions.
+     */
+    private void recover() {
+        File[] stagingDirs = stagingRoot.listFiles();
+        if (stagingDirs == null) {
+            return;
+        }
+        for (File stagingDir : stagingDirs) {
+            if (new File(stagingDir, CommitLog.FILE_NAME).exists()) {
+                try {
+                    CommitLog.apply(root, stagingDir, CommitLog.read(stagingDir));
+                    log.info("Completed interrupted commit of transaction {}",
+                        stagingDir.getName()
+                    );
+                } catch (IOException e) {
+                    log.error("Could not complete interrupted commit in {}", stagingDir, e);
+                    continue;
+                }
+            }
+            CommitLog.discard(stagingDir);
+        }
     }
 
     @Override
     public void destroy() {
+        if (groupCommitScheduler != null) {
+            groupCommitScheduler.destroy();
+        }
     }
 
-    @Nullable
     @Override
     public Transaction begin(Principal principal) {
         log.trace("LocalFileSystemStore.begin()");
@@ -63,7 +230,7 @@ public class LocalFileSystemStore implements WebdavStore {
                     + " does not exist and could not be created");
             }
         }
-        return null;
+        return new LocalFileSystemTransaction(principal);
     }
 
     @Override
@@ -75,20 +242,101 @@ public class LocalFileSystemStore implements WebdavStore {
 
     @Override
     public void commit(Transaction transaction) {
-        // do nothing
         log.trace("LocalFileSystemStore.commit()");
+        LocalFileSystemTransaction staging = getStagingTransaction(transaction);
+        File stagingDir = null;
+        if (staging != null && staging.hasChanges()) {
+            stagingDir = getStagingDir(staging);
+            applyChanges(staging, stagingDir);
+        }
+        if (groupCommitScheduler != null && transaction instanceof LocalFileSystemTransaction) {
+            Set<Path> pendingSyncs = ((LocalFileSystemTransaction) transaction).getPendingSyncs();
+            if (!pendingSyncs.isEmpty()) {
+                try {
+                    groupCommitScheduler.sync(pendingSyncs)
+                        .get(GROUP_COMMIT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new WebdavException(e);
+                } catch (ExecutionException e) {
+                    log.error("LocalFileSystemStore.commit() failed to sync {}", pendingSyncs);
+                    throw new WebdavException(e.getCause());
+                } catch (TimeoutException e) {
+                    log.error("LocalFileSystemStore.commit() timed out syncing {}", pendingSyncs);
+                    throw new WebdavException(e);
+                } finally {
+                    pendingSyncs.clear();
+                }
+            }
+        }
+        if (stagingDir != null) {
+            CommitLog.discard(stagingDir);
+        }
+    }
+
+    private void applyChanges(LocalFileSystemTransaction staging, File stagingDir) {
+        try {
+            Files.createDirectories(stagingDir.toPath());
+            CommitLog.write(stagingDir, staging.getChanges(), fsyncPolicy != FsyncPolicy.NONE);
+        } catch (IOException e) {
+            log.error("LocalFileSystemStore.commit() failed to write the commit log");
+            CommitLog.discard(stagingDir);
+            staging.clearChanges();
+            throw new WebdavException(e);
+        }
+        // from here on the transaction is committed, a failure is completed by the recovery
+        staging.setLogged();
+        try {
+            CommitLog.apply(root, stagingDir, staging.getChanges());
+        } catch (IOException e) {
+            log.error("LocalFileSystemStore.commit() failed, {} is completed on the next start",
+                stagingDir
+            );
+            staging.clearChanges();
+            throw new WebdavException(e);
+        }
+        Set<Path> directories = new LinkedHashSet<>();
+        for (Change change : staging.getChanges()) {
+            Path target = new File(root, change.getPath()).toPath();
+            if (fsyncPolicy == FsyncPolicy.GROUP_COMMIT && change.getType() == Change.Type.WRITE) {
+                staging.addPendingSync(target);
+            } else if (fsyncPolicy != FsyncPolicy.NONE) {
+                // created folders and removals only change their parent directory
+                directories.add(target.getParent());
+            }
+        }
+        for (Path directory : directories) {
+            syncDirectory(directory);
+        }
+        staging.clearChanges();
     }
 
     @Override
     public void rollback(Transaction transaction) {
-        // do nothing
         log.trace("LocalFileSystemStore.rollback()");
-
+        if (transaction instanceof LocalFileSystemTransaction) {
+            ((LocalFileSystemTransaction) transaction).getPendingSyncs().clear();
+        }
+        LocalFileSystemTransaction staging = getStagingTransaction(transaction);
+        if (staging != null) {
+            if (!staging.isLogged()) {
+                CommitLog.discard(getStagingDir(staging));
+            }
+            staging.clearChanges();
+        }
     }
 
     @Override
     public void createFolder(Transaction transaction, String uri) {
         log.trace("LocalFileSystemStore.createFolder({})", uri);
+        LocalFileSystemTransaction staging = getStagingTransaction(transaction);
+        if (staging != null) {
+            if (!canCreate(transaction, uri)) {
+                throw new WebdavException("cannot create folder: " + uri);
+            }
+            record(staging, Change.Type.CREATE_FOLDER, uri, null);
+            return;
+        }
         File file = new File(root, uri);
         if (!file.mkdir()) {
             throw new WebdavException("cannot create folder: " + uri);
@@ -99,6 +347,16 @@ public class LocalFileSystemStore implements WebdavStore {
     public void createResource(Transaction transaction, String uri) {
         log.trace("LocalFileSystemStore.createResource({})", uri);
         try {
+            LocalFileSystemTransaction staging = getStagingTransaction(transaction);
+            if (staging != null) {
+                if (!canCreate(transaction, uri)) {
+                    throw new WebdavException("cannot create file: " + uri);
+                }
+                String staged = staging.newStagedFile();
+                Files.createFile(newStagedFile(staging, staged));
+                record(staging, Change.Type.WRITE, uri, staged);
+                return;
+            }
             File file = new File(root, uri);
             if (!file.createNewFile()) {
                 throw new WebdavException("cannot create file: " + uri);
@@ -115,6 +373,13 @@ public class LocalFileSystemStore implements WebdavStore {
 
         try {
             File file = new File(root, uri);
+            Change change = getChange(transaction, uri);
+            if (change != null) {
+                if (change.getType() != Change.Type.WRITE) {
+                    throw new WebdavException("cannot read object: " + uri);
+                }
+                file = getStagedFile(transaction, change);
+            }
             return new BufferedInputStream(Files.newInputStream(file.toPath()));
         } catch (IOException e) {
             log.error("LocalFileSystemStore.getResourceContent({}) failed", uri);
@@ -130,27 +395,104 @@ public class LocalFileSystemStore implements WebdavStore {
         String contentType,
         String characterEncoding
     ) {
+        return setResourceContent(transaction, uri, is, contentType, characterEncoding, -1L);
+    }
 
-        log.trace("LocalFileSystemStore.setResourceContent({})", uri);
+    /**
+     * Stores the content and preallocates the file if the expected length reaches the
+     * {@code preallocationThreshold}, so that the file system can reserve contiguous space up
+     * front instead of growing the file chunk by chunk. Content is rejected before it is read if
+     * storing it would leave less than {@code minFreeSpace} bytes on the device.
+     */
+    @Override
+    public long setResourceContent(
+        Transaction transaction,
+        String uri,
+        InputStream is,
+        String contentType,
+        String characterEncoding,
+        long expectedLength
+    ) {
+
+        log.trace("LocalFileSystemStore.setResourceContent({}, {})", uri, expectedLength);
         File file = new File(root, uri);
+        Path target = file.toPath();
+        if (expectedLength > 0L) {
+            checkFreeSpace(uri, expectedLength);
+        }
+        LocalFileSystemTransaction staging = getStagingTransaction(transaction);
+        String staged = null;
+        boolean temporary = staging == null && atomicWrites;
         try {
-            OutputStream os = new BufferedOutputStream(Files.newOutputStream(file.toPath()),
-                BUF_SIZE
-            );
+            Path destination;
+            if (staging != null) {
+                staged = staging.newStagedFile();
+                destination = newStagedFile(staging, staged);
+            } else if (temporary) {
+                destination = target.resolveSibling('.'
+                    + target.getFileName().toString()
+                    + '.'
+                    + UUID.randomUUID()
+                    + TEMP_SUFFIX);
+            } else {
+                destination = target;
+            }
             try {
-                int read;
-                byte[] copyBuffer = new byte[BUF_SIZE];
+                FileChannel channel = staging != null || temporary ? FileChannel.open(destination,
+                    StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE
+                ) : FileChannel.open(destination,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING
+                );
+                try (OutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel),
+                    BUF_SIZE
+                )) {
+                    boolean preallocated = preallocationThreshold >= 0L
+                        && expectedLength > 0L
+                        && expectedLength >= preallocationThreshold;
+                    if (preallocated) {
+                        preallocate(channel, expectedLength);
+                    }
+                    int read;
+                    long written = 0L;
+                    byte[] copyBuffer = new byte[BUF_SIZE];
 
-                while ((read = is.read(copyBuffer, 0, copyBuffer.length)) != -1) {
-                    os.write(copyBuffer, 0, read);
+                    while ((read = is.read(copyBuffer, 0, copyBuffer.length)) != -1) {
+                        os.write(copyBuffer, 0, read);
+                        written += read;
+                    }
+                    os.flush();
+                    if (preallocated && written < expectedLength) {
+                        // the client sent less than announced
+                        channel.truncate(written);
+                    }
+                    if (fsyncPolicy == FsyncPolicy.PER_FILE) {
+                        channel.force(true);
+                    }
+                } finally {
+                    is.close();
+                }
+                if (temporary) {
+                    moveAtomically(destination, target);
                 }
             } finally {
-                try {
-                    is.close();
-                } finally {
-                    os.close();
+                if (temporary) {
+                    Files.deleteIfExists(destination);
                 }
             }
+            if (staging != null) {
+                // moved into place and synced on commit
+                record(staging, Change.Type.WRITE, uri, staged);
+                return destination.toFile().length();
+            }
+            if (fsyncPolicy == FsyncPolicy.PER_FILE) {
+                syncDirectory(target.getParent());
+            } else if (fsyncPolicy == FsyncPolicy.GROUP_COMMIT
+                && transaction instanceof LocalFileSystemTransaction) {
+                ((LocalFileSystemTransaction) transaction).addPendingSync(target);
+            }
         } catch (IOException e) {
             log.error("LocalFileSystemStore.setResourceContent({}) failed", uri);
             throw new WebdavException(e);
@@ -167,28 +509,133 @@ public class LocalFileSystemStore implements WebdavStore {
         return -1;
     }
 
+    @Override
+    public void checkStorage(Transaction transaction, String uri, long expectedLength) {
+        if (expectedLength > 0L) {
+            checkFreeSpace(uri, expectedLength);
+        }
+    }
+
+    private void checkFreeSpace(String uri, long expectedLength) {
+        File device = root.exists() ? root : root.getAbsoluteFile().getParentFile();
+        long usableSpace = device == null ? 0L : device.getUsableSpace();
+        // zero means the size could not be determined
+        if (usableSpace > 0L && usableSpace - expectedLength < minFreeSpace) {
+            log.warn("Rejecting {} bytes for {}, only {} bytes are left",
+                expectedLength,
+                uri,
+                usableSpace
+            );
+            throw new InsufficientStorageException("not enough space for " + uri);
+        }
+    }
+
+    /**
+     * Extends the still empty file to its final length. Java has no portable fallocate, but
+     * setting the size before writing lets delayed-allocation file systems reserve the extents in
+     * one go and saves the metadata updates of growing the file.
+     */
+    private static void preallocate(FileChannel channel, long length) throws IOException {
+        channel.write(ByteBuffer.allocate(1), length - 1L);
+        channel.position(0L);
+    }
+
+    static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source,
+                target,
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING
+            );
+        } catch (AtomicMoveNotSupportedException e) {
+            log.warn("Atomic move is not supported for {}, falling back to a plain move", target);
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Forces the directory entries of the given directory to the device, so that renames and newly
+     * created files survive a crash. Not all platforms allow opening a directory, which is ignored.
+     */
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.trace("Could not sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+
     @Override
     public String[] getChildrenNames(Transaction transaction, String uri) {
         log.trace("LocalFileSystemStore.getChildrenNames({})", uri);
         File file = new File(root, uri);
+        LocalFileSystemTransaction staging = getStagingTransaction(transaction);
+        if (staging != null && staging.hasChanges()) {
+            StoredObject so = getStoredObject(transaction, uri);
+            if (so == null || !so.isFolder()) {
+                return null;
+            }
+            String path = LocalFileSystemTransaction.normalize(uri);
+            Set<String> names = new LinkedHashSet<>();
+            if (file.isDirectory()) {
+                names.addAll(listChildren(file));
+            }
+            for (Change change : staging.getChanges()) {
+                String changed = change.getPath();
+                if (!changed.isEmpty()
+                    && LocalFileSystemTransaction.getParent(changed).equals(path)) {
+                    if (change.getType() == Change.Type.REMOVE) {
+                        names.remove(LocalFileSystemTransaction.getName(changed));
+                    } else {
+                        names.add(LocalFileSystemTransaction.getName(changed));
+                    }
+                }
+            }
+            return names.toArray(new String[0]);
+        }
         String[] childrenNames = null;
         if (file.isDirectory()) {
-            File[] children = file.listFiles();
-            List<String> childList = new ArrayList<>();
-            String name;
-            for (int i = 0; i < children.length; i++) {
-                name = children[i].getName();
-                childList.add(name);
-                log.trace("Child {}: {}", i, name);
-            }
+            List<String> childList = listChildren(file);
             childrenNames = new String[childList.size()];
             return childList.toArray(childrenNames);
         }
         return childrenNames;
     }
 
+    private static List<String> listChildren(File folder) {
+        File[] children = folder.listFiles();
+        List<String> childList = new ArrayList<>();
+        if (children == null) {
+            return childList;
+        }
+        String name;
+        for (int i = 0; i < children.length; i++) {
+            name = children[i].getName();
+            if (name.endsWith(TEMP_SUFFIX) || name.equals(STAGING_DIR)) {
+                // upload or transaction in progress
+                continue;
+            }
+            childList.add(name);
+            log.trace("Child {}: {}", i, name);
+        }
+        return childList;
+    }
+
     @Override
     public void removeObject(Transaction transaction, String uri) {
+        LocalFileSystemTransaction staging = getStagingTransaction(transaction);
+        if (staging != null) {
+            StoredObject so = getStoredObject(transaction, uri);
+            String[] children = so != null && so.isFolder()
+                ? getChildrenNames(transaction, uri)
+                : null;
+            log.trace("LocalFileSystemStore.removeObject({}) staged", uri);
+            if (so == null || children != null && children.length > 0) {
+                throw new WebdavException("cannot delete object: " + uri);
+            }
+            record(staging, Change.Type.REMOVE, uri, null);
+            return;
+        }
         File file = new File(root, uri);
         boolean success = file.delete();
         log.trace("LocalFileSystemStore.removeObject({})={}", uri, success);
@@ -203,6 +650,12 @@ public class LocalFileSystemStore implements WebdavStore {
     public long getResourceLength(Transaction transaction, String uri) {
         log.trace("LocalFileSystemStore.getResourceLength({})", uri);
         File file = new File(root, uri);
+        Change change = getChange(transaction, uri);
+        if (change != null) {
+            return change.getType() == Change.Type.WRITE
+                ? getStagedFile(transaction, change).length()
+                : 0L;
+        }
         return file.length();
     }
 
@@ -212,6 +665,27 @@ public class LocalFileSystemStore implements WebdavStore {
         StoredObject so = null;
 
         File file = new File(root, uri);
+        Change change = getChange(transaction, uri);
+        if (change != null) {
+            if (change.getType() == Change.Type.REMOVE) {
+                return null;
+            }
+            so = new StoredObject();
+            if (change.getType() == Change.Type.CREATE_FOLDER) {
+                so.setFolder(true);
+                so.setLastModified(Instant.now());
+                so.setCreationDate(so.getLastModified());
+            } else {
+                File staged = getStagedFile(transaction, change);
+                so.setFolder(false);
+                so.setLastModified(Instant.ofEpochMilli(staged.lastModified()));
+                so.setCreationDate(file.exists()
+                    ? Instant.ofEpochMilli(file.lastModified())
+                    : so.getLastModified());
+                so.setResourceLength(staged.length());
+            }
+            return so;
+        }
         if (file.exists()) {
             so = new StoredObject();
             so.setFolder(file.isDirectory());
@@ -223,4 +697,58 @@ public class LocalFileSystemStore implements WebdavStore {
         return so;
     }
 
+    @Nullable
+    private LocalFileSystemTransaction getStagingTransaction(Transaction transaction) {
+        return transactional && transaction instanceof LocalFileSystemTransaction
+            ? (LocalFileSystemTransaction) transaction
+            : null;
+    }
+
+    @Nullable
+    private Change getChange(Transaction transaction, String uri) {
+        LocalFileSystemTransaction staging = getStagingTransaction(transaction);
+        return staging == null
+            ? null
+            : staging.getChange(LocalFileSystemTransaction.normalize(uri));
+    }
+
+    private File getStagingDir(LocalFileSystemTransaction staging) {
+        return new File(stagingRoot, staging.getId());
+    }
+
+    private File getStagedFile(Transaction transaction, Change change) {
+        File stagingDir = getStagingDir((LocalFileSystemTransaction) transaction);
+        return new File(stagingDir, change.getStaged());
+    }
+
+    private Path newStagedFile(LocalFileSystemTransaction staging, String staged)
+        throws IOException {
+        File stagingDir = getStagingDir(staging);
+        Files.createDirectories(stagingDir.toPath());
+        return new File(stagingDir, staged).toPath();
+    }
+
+    private boolean canCreate(Transaction transaction, String uri) {
+        String path = LocalFileSystemTransaction.normalize(uri);
+        if (path.isEmpty() || getStoredObject(transaction, path) != null) {
+            return false;
+        }
+        StoredObject parent =
+            getStoredObject(transaction, LocalFileSystemTransaction.getParent(path));
+        return parent != null && parent.isFolder();
+    }
+
+    private void record(
+        LocalFileSystemTransaction staging, Change.Type type, String uri, @Nullable String staged
+    ) {
+        Change previous =
+            staging.record(new Change(type, LocalFileSystemTransaction.normalize(uri), staged));
+        if (previous != null && previous.getStaged() != null) {
+            File superseded = new File(getStagingDir(staging), previous.getStaged());
+            if (!superseded.delete()) {
+                log.warn("Could not delete superseded staged file {}", superseded);
+            }
+        }
+    }
+
 }
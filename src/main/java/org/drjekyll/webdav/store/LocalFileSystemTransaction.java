@@ -0,0 +1,161 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.store;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import javax.annotation.Nullable;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.drjekyll.webdav.Transaction;
+
+/**
+ * Transaction of the {@link LocalFileSystemStore}. Keeps track of the files that still have to be
+ * forced to the device when the transaction is committed.
+ * <p>
+ * In transactional mode the transaction also records the changes made so far, keyed by the
+ * normalized path of the changed object. Content is written to files in a staging directory that
+ * belongs to this transaction only, and is moved into place when the transaction is committed.
+ * Only the latest change per path is kept, which moves to the end of the change order, so that
+ * replaying the changes in order reproduces the state seen by the transaction.
+ */
+@RequiredArgsConstructor
+class LocalFileSystemTransaction implements Transaction {
+
+    @Getter
+    private final Principal principal;
+
+    @Getter
+    private final String id = UUID.randomUUID().toString();
+
+    private final Set<Path> pendingSyncs = new LinkedHashSet<>();
+
+    private final Map<String, Change> changes = new LinkedHashMap<>();
+
+    private int stagedFiles;
+
+    /**
+     * Whether the commit log of this transaction has been written, so that its staging directory
+     * belongs to the recovery on the next start.
+     */
+    @Getter
+    private boolean logged;
+
+    void addPendingSync(Path path) {
+        pendingSyncs.add(path);
+    }
+
+    Set<Path> getPendingSyncs() {
+        return pendingSyncs;
+    }
+
+    /**
+     * @return the name of a new file in the staging directory of this transaction
+     */
+    String newStagedFile() {
+        return String.valueOf(++stagedFiles);
+    }
+
+    /**
+     * Records a change and returns the change it supersedes, whose staged file is no longer
+     * needed.
+     */
+    @Nullable
+    Change record(Change change) {
+        Change previous = changes.remove(change.getPath());
+        changes.put(change.getPath(), change);
+        return previous;
+    }
+
+    @Nullable
+    Change getChange(String path) {
+        return changes.get(path);
+    }
+
+    Collection<Change> getChanges() {
+        return changes.values();
+    }
+
+    boolean hasChanges() {
+        return !changes.isEmpty();
+    }
+
+    void clearChanges() {
+        changes.clear();
+    }
+
+    void setLogged() {
+        logged = true;
+    }
+
+    /**
+     * Normalizes a URI to the key of a change: no leading, trailing or duplicate slashes. The root
+     * folder is the empty string.
+     */
+    static String normalize(String uri) {
+        StringBuilder normalized = new StringBuilder();
+        for (String segment : uri.replace(File.separatorChar, '/').split("/")) {
+            if (!segment.isEmpty()) {
+                if (normalized.length() > 0) {
+                    normalized.append('/');
+                }
+                normalized.append(segment);
+            }
+        }
+        return normalized.toString();
+    }
+
+    static String getParent(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? "" : path.substring(0, slash);
+    }
+
+    static String getName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * A change of one object in the store.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    static final class Change {
+
+        private final Type type;
+
+        private final String path;
+
+        /**
+         * name of the file in the staging directory that holds the new content, only set for
+         * {@link Type#WRITE}
+         */
+        @Nullable
+        private final String staged;
+
+        enum Type {
+            CREATE_FOLDER, WRITE, REMOVE
+        }
+
+    }
+
+}
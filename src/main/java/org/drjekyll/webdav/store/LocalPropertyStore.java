@@ -0,0 +1,293 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.drjekyll.webdav.Transaction;
+import org.drjekyll.webdav.exceptions.WebdavException;
+
+/**
+ * Keeps dead properties in one file per collection, holding the properties of all members of the
+ * collection, so that listing a collection reads a single file. The files are named by the hash
+ * of the collection path and kept in a two level directory tree below the property directory,
+ * which is separate from the content. The properties of the root collection itself are kept with
+ * the empty member name.
+ * <p>
+ * The tables of recently used collections are kept in memory. Changes are written to a new file
+ * which replaces the previous one, so a crash never leaves a table half written. Changes are
+ * staged per transaction, seen by that transaction only, and written when it is committed, so
+ * they are dropped along with the content changes of a transaction that is rolled back.
+ */
+public class LocalPropertyStore implements PropertyStore {
+
+    private static final int VERSION = 1;
+
+    private static final String SUFFIX = ".props";
+
+    private final File dir;
+
+    private final Map<String, Map<String, Map<String, String>>> tables;
+
+    private final Map<Transaction, Staged> staged = new IdentityHashMap<>();
+
+    /**
+     * @param dir       directory of the property files
+     * @param cacheSize maximum number of collections whose properties are kept in memory
+     */
+    public LocalPropertyStore(File dir, int cacheSize) {
+        this.dir = dir;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new WebdavException("cannot create property directory " + dir);
+        }
+        tables = new LinkedHashMap<String, Map<String, Map<String, String>>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Map<String, Map<String, String>>> eldest
+            ) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    @Override
+    public synchronized Map<String, String> getProperties(Transaction transaction, String path) {
+        String normalized = normalize(path);
+        Staged changes = staged.get(transaction);
+        if (changes != null) {
+            Map<String, String> properties = changes.objects.get(normalized);
+            if (properties != null) {
+                return properties;
+            }
+            if (changes.clearedCollections.contains(getParent(normalized))) {
+                return Collections.emptyMap();
+            }
+        }
+        Map<String, String> properties =
+            getTable(getParent(normalized)).get(getName(normalized));
+        return properties == null ? Collections.emptyMap() : properties;
+    }
+
+    @Override
+    public synchronized void setProperties(
+        Transaction transaction, String path, Map<String, String> set, Collection<String> remove
+    ) {
+        Map<String, String> properties = new LinkedHashMap<>(getProperties(transaction, path));
+        properties.keySet().removeAll(remove);
+        properties.putAll(set);
+        stage(transaction).objects.put(normalize(path), Collections.unmodifiableMap(properties));
+    }
+
+    @Override
+    public synchronized void copyProperties(
+        Transaction transaction, String sourcePath, String destinationPath
+    ) {
+        stage(transaction).objects.put(normalize(destinationPath),
+            getProperties(transaction, sourcePath)
+        );
+    }
+
+    @Override
+    public synchronized void removeProperties(Transaction transaction, String path) {
+        String normalized = normalize(path);
+        Staged changes = stage(transaction);
+        if (!normalized.equals("/")) {
+            // the members of a removed collection are gone as well
+            changes.objects.keySet().removeIf(member -> getParent(member).equals(normalized));
+            changes.clearedCollections.add(normalized);
+        }
+        changes.objects.put(normalized, Collections.emptyMap());
+    }
+
+    @Override
+    public synchronized void commit(Transaction transaction) {
+        Staged changes = staged.remove(transaction);
+        if (changes == null) {
+            return;
+        }
+        for (String collection : changes.clearedCollections) {
+            writeTable(collection, Collections.emptyMap());
+        }
+        for (Map.Entry<String, Map<String, String>> object : changes.objects.entrySet()) {
+            putProperties(object.getKey(), object.getValue());
+        }
+    }
+
+    @Override
+    public synchronized void rollback(Transaction transaction) {
+        staged.remove(transaction);
+    }
+
+    private Staged stage(Transaction transaction) {
+        return staged.computeIfAbsent(transaction, t -> new Staged());
+    }
+
+    private void putProperties(String path, Map<String, String> properties) {
+        String parent = getParent(path);
+        Map<String, Map<String, String>> table = new HashMap<>(getTable(parent));
+        Map<String, String> previous = properties.isEmpty()
+            ? table.remove(getName(path))
+            : table.put(getName(path), Collections.unmodifiableMap(properties));
+        if (previous != null || !properties.isEmpty()) {
+            writeTable(parent, table);
+        }
+    }
+
+    private Map<String, Map<String, String>> getTable(String collection) {
+        Map<String, Map<String, String>> table = tables.get(collection);
+        if (table == null) {
+            table = readTable(collection);
+            tables.put(collection, table);
+        }
+        return table;
+    }
+
+    private Map<String, Map<String, String>> readTable(String collection) {
+        File file = getFile(collection);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(
+            file.toPath())))) {
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported property file version " + version);
+            }
+            if (!in.readUTF().equals(collection)) {
+                // hash collision, which is not going to happen
+                throw new IOException("property file of another collection: " + file);
+            }
+            int members = in.readInt();
+            Map<String, Map<String, String>> table = new HashMap<>(members * 2);
+            for (int i = 0; i < members; i++) {
+                String name = in.readUTF();
+                int size = in.readInt();
+                Map<String, String> properties = new LinkedHashMap<>(size * 2);
+                for (int j = 0; j < size; j++) {
+                    String property = in.readUTF();
+                    byte[] value = new byte[in.readInt()];
+                    in.readFully(value);
+                    properties.put(property, new String(value, StandardCharsets.UTF_8));
+                }
+                table.put(name, Collections.unmodifiableMap(properties));
+            }
+            return Collections.unmodifiableMap(table);
+        } catch (NoSuchFileException e) {
+            return Collections.emptyMap();
+        } catch (IOException e) {
+            throw new WebdavException(e);
+        }
+    }
+
+    private void writeTable(String collection, Map<String, Map<String, String>> table) {
+        File file = getFile(collection);
+        try {
+            if (table.isEmpty()) {
+                Files.deleteIfExists(file.toPath());
+            } else {
+                File parent = file.getParentFile();
+                if (!parent.isDirectory() && !parent.mkdirs()) {
+                    throw new IOException("cannot create " + parent);
+                }
+                File temp = new File(parent, UUID.randomUUID() + ".tmp");
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temp.toPath())))) {
+                    out.writeInt(VERSION);
+                    out.writeUTF(collection);
+                    out.writeInt(table.size());
+                    for (Map.Entry<String, Map<String, String>> member : table.entrySet()) {
+                        out.writeUTF(member.getKey());
+                        out.writeInt(member.getValue().size());
+                        for (Map.Entry<String, String> property : member.getValue().entrySet()) {
+                            out.writeUTF(property.getKey());
+                            byte[] value = property.getValue().getBytes(StandardCharsets.UTF_8);
+                            out.writeInt(value.length);
+                            out.write(value);
+                        }
+                    }
+                }
+                LocalFileSystemStore.moveAtomically(temp.toPath(), file.toPath());
+            }
+        } catch (IOException e) {
+            throw new WebdavException(e);
+        }
+        tables.put(collection, Collections.unmodifiableMap(table));
+    }
+
+    private File getFile(String collection) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(BlobStore.ALGORITHM);
+            String hash =
+                BlobStore.toHex(digest.digest(collection.getBytes(StandardCharsets.UTF_8)));
+            return new File(new File(dir, hash.substring(0, 2)), hash + SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String getParent(String path) {
+        if (path.equals("/")) {
+            return path;
+        }
+        int slash = path.lastIndexOf('/');
+        return slash <= 0 ? "/" : path.substring(0, slash);
+    }
+
+    private static String getName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static String normalize(String path) {
+        String normalized = path.startsWith("/") ? path : '/' + path;
+        while (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    /**
+     * The changes of a transaction that is not committed yet.
+     */
+    private static final class Staged {
+
+        /**
+         * New properties by path, empty if they are removed
+         */
+        private final Map<String, Map<String, String>> objects = new LinkedHashMap<>();
+
+        /**
+         * Collections whose members lost their properties, cleared before objects are written
+         */
+        private final Set<String> clearedCollections = new LinkedHashSet<>();
+
+    }
+
+}
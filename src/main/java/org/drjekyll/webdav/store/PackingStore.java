@@ -0,0 +1,1047 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.Principal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.drjekyll.webdav.Transaction;
+import org.drjekyll.webdav.exceptions.WebdavException;
+
+/**
+ * Store for trees of many small files. Every change is appended as a record to a log of segment
+ * files below {@value #SEGMENTS_DIR}; the content of resources up to {@code packThreshold} bytes
+ * is part of the record, larger content goes to a standalone file below {@value #LARGE_DIR}. An
+ * in-memory index maps each path to its folder or to the location of its content, so listing a
+ * folder does not touch the disk and small resources are read with a single positional read.
+ * <p>
+ * The index is checkpointed to {@value #INDEX_FILE} periodically and on shutdown; on start, the
+ * checkpoint is loaded and the records appended after it are replayed. A torn record at the end of
+ * the log is truncated. Segments in which most of the content has been overwritten or removed are
+ * compacted in the background by appending their live content to the log again and deleting them.
+ * <p>
+ * The store is configured by the init parameters {@code packThreshold} (bytes, default 4096),
+ * {@code segmentSize} (bytes, default 16 MiB) and {@code compactionInterval} (seconds, default
+ * 60).
+ */
+@Slf4j
+public class PackingStore implements WebdavStore {
+
+    static final String SEGMENTS_DIR = "segments";
+
+    static final String LARGE_DIR = "large";
+
+    static final String INDEX_FILE = "index";
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int VERSION = 1;
+
+    private static final int BUF_SIZE = 65536;
+
+    /**
+     * Length and checksum of the payload
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * Segments with less live content than this share of their size are compacted
+     */
+    private static final double MIN_LIVE_RATIO = 0.5;
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000L;
+
+    private final File segmentsDir;
+
+    private final File largeDir;
+
+    private final File indexFile;
+
+    private final int packThreshold;
+
+    private final long segmentSize;
+
+    private final Map<String, Entry> index = new HashMap<>();
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    /**
+     * Serializes compactions, which run without holding the lock of the store
+     */
+    private final Object compactionLock = new Object();
+
+    /**
+     * Serializes writing the index, which happens without holding the lock of the store
+     */
+    private final Object checkpointLock = new Object();
+
+    private final ScheduledExecutorService compactor;
+
+    private Segment active;
+
+    private boolean unforced;
+
+    private boolean changedSinceCheckpoint;
+
+    public PackingStore(File root) {
+        this(root, new Properties());
+    }
+
+    public PackingStore(File root, Properties parameters) {
+        this(root,
+            Integer.parseInt(parameters.getProperty("packThreshold", "4096").trim()),
+            Long.parseLong(parameters.getProperty("segmentSize", "16777216").trim()),
+            Duration.ofSeconds(Long.parseLong(parameters
+                .getProperty("compactionInterval", "60")
+                .trim()))
+        );
+    }
+
+    public PackingStore(
+        File root, int packThreshold, long segmentSize, Duration compactionInterval
+    ) {
+        this.packThreshold = packThreshold;
+        this.segmentSize = segmentSize;
+        segmentsDir = new File(root, SEGMENTS_DIR);
+        largeDir = new File(root, LARGE_DIR);
+        indexFile = new File(root, INDEX_FILE);
+        if ((!segmentsDir.isDirectory() && !segmentsDir.mkdirs())
+            || (!largeDir.isDirectory() && !largeDir.mkdirs())) {
+            throw new WebdavException("root path: "
+                + root.getAbsolutePath()
+                + " does not exist and could not be created");
+        }
+        try {
+            recover();
+        } catch (IOException e) {
+            throw new WebdavException(e);
+        }
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "webdav-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::maintain,
+            compactionInterval.toMillis(),
+            compactionInterval.toMillis(),
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    private void recover() throws IOException {
+        File[] segmentFiles = segmentsDir.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        for (File file : segmentFiles == null ? new File[0] : segmentFiles) {
+            Segment segment = new Segment(getSegmentId(file), file);
+            segments.put(segment.id, segment);
+        }
+
+        int checkpointSegment = 0;
+        long checkpointPosition = 0L;
+        if (indexFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(indexFile.toPath()),
+                BUF_SIZE
+            ))) {
+                int version = in.readInt();
+                if (version != VERSION) {
+                    throw new IOException("unsupported index version " + version);
+                }
+                checkpointSegment = in.readInt();
+                checkpointPosition = in.readLong();
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    String path = in.readUTF();
+                    Entry entry = new Entry();
+                    entry.folder = in.readBoolean();
+                    entry.created = in.readLong();
+                    entry.modified = in.readLong();
+                    if (entry.folder) {
+                        entry.children = new TreeSet<>();
+                    } else {
+                        entry.length = in.readLong();
+                        entry.segment = in.readInt();
+                        entry.position = in.readLong();
+                        String largeFile = in.readUTF();
+                        entry.largeFile = largeFile.isEmpty() ? null : largeFile;
+                    }
+                    // entries are sorted by path, so parents come first
+                    replace(path, null, entry);
+                }
+            }
+        }
+        if (!index.containsKey("")) {
+            Entry rootFolder = new Entry();
+            rootFolder.folder = true;
+            rootFolder.created = System.currentTimeMillis();
+            rootFolder.modified = rootFolder.created;
+            rootFolder.children = new TreeSet<>();
+            index.put("", rootFolder);
+        }
+
+        for (Segment segment : segments.values()) {
+            if (segment.id == checkpointSegment) {
+                replay(segment, checkpointPosition);
+            } else if (segment.id > checkpointSegment) {
+                replay(segment, 0L);
+            }
+        }
+        active = segments.isEmpty() ? openSegment(1) : segments.lastEntry().getValue();
+
+        // content of interrupted uploads
+        Set<String> largeFiles = new HashSet<>();
+        for (Entry entry : index.values()) {
+            if (entry.largeFile != null) {
+                largeFiles.add(entry.largeFile);
+            }
+        }
+        File[] files = largeDir.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            if (!largeFiles.contains(file.getName()) && !file.delete()) {
+                log.warn("Could not delete {}", file);
+            }
+        }
+        log.debug("Recovered {} objects from {} segments", index.size(), segments.size());
+    }
+
+    private void replay(Segment segment, long from) throws IOException {
+        long position = from;
+        FileChannel channel = FileChannel.open(segment.file.toPath(), StandardOpenOption.READ);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Channels.newInputStream(channel.position(from)),
+            BUF_SIZE
+        ))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (length < 0 || position + RECORD_HEADER_SIZE + length > segment.size) {
+                    throw new EOFException("invalid record length " + length);
+                }
+                int checksum = in.readInt();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (checksum != checksum(payload)) {
+                    throw new EOFException("checksum mismatch");
+                }
+                applyRecord(payload, segment.id, position);
+                position += RECORD_HEADER_SIZE + length;
+            }
+        } catch (EOFException e) {
+            log.warn("Truncating torn record at {} of {}", position, segment.file);
+            segment.channel.truncate(position);
+            segment.size = position;
+        }
+    }
+
+    private void applyRecord(byte[] payload, int segmentId, long position) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        RecordType type = RecordType.values()[in.readByte()];
+        String path = in.readUTF();
+        long time = in.readLong();
+        switch (type) {
+            case CREATE_FOLDER:
+                apply(type, path, time, 0, 0L, 0L, null);
+                break;
+            case PUT:
+                int length = in.available();
+                long dataPosition = position + RECORD_HEADER_SIZE + payload.length - length;
+                apply(type, path, time, segmentId, dataPosition, length, null);
+                break;
+            case PUT_LARGE:
+                String largeFile = in.readUTF();
+                apply(type, path, time, 0, 0L, in.readLong(), largeFile);
+                break;
+            case REMOVE:
+                apply(type, path, time, 0, 0L, 0L, null);
+                break;
+            default:
+                throw new IllegalStateException("unknown record " + type);
+        }
+    }
+
+    /**
+     * Updates the index with a record that has been appended to the log.
+     */
+    private void apply(
+        RecordType type,
+        String path,
+        long time,
+        int segmentId,
+        long position,
+        long length,
+        @Nullable String largeFile
+    ) throws IOException {
+        Entry previous = index.get(path);
+        if (type == RecordType.REMOVE) {
+            replace(path, previous, null);
+            return;
+        }
+        Entry entry = new Entry();
+        entry.created = previous == null ? time : previous.created;
+        entry.modified = time;
+        if (type == RecordType.CREATE_FOLDER) {
+            entry.folder = true;
+            entry.children = new TreeSet<>();
+        } else {
+            entry.length = length;
+            entry.segment = segmentId;
+            entry.position = position;
+            entry.largeFile = largeFile;
+        }
+        replace(path, previous, entry);
+    }
+
+    private void replace(String path, @Nullable Entry previous, @Nullable Entry entry)
+        throws IOException {
+        if (previous != null && !previous.folder) {
+            if (previous.largeFile == null) {
+                Segment segment = segments.get(previous.segment);
+                if (segment != null) {
+                    segment.live -= getRecordLength(path, previous.length);
+                }
+            } else if (entry == null || !previous.largeFile.equals(entry.largeFile)) {
+                if (unforced) {
+                    // the record replacing the content must be durable before the content is gone
+                    active.channel.force(false);
+                    unforced = false;
+                }
+                File file = new File(largeDir, previous.largeFile);
+                if (file.exists() && !file.delete()) {
+                    log.warn("Could not delete {}", file);
+                }
+            }
+        }
+        Entry parent =
+            path.isEmpty() ? null : index.get(LocalFileSystemTransaction.getParent(path));
+        String name = LocalFileSystemTransaction.getName(path);
+        if (entry == null) {
+            index.remove(path);
+            if (parent != null && parent.children != null) {
+                parent.children.remove(name);
+            }
+            return;
+        }
+        if (!entry.folder && entry.largeFile == null) {
+            Segment segment = segments.get(entry.segment);
+            if (segment != null) {
+                segment.live += getRecordLength(path, entry.length);
+            }
+        }
+        index.put(path, entry);
+        if (parent != null && parent.children != null) {
+            parent.children.add(name);
+        }
+    }
+
+    /**
+     * Appends a record to the active segment, starting a new segment if it is full.
+     *
+     * @return the position of the content of the record
+     */
+    private long append(
+        RecordType type, String path, long time, @Nullable byte[] data, int dataLength,
+        @Nullable String largeFile, long largeLength
+    ) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + dataLength);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type.ordinal());
+        out.writeUTF(path);
+        out.writeLong(time);
+        if (type == RecordType.PUT_LARGE) {
+            out.writeUTF(largeFile);
+            out.writeLong(largeLength);
+        }
+        int headerLength = out.size();
+        if (data != null) {
+            out.write(data, 0, dataLength);
+        }
+        out.flush();
+        byte[] payload = bytes.toByteArray();
+
+        if (active.size > 0L && active.size + RECORD_HEADER_SIZE + payload.length > segmentSize) {
+            active.channel.force(false);
+            active = openSegment(active.id + 1);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length).putInt(checksum(payload)).put(payload).flip();
+        long position = active.size;
+        while (buffer.hasRemaining()) {
+            active.channel.write(buffer, position + buffer.position());
+        }
+        active.size += buffer.limit();
+        unforced = true;
+        changedSinceCheckpoint = true;
+        return position + RECORD_HEADER_SIZE + headerLength;
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        Segment segment =
+            new Segment(id, new File(segmentsDir, String.format("%08d", id) + SEGMENT_SUFFIX));
+        segments.put(id, segment);
+        LocalFileSystemStore.syncDirectory(segmentsDir.toPath());
+        return segment;
+    }
+
+    private static int getSegmentId(File file) {
+        String name = file.getName();
+        return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * @return the length of the PUT record of a resource, all of which is kept alive by the index
+     */
+    private static long getRecordLength(String path, long length) {
+        int pathLength = 0;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            // modified UTF-8, as written by writeUTF
+            pathLength += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        // type, path, time and content
+        return RECORD_HEADER_SIZE + 1 + 2 + pathLength + 8 + length;
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    private void maintain() {
+        try {
+            compact();
+            boolean changed;
+            synchronized (this) {
+                changed = changedSinceCheckpoint;
+            }
+            if (changed) {
+                checkpoint();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Maintenance of the packing store failed", e);
+        }
+    }
+
+    /**
+     * Appends the live content of segments that are mostly garbage to the log again and deletes
+     * them. The content is read without holding the lock of the store, which is only taken to
+     * append each record and to swap the segments.
+     *
+     * @return the number of deleted segments
+     */
+    int compact() throws IOException {
+        synchronized (compactionLock) {
+            List<Segment> victims = new ArrayList<>();
+            List<Relocation> relocations = new ArrayList<>();
+            synchronized (this) {
+                for (Segment segment : segments.values()) {
+                    if (segment != active && segment.live <= segment.size * MIN_LIVE_RATIO) {
+                        victims.add(segment);
+                    }
+                }
+                if (victims.isEmpty()) {
+                    return 0;
+                }
+                for (Map.Entry<String, Entry> indexEntry : index.entrySet()) {
+                    Entry entry = indexEntry.getValue();
+                    Segment segment = entry.folder || entry.largeFile != null
+                        ? null
+                        : segments.get(entry.segment);
+                    if (segment != null && victims.contains(segment)) {
+                        relocations.add(new Relocation(indexEntry.getKey(),
+                            entry,
+                            segment,
+                            entry.position,
+                            entry.length
+                        ));
+                    }
+                }
+            }
+            for (Relocation relocation : relocations) {
+                byte[] data =
+                    read(relocation.segment.channel, relocation.position, relocation.length);
+                synchronized (this) {
+                    Entry entry = relocation.entry;
+                    if (index.get(relocation.path) != entry) {
+                        // overwritten or removed meanwhile, the new record is not in a victim
+                        continue;
+                    }
+                    long position = append(RecordType.PUT,
+                        relocation.path,
+                        entry.modified,
+                        data,
+                        data.length,
+                        null,
+                        0L
+                    );
+                    long recordLength = getRecordLength(relocation.path, entry.length);
+                    relocation.segment.live -= recordLength;
+                    entry.segment = active.id;
+                    entry.position = position;
+                    active.live += recordLength;
+                }
+            }
+            // the victims must not be needed for recovery any more
+            checkpoint();
+            synchronized (this) {
+                for (Segment victim : victims) {
+                    segments.remove(victim.id);
+                    victim.channel.close();
+                    Files.delete(victim.file.toPath());
+                    log.debug("Compacted {}", victim.file);
+                }
+            }
+            return victims.size();
+        }
+    }
+
+    /**
+     * Writes the index, which replaces replaying the log up to the current position. Only taking
+     * the snapshot of the index holds the lock of the store.
+     */
+    void checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            int segmentId;
+            long position;
+            List<Map.Entry<String, Entry>> snapshot = new ArrayList<>();
+            synchronized (this) {
+                active.channel.force(false);
+                unforced = false;
+                segmentId = active.id;
+                position = active.size;
+                for (Map.Entry<String, Entry> indexEntry : index.entrySet()) {
+                    if (!indexEntry.getValue().placeholder) {
+                        snapshot.add(new AbstractMap.SimpleImmutableEntry<>(indexEntry.getKey(),
+                            indexEntry.getValue().copy()
+                        ));
+                    }
+                }
+                changedSinceCheckpoint = false;
+            }
+            try {
+                writeIndex(segmentId, position, snapshot);
+            } catch (IOException e) {
+                synchronized (this) {
+                    changedSinceCheckpoint = true;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void writeIndex(int segmentId, long position, List<Map.Entry<String, Entry>> snapshot)
+        throws IOException {
+        // parents must come first when the index is loaded
+        snapshot.sort(Map.Entry.comparingByKey());
+        Path temp = new File(indexFile.getParentFile(), INDEX_FILE + ".tmp").toPath();
+        try (FileChannel channel = FileChannel.open(temp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Channels.newOutputStream(channel),
+                BUF_SIZE
+            ));
+            out.writeInt(VERSION);
+            out.writeInt(segmentId);
+            out.writeLong(position);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> indexEntry : snapshot) {
+                Entry entry = indexEntry.getValue();
+                out.writeUTF(indexEntry.getKey());
+                out.writeBoolean(entry.folder);
+                out.writeLong(entry.created);
+                out.writeLong(entry.modified);
+                if (!entry.folder) {
+                    out.writeLong(entry.length);
+                    out.writeInt(entry.segment);
+                    out.writeLong(entry.position);
+                    out.writeUTF(entry.largeFile == null ? "" : entry.largeFile);
+                }
+            }
+            out.flush();
+            channel.force(true);
+        }
+        LocalFileSystemStore.moveAtomically(temp, indexFile.toPath());
+        LocalFileSystemStore.syncDirectory(indexFile.getParentFile().toPath());
+    }
+
+    private byte[] read(Entry entry) throws IOException {
+        if (entry.length == 0L) {
+            // possibly created without a record yet
+            return new byte[0];
+        }
+        return read(segments.get(entry.segment).channel, entry.position, entry.length);
+    }
+
+    private static byte[] read(FileChannel channel, long position, long length)
+        throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("truncated content at " + position);
+            }
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public void destroy() {
+        compactor.shutdown();
+        try {
+            // interrupting a compaction would close the channel it is reading or writing
+            if (!compactor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                compactor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            checkpoint();
+            synchronized (this) {
+                for (Segment segment : segments.values()) {
+                    segment.channel.close();
+                }
+            }
+        } catch (IOException e) {
+            log.error("PackingStore.destroy() failed", e);
+        }
+    }
+
+    @Override
+    public Transaction begin(Principal principal) {
+        log.trace("PackingStore.begin()");
+        return new PackingTransaction(principal);
+    }
+
+    @Override
+    public void checkAuthentication(Transaction transaction) {
+        log.trace("PackingStore.checkAuthentication()");
+    }
+
+    @Override
+    public synchronized void commit(Transaction transaction) {
+        log.trace("PackingStore.commit()");
+        try {
+            for (String path : getPlaceholders(transaction)) {
+                Entry entry = index.get(path);
+                if (entry != null && entry.placeholder) {
+                    appendEmpty(path, entry.modified);
+                }
+            }
+            getPlaceholders(transaction).clear();
+            if (unforced) {
+                active.channel.force(false);
+                unforced = false;
+            }
+        } catch (IOException e) {
+            log.error("PackingStore.commit() failed");
+            throw new WebdavException(e);
+        }
+    }
+
+    @Override
+    public synchronized void rollback(Transaction transaction) {
+        log.trace("PackingStore.rollback()");
+        try {
+            for (String path : getPlaceholders(transaction)) {
+                Entry entry = index.get(path);
+                if (entry != null && entry.placeholder) {
+                    replace(path, entry, null);
+                }
+            }
+        } catch (IOException e) {
+            log.error("PackingStore.rollback() failed");
+            throw new WebdavException(e);
+        } finally {
+            getPlaceholders(transaction).clear();
+        }
+    }
+
+    /**
+     * @return the resources the transaction created without content yet, an empty set for
+     * transactions of another store
+     */
+    private static Set<String> getPlaceholders(Transaction transaction) {
+        return transaction instanceof PackingTransaction
+            ? ((PackingTransaction) transaction).placeholders
+            : new HashSet<>();
+    }
+
+    private void appendEmpty(String path, long time) throws IOException {
+        long position = append(RecordType.PUT, path, time, null, 0, null, 0L);
+        apply(RecordType.PUT, path, time, active.id, position, 0L, null);
+    }
+
+    @Override
+    public synchronized void createFolder(Transaction transaction, String folderUri) {
+        log.trace("PackingStore.createFolder({})", folderUri);
+        String path = LocalFileSystemTransaction.normalize(folderUri);
+        if (index.containsKey(path) || !isFolder(LocalFileSystemTransaction.getParent(path))) {
+            throw new WebdavException("cannot create folder: " + folderUri);
+        }
+        try {
+            long time = System.currentTimeMillis();
+            append(RecordType.CREATE_FOLDER, path, time, null, 0, null, 0L);
+            apply(RecordType.CREATE_FOLDER, path, time, 0, 0L, 0L, null);
+        } catch (IOException e) {
+            log.error("PackingStore.createFolder({}) failed", folderUri);
+            throw new WebdavException(e);
+        }
+    }
+
+    @Override
+    public synchronized void createResource(Transaction transaction, String resourceUri) {
+        log.trace("PackingStore.createResource({})", resourceUri);
+        String path = LocalFileSystemTransaction.normalize(resourceUri);
+        if (index.containsKey(path) || !isFolder(LocalFileSystemTransaction.getParent(path))) {
+            throw new WebdavException("cannot create file: " + resourceUri);
+        }
+        try {
+            long time = System.currentTimeMillis();
+            if (!(transaction instanceof PackingTransaction)) {
+                appendEmpty(path, time);
+                return;
+            }
+            // the empty record is only appended on commit, usually the content is written before
+            apply(RecordType.PUT, path, time, 0, 0L, 0L, null);
+            index.get(path).placeholder = true;
+            ((PackingTransaction) transaction).placeholders.add(path);
+        } catch (IOException e) {
+            log.error("PackingStore.createResource({}) failed", resourceUri);
+            throw new WebdavException(e);
+        }
+    }
+
+    @Override
+    public InputStream getResourceContent(Transaction transaction, String resourceUri) {
+        log.trace("PackingStore.getResourceContent({})", resourceUri);
+        String path = LocalFileSystemTransaction.normalize(resourceUri);
+        try {
+            synchronized (this) {
+                Entry entry = index.get(path);
+                if (entry == null || entry.folder) {
+                    throw new WebdavException("cannot read content of " + resourceUri);
+                }
+                if (entry.largeFile == null) {
+                    return new ByteArrayInputStream(read(entry));
+                }
+                // opened before the lock is released, replacing the content may delete the file
+                return new BufferedInputStream(Files.newInputStream(new File(largeDir,
+                    entry.largeFile
+                ).toPath()), BUF_SIZE);
+            }
+        } catch (IOException e) {
+            log.error("PackingStore.getResourceContent({}) failed", resourceUri);
+            throw new WebdavException(e);
+        }
+    }
+
+    @Override
+    public long setResourceContent(
+        Transaction transaction,
+        String resourceUri,
+        InputStream content,
+        String contentType,
+        String characterEncoding
+    ) {
+        log.trace("PackingStore.setResourceContent({})", resourceUri);
+        String path = LocalFileSystemTransaction.normalize(resourceUri);
+        // the body is read without holding the lock
+        byte[] buffer = new byte[packThreshold + 1];
+        File largeFile = null;
+        try {
+            int length = 0;
+            int read = 0;
+            while (length < buffer.length && read != -1) {
+                read = content.read(buffer, length, buffer.length - length);
+                if (read > 0) {
+                    length += read;
+                }
+            }
+            if (length <= packThreshold) {
+                synchronized (this) {
+                    checkWritable(path, resourceUri);
+                    putSmall(path, buffer, length);
+                }
+                return length;
+            }
+
+            largeFile = new File(largeDir, UUID.randomUUID().toString());
+            long largeLength = length;
+            try (FileChannel channel = FileChannel.open(largeFile.toPath(),
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE
+            )) {
+                OutputStream out = Channels.newOutputStream(channel);
+                out.write(buffer, 0, length);
+                byte[] copyBuffer = new byte[BUF_SIZE];
+                while ((read = content.read(copyBuffer)) != -1) {
+                    out.write(copyBuffer, 0, read);
+                    largeLength += read;
+                }
+                channel.force(false);
+            }
+            synchronized (this) {
+                checkWritable(path, resourceUri);
+                long time = System.currentTimeMillis();
+                append(RecordType.PUT_LARGE,
+                    path,
+                    time,
+                    null,
+                    0,
+                    largeFile.getName(),
+                    largeLength
+                );
+                apply(RecordType.PUT_LARGE, path, time, 0, 0L, largeLength, largeFile.getName());
+            }
+            largeFile = null;
+            return largeLength;
+        } catch (IOException e) {
+            log.error("PackingStore.setResourceContent({}) failed", resourceUri);
+            throw new WebdavException(e);
+        } finally {
+            if (largeFile != null && largeFile.exists() && !largeFile.delete()) {
+                log.warn("Could not delete {}", largeFile);
+            }
+        }
+    }
+
+    private void checkWritable(String path, String resourceUri) {
+        Entry entry = index.get(path);
+        if (entry != null && entry.folder
+            || !isFolder(LocalFileSystemTransaction.getParent(path))) {
+            throw new WebdavException("cannot write file: " + resourceUri);
+        }
+    }
+
+    private void putSmall(String path, byte[] data, int length) throws IOException {
+        long time = System.currentTimeMillis();
+        long position = append(RecordType.PUT, path, time, data, length, null, 0L);
+        apply(RecordType.PUT, path, time, active.id, position, length, null);
+    }
+
+    private boolean isFolder(String path) {
+        Entry entry = index.get(path);
+        return entry != null && entry.folder;
+    }
+
+    @Override
+    public synchronized String[] getChildrenNames(Transaction transaction, String folderUri) {
+        log.trace("PackingStore.getChildrenNames({})", folderUri);
+        Entry entry = index.get(LocalFileSystemTransaction.normalize(folderUri));
+        if (entry == null || !entry.folder) {
+            return null;
+        }
+        return entry.children.toArray(new String[0]);
+    }
+
+    @Override
+    public synchronized void removeObject(Transaction transaction, String uri) {
+        String path = LocalFileSystemTransaction.normalize(uri);
+        Entry entry = index.get(path);
+        boolean success = entry != null && !path.isEmpty() && (!entry.folder
+            || entry.children.isEmpty());
+        log.trace("PackingStore.removeObject({})={}", uri, success);
+        if (!success) {
+            throw new WebdavException("cannot delete object: " + uri);
+        }
+        try {
+            long time = System.currentTimeMillis();
+            append(RecordType.REMOVE, path, time, null, 0, null, 0L);
+            apply(RecordType.REMOVE, path, time, 0, 0L, 0L, null);
+        } catch (IOException e) {
+            log.error("PackingStore.removeObject({}) failed", uri);
+            throw new WebdavException(e);
+        }
+    }
+
+    @Override
+    public synchronized long getResourceLength(Transaction transaction, String path) {
+        log.trace("PackingStore.getResourceLength({})", path);
+        Entry entry = index.get(LocalFileSystemTransaction.normalize(path));
+        return entry == null ? 0L : entry.length;
+    }
+
+    @Override
+    public synchronized StoredObject getStoredObject(Transaction transaction, String uri) {
+        Entry entry = index.get(LocalFileSystemTransaction.normalize(uri));
+        if (entry == null) {
+            return null;
+        }
+        StoredObject so = new StoredObject();
+        so.setFolder(entry.folder);
+        so.setLastModified(Instant.ofEpochMilli(entry.modified));
+        so.setCreationDate(Instant.ofEpochMilli(entry.created));
+        so.setResourceLength(entry.length);
+        return so;
+    }
+
+    /**
+     * @return the number of segment files
+     */
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    private enum RecordType {
+        CREATE_FOLDER, PUT, PUT_LARGE, REMOVE
+    }
+
+    /**
+     * A folder or the location of the content of a resource.
+     */
+    private static final class Entry {
+
+        private boolean folder;
+
+        private long created;
+
+        private long modified;
+
+        private long length;
+
+        private int segment;
+
+        private long position;
+
+        @Nullable
+        private String largeFile;
+
+        @Nullable
+        private Set<String> children;
+
+        /**
+         * Whether the resource has been created without content by a transaction that is not
+         * committed yet, so that it has no record in the log
+         */
+        private boolean placeholder;
+
+        private Entry copy() {
+            Entry copy = new Entry();
+            copy.folder = folder;
+            copy.created = created;
+            copy.modified = modified;
+            copy.length = length;
+            copy.segment = segment;
+            copy.position = position;
+            copy.largeFile = largeFile;
+            return copy;
+        }
+
+    }
+
+    @RequiredArgsConstructor
+    private static final class PackingTransaction implements Transaction {
+
+        @Getter
+        private final Principal principal;
+
+        /**
+         * Resources created without content, whose record is appended on commit unless they are
+         * written before, and which are removed again on rollback
+         */
+        private final Set<String> placeholders = new HashSet<>();
+
+    }
+
+    /**
+     * The content of a resource to be moved out of a segment that is compacted.
+     */
+    @RequiredArgsConstructor
+    private static final class Relocation {
+
+        private final String path;
+
+        private final Entry entry;
+
+        private final Segment segment;
+
+        private final long position;
+
+        private final long length;
+
+    }
+
+    private static final class Segment {
+
+        private final int id;
+
+        private final File file;
+
+        private final FileChannel channel;
+
+        private long size;
+
+        /**
+         * Bytes of records still referenced by the index
+         */
+        private long live;
+
+        private Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+            );
+            size = channel.size();
+        }
+
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.drjekyll.webdav.store;
+
+import java.util.Collection;
+import java.util.Map;
+import org.drjekyll.webdav.Transaction;
+
+/**
+ * Stores the dead properties set by PROPPATCH. Properties are identified by namespace and name,
+ * e.g. {@code http://example.com/ns/:color}, and their values are the XML content of the property
+ * element as sent by the client.
+ * <p>
+ * PROPFIND asks for the properties of the members of a collection one after another, so
+ * implementations should read the properties of all members of a collection at once and keep them
+ * for the following calls.
+ */
+public interface PropertyStore {
+
+    /**
+     * @param transaction indicates that the method is within the scope of a WebDAV transaction
+     * @param path        path of the resource or collection
+     * @return the properties of the object, empty if it has none
+     */
+    Map<String, String> getProperties(Transaction transaction, String path);
+
+    /**
+     * Sets and removes properties of an object.
+     *
+     * @param transaction indicates that the method is within the scope of a WebDAV transaction
+     * @param path        path of the resource or collection
+     * @param set         properties to set, by namespace and name
+     * @param remove      properties to remove, by namespace and name
+     */
+    void setProperties(
+        Transaction transaction, String path, Map<String, String> set, Collection<String> remove
+    );
+
+    /**
+     * Copies the properties of an object, but not those of its members, replacing the properties
+     * of the destination.
+     *
+     * @param transaction     indicates that the method is within the scope of a WebDAV
+     *                        transaction
+     * @param sourcePath      path of the copied object
+     * @param destinationPath path of the copy
+     */
+    void copyProperties(Transaction transaction, String sourcePath, String destinationPath);
+
+    /**
+     * Removes the properties of an object which was removed.
+     *
+     * @param transaction indicates that the method is within the scope of a WebDAV transaction
+     * @param path        path of the removed resource or collection
+     */
+    void removeProperties(Transaction transaction, String path);
+
+    /**
+     * Makes the changes of a transaction permanent, after the content changes of the transaction
+     * have been committed. Stores that write changes right away need not do anything.
+     *
+     * @param transaction the committed transaction
+     */
+    default void commit(Transaction transaction) {
+    }
+
+    /**
+     * Drops the changes of a transaction that was rolled back.
+     *
+     * @param transaction the transaction rolled back
+     */
+    default void rollback(Transaction transaction) {
+    }
+
+}
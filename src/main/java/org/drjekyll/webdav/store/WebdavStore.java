@@ -26,6 +26,7 @@ package org.drjekyll.webdav.store;
 import java.io.InputStream;
 import java.security.Principal;
 import org.drjekyll.webdav.Transaction;
+import org.drjekyll.webdav.exceptions.InsufficientStorageException;
 import org.drjekyll.webdav.exceptions.WebdavException;
 
 /**
@@ -128,6 +129,71 @@ public interface WebdavStore {
         String characterEncoding
     );
 
+    /**
+     * Sets / stores the content of the resource specified by {@code resourceUri}, announcing the
+     * expected length of the content. Stores may use it to preallocate space or to reject the
+     * content before reading it. The default implementation ignores the expected length.
+     *
+     * @param transaction       indicates that the method is within the scope of a WebDAV
+     *                          transaction
+     * @param resourceUri       URI of the resource where the content will be stored
+     * @param content           input stream from which the content will be read from
+     * @param contentType       content type of the resource or {@code null} if unknown
+     * @param characterEncoding character encoding of the resource or {@code null} if unknown or not
+     *                          applicable
+     * @param expectedLength    expected length of the content or -1 if unknown
+     * @return lenght of resource
+     * @throws InsufficientStorageException if the store has not enough space for the content
+     * @throws WebdavException              if something goes wrong on the store level
+     */
+    default long setResourceContent(
+        Transaction transaction,
+        String resourceUri,
+        InputStream content,
+        String contentType,
+        String characterEncoding,
+        long expectedLength
+    ) {
+        return setResourceContent(transaction,
+            resourceUri,
+            content,
+            contentType,
+            characterEncoding
+        );
+    }
+
+    /**
+     * Sets the content of the resource to content the store already holds, identified by its
+     * digest, without transferring it again. Only stores that address content by a digest support
+     * this; the default implementation never finds the content.
+     *
+     * @param transaction indicates that the method is within the scope of a WebDAV transaction
+     * @param resourceUri URI of the resource where the content will be stored
+     * @param algorithm   digest algorithm as registered for HTTP digest fields, e.g.
+     *                    {@code sha-256}
+     * @param digest      digest of the content
+     * @return length of the resource or -1 if the store does not hold content with that digest
+     * @throws WebdavException if something goes wrong on the store level
+     */
+    default long linkResourceContent(
+        Transaction transaction, String resourceUri, String algorithm, byte[] digest
+    ) {
+        return -1L;
+    }
+
+    /**
+     * Checks whether there is enough space to store content of the given length, before the
+     * content is transferred. The default implementation accepts everything.
+     *
+     * @param transaction    indicates that the method is within the scope of a WebDAV transaction
+     * @param resourceUri    URI of the resource where the content will be stored
+     * @param expectedLength expected length of the content or -1 if unknown
+     * @throws InsufficientStorageException if the store has not enough space for the content
+     */
+    default void checkStorage(Transaction transaction, String resourceUri, long expectedLength) {
+        // no limits
+    }
+
     /**
      * Gets the names of the children of the folder specified by {@code folderUri}.
      *
@@ -0,0 +1,43 @@
+package org.drjekyll.webdav;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.drjekyll.webdav.store.StoredObject;
+import org.junit.jupiter.api.Test;
+
+class CachingMimeTyperTest {
+
+    private final List<String> containerLookups = new ArrayList<>();
+
+    private final CachingMimeTyper mimeTyper = new CachingMimeTyper(null, name -> {
+        containerLookups.add(name);
+        return name.endsWith(".ics") ? "text/x-calendar" : null;
+    });
+
+    @Test
+    void prefersTypeOfStore() {
+
+        StoredObject so = new StoredObject();
+        so.setMimeType("application/x-custom");
+
+        assertThat(mimeTyper.getMimeType(null, "/a/b.txt", so)).isEqualTo("application/x-custom");
+        assertThat(containerLookups).isEmpty();
+    }
+
+    @Test
+    void resolvesAndCachesExtensions() {
+
+        StoredObject so = new StoredObject();
+
+        assertThat(mimeTyper.getMimeType(null, "/a/b.PNG", so)).isEqualTo("image/png");
+        assertThat(mimeTyper.getMimeType(null, "/a/c.png", so)).isEqualTo("image/png");
+        assertThat(mimeTyper.getMimeType(null, "/a/d.ics", so)).isEqualTo("text/x-calendar");
+        assertThat(mimeTyper.getMimeType(null, "/a/e.unknown", so)).isNull();
+        assertThat(mimeTyper.getMimeType(null, "/a/f.unknown", so)).isNull();
+
+        assertThat(containerLookups).containsExactly("file.png", "file.ics", "file.unknown");
+    }
+
+}
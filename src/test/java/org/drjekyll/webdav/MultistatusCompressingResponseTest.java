@@ -0,0 +1,64 @@
+package org.drjekyll.webdav;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class MultistatusCompressingResponseTest {
+
+    private static final String MULTISTATUS = "<D:multistatus xmlns:D=\"DAV:\"></D:multistatus>";
+
+    @Test
+    void compressesMultistatus() throws Exception {
+
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+        MultistatusCompressingResponse compressing = new MultistatusCompressingResponse(resp);
+        compressing.setStatus(WebdavStatus.SC_MULTI_STATUS);
+        compressing.setContentType("text/xml; charset=UTF-8");
+
+        PrintWriter writer = compressing.getWriter();
+        writer.write(MULTISTATUS);
+        writer.flush();
+        compressing.finish();
+
+        assertThat(resp.getHeader("Content-Encoding")).isEqualTo("gzip");
+        assertThat(resp.getHeader("Vary")).isEqualTo("Accept-Encoding");
+        try (InputStream in =
+                 new GZIPInputStream(new ByteArrayInputStream(resp.getContentAsByteArray()))) {
+            assertThat(in).hasContent(MULTISTATUS);
+        }
+    }
+
+    @Test
+    void keepsOtherResponsesUncompressed() throws Exception {
+
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+        MultistatusCompressingResponse compressing = new MultistatusCompressingResponse(resp);
+        compressing.setStatus(WebdavStatus.SC_LOCKED);
+
+        compressing.getWriter().write("locked");
+        compressing.finish();
+
+        assertThat(resp.getHeader("Content-Encoding")).isNull();
+        assertThat(resp.getContentAsString()).isEqualTo("locked");
+    }
+
+    @Test
+    void acceptsGzipUnlessExcluded() {
+
+        MockHttpServletRequest req = new MockHttpServletRequest("PROPFIND", "/");
+        req.addHeader("Accept-Encoding", "br, gzip;q=0.8");
+        MockHttpServletRequest excluded = new MockHttpServletRequest("PROPFIND", "/");
+        excluded.addHeader("Accept-Encoding", "gzip;q=0, identity");
+
+        assertThat(MultistatusCompressingResponse.acceptsGzip(req)).isTrue();
+        assertThat(MultistatusCompressingResponse.acceptsGzip(excluded)).isFalse();
+    }
+
+}
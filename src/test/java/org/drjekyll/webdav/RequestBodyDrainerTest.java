@@ -0,0 +1,90 @@
+package org.drjekyll.webdav;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class RequestBodyDrainerTest {
+
+    private final RequestBodyDrainer drainer = new RequestBodyDrainer(16L);
+
+    @Test
+    void drainsSmallBody() throws Exception {
+
+        MockHttpServletRequest req = new MockHttpServletRequest("PUT", "/file");
+        req.setContent(new byte[10]);
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+
+        assertThat(drainer.drain(req, resp)).isTrue();
+
+        assertThat(resp.getHeader("Connection")).isNull();
+        assertThat(drainer.getDrainedBytes()).isEqualTo(10L);
+        assertThat(drainer.getDrainedRequests()).isEqualTo(1L);
+    }
+
+    @Test
+    void closesConnectionForLargeBody() throws Exception {
+
+        MockHttpServletRequest req = new MockHttpServletRequest("PUT", "/file");
+        req.setContent(new byte[100]);
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+
+        assertThat(drainer.drain(req, resp)).isFalse();
+
+        assertThat(resp.getHeader("Connection")).isEqualTo("close");
+        assertThat(drainer.getDrainedBytes()).isZero();
+        assertThat(drainer.getClosedConnections()).isEqualTo(1L);
+    }
+
+    @Test
+    void neverReadsBodyExpectingContinue() throws Exception {
+
+        MockHttpServletRequest req = new MockHttpServletRequest("PUT", "/file");
+        req.setContent(new byte[10]);
+        req.addHeader("Expect", "100-continue");
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+
+        assertThat(drainer.drain(req, resp)).isFalse();
+
+        assertThat(resp.getHeader("Connection")).isEqualTo("close");
+        assertThat(req.getInputStream().read()).isZero();
+    }
+
+    @Test
+    void neverReadsChunkedBodyWithoutLimit() throws Exception {
+
+        MockHttpServletRequest req = new MockHttpServletRequest("PUT", "/file") {
+            @Override
+            public long getContentLengthLong() {
+                return -1L;
+            }
+        };
+        req.setContent(new byte[]{1, 2, 3});
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+        RequestBodyDrainer neverSkipping = new RequestBodyDrainer(0L);
+
+        assertThat(neverSkipping.drain(req, resp)).isFalse();
+
+        assertThat(resp.getHeader("Connection")).isEqualTo("close");
+        assertThat(req.getInputStream().read()).isEqualTo(1);
+        assertThat(neverSkipping.getDrainedBytes()).isZero();
+        assertThat(neverSkipping.getClosedConnections()).isEqualTo(1L);
+    }
+
+    @Test
+    void countsOnlyConnectionsMarkedToBeClosed() throws Exception {
+
+        MockHttpServletRequest req = new MockHttpServletRequest("PUT", "/file");
+        req.setContent(new byte[100]);
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+        resp.setCommitted(true);
+
+        assertThat(drainer.drain(req, resp)).isFalse();
+
+        assertThat(resp.getHeader("Connection")).isNull();
+        assertThat(drainer.getClosedConnections()).isZero();
+    }
+
+}
@@ -1,5 +1,6 @@
 package org.drjekyll.webdav;
 
+import java.util.Collections;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import org.drjekyll.webdav.store.WebdavStore;
@@ -100,6 +101,9 @@ public class WebdavServletTest {
                 oneOf(servletConfig).getInitParameter("rootpath");
                 will(returnValue("./target/tmpTestData/"));
 
+                oneOf(servletConfig).getInitParameterNames();
+                will(returnValue(Collections.emptyEnumeration()));
+
                 exactly(2).of(servletConfig).getInitParameter("lazyFolderCreationOnPut");
                 will(returnValue("1"));
 
@@ -111,6 +115,45 @@ public class WebdavServletTest {
 
                 exactly(2).of(servletConfig).getInitParameter("no-content-length-headers");
                 will(returnValue("0"));
+
+                oneOf(servletConfig).getInitParameter("maxUploadSize");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("digestLinking");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("compression");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("multistatusCompression");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("syncCollection");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("collectionTags");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("propfindCache");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("propfindPageSize");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("propertyStore");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("propfindPolicy");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("propfindPrefetchThreads");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("drainLimit");
+                will(returnValue(null));
+
+                oneOf(servletConfig).getInitParameter("asyncJobThreads");
+                will(returnValue(null));
             }
         });
 
@@ -0,0 +1,170 @@
+package org.drjekyll.webdav.jobs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.security.Principal;
+import java.time.Duration;
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletResponse;
+import org.drjekyll.webdav.MockPrincipal;
+import org.drjekyll.webdav.locking.ResourceLocks;
+import org.drjekyll.webdav.store.LocalFileSystemStore;
+import org.drjekyll.webdav.store.WebdavStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class AsyncMethodTest {
+
+    @TempDir
+    File root;
+
+    private WebdavStore store;
+
+    private JobScheduler jobScheduler;
+
+    private ResourceLocks resourceLocks;
+
+    @BeforeEach
+    void setUp() {
+        store = new LocalFileSystemStore(root);
+        jobScheduler = new JobScheduler(1, 1, Duration.ofMinutes(1));
+        resourceLocks = new ResourceLocks();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobScheduler.destroy();
+    }
+
+    @Test
+    void executesSynchronouslyWithoutPreference() throws Exception {
+
+        MockHttpServletRequest req = new MockHttpServletRequest("DELETE", "/folder");
+        req.setPathInfo("/folder");
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+
+        AsyncMethod asyncMethod = new AsyncMethod(store,
+            resourceLocks,
+            jobScheduler,
+            (transaction, request, response) -> response.setStatus(HttpServletResponse.SC_NO_CONTENT),
+            "/.jobs"
+        );
+        asyncMethod.execute(null, req, resp);
+
+        assertThat(resp.getStatus()).isEqualTo(HttpServletResponse.SC_NO_CONTENT);
+        assertThat(resp.getHeader("Location")).isNull();
+    }
+
+    @Test
+    void acceptsJobAndReportsProgress() throws Exception {
+
+        MockHttpServletRequest req = new MockHttpServletRequest("DELETE", "/webdav/folder");
+        req.setServletPath("/webdav");
+        req.setPathInfo("/folder");
+        req.addHeader("Prefer", "respond-async, wait=10");
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+
+        AsyncMethod asyncMethod = new AsyncMethod(store,
+            resourceLocks,
+            jobScheduler,
+            (transaction, request, response) -> {
+                Job.reportProgress(8L);
+                Job.reportProgress(0L);
+                response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+            },
+            "/.jobs"
+        );
+        asyncMethod.execute(null, req, resp);
+
+        assertThat(resp.getStatus()).isEqualTo(HttpServletResponse.SC_ACCEPTED);
+        assertThat(resp.getHeader("Preference-Applied")).isEqualTo("respond-async");
+        String location = resp.getHeader("Location");
+        assertThat(location).startsWith("/webdav/.jobs/");
+
+        String jobId = location.substring("/webdav/.jobs/".length());
+        Job job = jobScheduler.getJob(jobId);
+        assertThat(job).isNotNull();
+        long timeout = System.currentTimeMillis() + 5000L;
+        while (!job.isDone() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10L);
+        }
+
+        assertThat(job.getState()).isEqualTo(Job.State.SUCCEEDED);
+        assertThat(job.getStatus()).isEqualTo(HttpServletResponse.SC_NO_CONTENT);
+        assertThat(job.getItemsProcessed()).isEqualTo(2L);
+        assertThat(job.getBytesProcessed()).isEqualTo(8L);
+        assertThat(resourceLocks.getTempLockedObjectByPath(null, "/folder").getOwner()).isNull();
+
+        MockHttpServletRequest statusReq = new MockHttpServletRequest("GET", location);
+        statusReq.setServletPath("/webdav");
+        statusReq.setPathInfo("/.jobs/" + jobId);
+        MockHttpServletResponse statusResp = new MockHttpServletResponse();
+
+        new DoJobStatus(jobScheduler, (transaction, request, response) -> {
+            throw new IllegalStateException("must not be called");
+        }, "/.jobs").execute(null, statusReq, statusResp);
+
+        assertThat(statusResp.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+        assertThat(statusResp.getContentAsString())
+            .contains("<J:state>succeeded</J:state>")
+            .contains("<J:items-processed>2</J:items-processed>")
+            .contains("<J:bytes-processed>8</J:bytes-processed>")
+            .contains("<D:status>HTTP/1.1 204 No Content</D:status>");
+    }
+
+    @Test
+    void jobOfAnotherUserIsNotFound() throws Exception {
+
+        MockHttpServletRequest req = new MockHttpServletRequest("DELETE", "/folder");
+        req.setPathInfo("/folder");
+        req.setUserPrincipal(new MockPrincipal("alice"));
+        req.addHeader("Prefer", "respond-async");
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+
+        new AsyncMethod(store,
+            resourceLocks,
+            jobScheduler,
+            (transaction, request, response) -> response.setStatus(HttpServletResponse.SC_OK),
+            "/.jobs"
+        ).execute(null, req, resp);
+
+        String location = resp.getHeader("Location");
+        assertThat(getStatus(location, new MockPrincipal("bob")))
+            .isEqualTo(HttpServletResponse.SC_NOT_FOUND);
+        assertThat(getStatus(location, null)).isEqualTo(HttpServletResponse.SC_NOT_FOUND);
+        assertThat(getStatus(location, new MockPrincipal("alice")))
+            .isEqualTo(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    void unknownJobIsNotFound() throws Exception {
+
+        MockHttpServletRequest statusReq = new MockHttpServletRequest("GET", "/.jobs/unknown");
+        statusReq.setPathInfo("/.jobs/unknown");
+        MockHttpServletResponse statusResp = new MockHttpServletResponse();
+
+        new DoJobStatus(jobScheduler, (transaction, request, response) -> {
+        }, "/.jobs").execute(null, statusReq, statusResp);
+
+        assertThat(statusResp.getStatus()).isEqualTo(HttpServletResponse.SC_NOT_FOUND);
+    }
+
+    private int getStatus(String location, @Nullable Principal principal) throws Exception {
+        MockHttpServletRequest statusReq = new MockHttpServletRequest("GET", location);
+        statusReq.setPathInfo(location);
+        statusReq.setUserPrincipal(principal);
+        MockHttpServletResponse statusResp = new MockHttpServletResponse();
+
+        new DoJobStatus(jobScheduler, (transaction, request, response) -> {
+            throw new IllegalStateException("must not be called");
+        }, "/.jobs").execute(null, statusReq, statusResp);
+
+        return statusResp.getStatus();
+    }
+
+}
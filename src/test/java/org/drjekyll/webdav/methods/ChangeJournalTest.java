@@ -0,0 +1,68 @@
+package org.drjekyll.webdav.methods;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class ChangeJournalTest {
+
+    private final ChangeJournal changeJournal = new ChangeJournal(0);
+
+    @Test
+    void bumpsCollectionTagsOfAllParents() {
+
+        String root = changeJournal.getCollectionTag("/");
+        String calendars = changeJournal.getCollectionTag("/calendars");
+        String contacts = changeJournal.getCollectionTag("/contacts");
+        String work = changeJournal.getCollectionTag("/calendars/work");
+
+        changeJournal.record(null, "/calendars/work/event.ics", false);
+        changeJournal.commit(null);
+
+        assertThat(changeJournal.getCollectionTag("/")).isNotEqualTo(root);
+        assertThat(changeJournal.getCollectionTag("/calendars/")).isNotEqualTo(calendars);
+        assertThat(changeJournal.getCollectionTag("/calendars/work")).isNotEqualTo(work);
+        assertThat(changeJournal.getCollectionTag("/contacts")).isEqualTo(contacts);
+        assertThat(changeJournal.getCollectionETag("/calendars/work"))
+            .isEqualTo("W/\"" + changeJournal.getCollectionTag("/calendars/work") + '"');
+    }
+
+    @Test
+    void keepsCollectionTagsOnRollback() {
+
+        String calendars = changeJournal.getCollectionTag("/calendars");
+
+        changeJournal.record(null, "/calendars/event.ics", true);
+        changeJournal.rollback(null);
+        changeJournal.commit(null);
+
+        assertThat(changeJournal.getCollectionTag("/calendars")).isEqualTo(calendars);
+    }
+
+    @Test
+    void changesCollectionTagsWhenRecreated() {
+
+        String a = changeJournal.getCollectionTag("/a");
+        String b = changeJournal.getCollectionTag("/a/b");
+
+        changeJournal.record(null, "/a", true);
+        changeJournal.record(null, "/a", false);
+        changeJournal.commit(null);
+
+        assertThat(changeJournal.getCollectionTag("/a")).isNotEqualTo(a);
+        // a copied subtree is recorded for its root only
+        assertThat(changeJournal.getCollectionTag("/a/b")).isNotEqualTo(b);
+    }
+
+    @Test
+    void changesCollectionTagOfChangedCollection() {
+
+        String folder = changeJournal.getCollectionTag("/folder");
+
+        changeJournal.record(null, "/folder", false);
+        changeJournal.commit(null);
+
+        assertThat(changeJournal.getCollectionTag("/folder")).isNotEqualTo(folder);
+    }
+
+}
@@ -3,7 +3,10 @@ package org.drjekyll.webdav.methods;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
+import java.util.zip.GZIPInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.drjekyll.webdav.MimeTyper;
@@ -113,7 +116,8 @@ public class DoGetTest {
                 oneOf(mockRes).addHeader(with(any(String.class)), with(any(String.class)));
 
                 oneOf(mockMimeTyper).getMimeType(with(any(Transaction.class)),
-                    with(equal("/index.html"))
+                    with(equal("/index.html")),
+                    with(any(StoredObject.class))
                 );
                 will(returnValue("text/foo"));
 
@@ -141,6 +145,75 @@ public class DoGetTest {
         mockery.assertIsSatisfied();
     }
 
+    @Test
+    public void testAccessOfaTextPageWithGzipResultsInCompressedPage() throws Exception {
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        byte[] content = text.toString().getBytes(StandardCharsets.UTF_8);
+        CompressedVariantCache cache = new CompressedVariantCache(1024L * 1024L);
+
+        mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue("/log.txt"));
+
+                StoredObject so = StoreObjectTestUtil.initStoredObject(false, content);
+
+                oneOf(mockStore).getStoredObject(mockTransaction, "/log.txt");
+                will(returnValue(so));
+
+                oneOf(mockRes).addHeader("Vary", "Accept-Encoding");
+
+                oneOf(mockReq).getHeader("Accept-Encoding");
+                will(returnValue("br;q=0, gzip"));
+
+                oneOf(mockStore).getStoredObject(mockTransaction, "/log.txt.gz");
+                will(returnValue(null));
+
+                oneOf(mockMimeTyper).getMimeType(with(any(Transaction.class)),
+                    with(equal("/log.txt")),
+                    with(any(StoredObject.class))
+                );
+                will(returnValue("text/plain"));
+
+                oneOf(mockStore).getResourceContent(mockTransaction, "/log.txt");
+                will(returnValue(new ByteArrayInputStream(content)));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockRes).setDateHeader("last-modified", so.getLastModified().toEpochMilli());
+
+                oneOf(mockRes).addHeader("ETag", "W/\"" + content.length + "-456000-gzip\"");
+
+                oneOf(mockRes).setHeader("Content-Encoding", "gzip");
+
+                oneOf(mockRes).setContentType("text/plain");
+
+                oneOf(mockRes).getOutputStream();
+                will(returnValue(tos));
+            }
+        });
+
+        DoGet doGet = new DoGet(mockStore, null, null, new ResourceLocks(), mockMimeTyper, 0);
+        doGet.setCompressedVariants(cache);
+
+        doGet.execute(mockTransaction, mockReq, mockRes);
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(tos.toByteArray()))) {
+            assertThat(in).hasBinaryContent(content);
+        }
+        assertThat(cache.getMisses()).isEqualTo(1L);
+
+        mockery.assertIsSatisfied();
+    }
+
     @Test
     public void testAccessOfaDirectoryResultsInRudimentaryChildList() throws Exception {
 
@@ -268,7 +341,8 @@ public class DoGetTest {
                 oneOf(mockRes).addHeader(with(any(String.class)), with(any(String.class)));
 
                 oneOf(mockMimeTyper).getMimeType(with(any(Transaction.class)),
-                    with(equal("/alternative"))
+                    with(equal("/alternative")),
+                    with(any(StoredObject.class))
                 );
                 will(returnValue("text/foo"));
 
@@ -1,5 +1,8 @@
 package org.drjekyll.webdav.methods;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.drjekyll.webdav.MimeTyper;
@@ -98,7 +101,8 @@ public class DoHeadTest {
                 oneOf(mockRes).addHeader(with(any(String.class)), with(any(String.class)));
 
                 oneOf(mockMimeTyper).getMimeType(with(any(Transaction.class)),
-                    with(equal("/index.html"))
+                    with(equal("/index.html")),
+                    with(any(StoredObject.class))
                 );
                 will(returnValue("text/foo"));
 
@@ -113,6 +117,66 @@ public class DoHeadTest {
         mockery.assertIsSatisfied();
     }
 
+    @Test
+    public void testAccessOfaTextPageWithGzipDoesNotCompress() throws Exception {
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        byte[] content = text.toString().getBytes(StandardCharsets.UTF_8);
+        CompressedVariantCache cache = new CompressedVariantCache(1024L * 1024L);
+
+        mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue("/log.txt"));
+
+                StoredObject so = StoreObjectTestUtil.initStoredObject(false, content);
+
+                oneOf(mockStore).getStoredObject(mockTransaction, "/log.txt");
+                will(returnValue(so));
+
+                oneOf(mockRes).addHeader("Vary", "Accept-Encoding");
+
+                oneOf(mockReq).getHeader("Accept-Encoding");
+                will(returnValue("gzip"));
+
+                oneOf(mockStore).getStoredObject(mockTransaction, "/log.txt.gz");
+                will(returnValue(null));
+
+                oneOf(mockMimeTyper).getMimeType(with(any(Transaction.class)),
+                    with(equal("/log.txt")),
+                    with(any(StoredObject.class))
+                );
+                will(returnValue("text/plain"));
+
+                oneOf(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                oneOf(mockRes).setDateHeader("last-modified", so.getLastModified().toEpochMilli());
+
+                oneOf(mockRes).addHeader("ETag", "W/\"" + content.length + "-456000-gzip\"");
+
+                oneOf(mockRes).setHeader("Content-Encoding", "gzip");
+
+                oneOf(mockRes).setContentType("text/plain");
+            }
+        });
+
+        DoHead doHead = new DoHead(mockStore, null, null, new ResourceLocks(), mockMimeTyper, 1);
+        doHead.setCompressedVariants(cache);
+
+        doHead.execute(mockTransaction, mockReq, mockRes);
+
+        assertThat(cache.getMisses()).isEqualTo(1L);
+
+        mockery.assertIsSatisfied();
+    }
+
     @Test
     public void testAccessOfaDirectoryResultsInRedirectIfDefaultIndexFilePresent()
         throws Exception {
@@ -2,6 +2,7 @@ package org.drjekyll.webdav.methods;
 
 import java.io.ByteArrayInputStream;
 import java.io.PrintWriter;
+import java.util.Base64;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.drjekyll.webdav.StoreObjectTestUtil;
@@ -24,6 +25,8 @@ public class DoPutTest {
 
     private static final byte[] RESOURCE_CONTENT = {'<', 'h', 'e', 'l', 'l', 'o', '/', '>'};
 
+    private static final byte[] DIGEST = new byte[32];
+
     private static final String EXCLUSIVE_LOCK_REQUEST =
         "<?xml version=\"1.0\" encoding=\"utf-8\" ?>"
             + "<D:lockinfo xmlns:D='DAV:'>"
@@ -119,7 +122,15 @@ public class DoPutTest {
                 oneOf(mockReq).getInputStream();
                 will(returnValue(dsis));
 
-                oneOf(mockStore).setResourceContent(mockTransaction, path, dsis, null, null);
+                oneOf(mockReq).getContentLengthLong();
+                will(returnValue(8L));
+
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockStore).checkStorage(mockTransaction, path, 8L);
+
+                oneOf(mockStore).setResourceContent(mockTransaction, path, dsis, null, null, 8L);
                 will(returnValue(8L));
 
                 fileSo = StoreObjectTestUtil.initStoredObject(false, RESOURCE_CONTENT);
@@ -138,6 +149,207 @@ public class DoPutTest {
         mockery.assertIsSatisfied();
     }
 
+    @Test
+    public void testDoPutLinksKnownContentByDigest() throws Exception {
+
+        mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue(path));
+
+                oneOf(mockReq).getHeader("User-Agent");
+                will(returnValue("Goliath agent"));
+
+                StoredObject parentSo = StoreObjectTestUtil.initStoredObject(true, null);
+
+                oneOf(mockStore).getStoredObject(mockTransaction, parentPath);
+                will(returnValue(parentSo));
+
+                StoredObject fileSo = null;
+
+                oneOf(mockStore).getStoredObject(mockTransaction, path);
+                will(returnValue(fileSo));
+
+                oneOf(mockStore).createResource(mockTransaction, path);
+
+                oneOf(mockRes).setStatus(HttpServletResponse.SC_CREATED);
+
+                oneOf(mockReq).getContentLengthLong();
+                will(returnValue(8L));
+
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockStore).checkStorage(mockTransaction, path, 8L);
+
+                oneOf(mockReq).getHeader("Repr-Digest");
+                will(returnValue("sha-512=:AAAA:, sha-256=:" + Base64.getEncoder().encodeToString(
+                    DIGEST) + ":"));
+
+                oneOf(mockStore).linkResourceContent(mockTransaction, path, "sha-256", DIGEST);
+                will(returnValue(8L));
+
+                fileSo = StoreObjectTestUtil.initStoredObject(false, RESOURCE_CONTENT);
+
+                oneOf(mockStore).getStoredObject(mockTransaction, path);
+                will(returnValue(fileSo));
+            }
+        });
+
+        DoPut doPut = new DoPut(mockStore, new ResourceLocks(), false, lazyFolderCreationOnPut);
+        doPut.setDigestLinking(true);
+        doPut.execute(mockTransaction, mockReq, mockRes);
+
+        mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testDoPutIgnoresShortDigest() throws Exception {
+        putWithInvalidDigest("sha-256=:AA==:");
+    }
+
+    @Test
+    public void testDoPutIgnoresEmptyDigest() throws Exception {
+        putWithInvalidDigest("sha-256=::");
+    }
+
+    private void putWithInvalidDigest(String reprDigest) throws Exception {
+
+        mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue(path));
+
+                oneOf(mockReq).getHeader("User-Agent");
+                will(returnValue("Goliath agent"));
+
+                StoredObject parentSo = StoreObjectTestUtil.initStoredObject(true, null);
+
+                oneOf(mockStore).getStoredObject(mockTransaction, parentPath);
+                will(returnValue(parentSo));
+
+                StoredObject fileSo = null;
+
+                oneOf(mockStore).getStoredObject(mockTransaction, path);
+                will(returnValue(fileSo));
+
+                oneOf(mockStore).createResource(mockTransaction, path);
+
+                oneOf(mockRes).setStatus(HttpServletResponse.SC_CREATED);
+
+                oneOf(mockReq).getContentLengthLong();
+                will(returnValue(8L));
+
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockStore).checkStorage(mockTransaction, path, 8L);
+
+                oneOf(mockReq).getHeader("Repr-Digest");
+                will(returnValue(reprDigest));
+
+                oneOf(mockReq).getHeader("Content-Encoding");
+                will(returnValue(null));
+
+                oneOf(mockReq).getHeader("Content-Digest");
+                will(returnValue(null));
+
+                // the content is transferred instead of linked
+
+                oneOf(mockReq).getInputStream();
+                will(returnValue(dsis));
+
+                oneOf(mockStore).setResourceContent(mockTransaction, path, dsis, null, null, 8L);
+                will(returnValue(8L));
+
+                fileSo = StoreObjectTestUtil.initStoredObject(false, RESOURCE_CONTENT);
+
+                oneOf(mockStore).getStoredObject(mockTransaction, path);
+                will(returnValue(fileSo));
+            }
+        });
+
+        DoPut doPut = new DoPut(mockStore, new ResourceLocks(), false, lazyFolderCreationOnPut);
+        doPut.setDigestLinking(true);
+        doPut.execute(mockTransaction, mockReq, mockRes);
+
+        mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testDoPutIfUploadIsTooLarge() throws Exception {
+
+        mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue(path));
+
+                oneOf(mockReq).getHeader("User-Agent");
+                will(returnValue("Goliath agent"));
+
+                oneOf(mockReq).getContentLengthLong();
+                will(returnValue(8L));
+
+                oneOf(mockRes).sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            }
+        });
+
+        DoPut doPut = new DoPut(mockStore, new ResourceLocks(), false, lazyFolderCreationOnPut);
+        doPut.setMaxUploadSize(4L);
+        doPut.execute(mockTransaction, mockReq, mockRes);
+
+        mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testDoPutIfMatchFails() throws Exception {
+
+        mockery.checking(new Expectations() {
+            {
+                oneOf(mockReq).getAttribute("javax.servlet.include.request_uri");
+                will(returnValue(null));
+
+                oneOf(mockReq).getPathInfo();
+                will(returnValue(path));
+
+                oneOf(mockReq).getHeader("User-Agent");
+                will(returnValue("Goliath agent"));
+
+                oneOf(mockReq).getContentLengthLong();
+                will(returnValue(8L));
+
+                StoredObject parentSo = StoreObjectTestUtil.initStoredObject(true, null);
+
+                oneOf(mockStore).getStoredObject(mockTransaction, parentPath);
+                will(returnValue(parentSo));
+
+                StoredObject fileSo = StoreObjectTestUtil.initStoredObject(false, RESOURCE_CONTENT);
+
+                oneOf(mockStore).getStoredObject(mockTransaction, path);
+                will(returnValue(fileSo));
+
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue("\"outdated\""));
+
+                oneOf(mockRes).sendError(HttpServletResponse.SC_PRECONDITION_FAILED);
+            }
+        });
+
+        DoPut doPut = new DoPut(mockStore, new ResourceLocks(), false, lazyFolderCreationOnPut);
+        doPut.execute(mockTransaction, mockReq, mockRes);
+
+        mockery.assertIsSatisfied();
+    }
+
     @Test
     public void testDoPutIfLazyFolderCreationOnPutIsFalse() throws Exception {
 
@@ -154,6 +366,9 @@ public class DoPutTest {
 
                 StoredObject parentSo = null;
 
+                oneOf(mockReq).getContentLengthLong();
+                will(returnValue(8L));
+
                 oneOf(mockStore).getStoredObject(mockTransaction, parentPath);
                 will(returnValue(parentSo));
 
@@ -201,7 +416,15 @@ public class DoPutTest {
                 oneOf(mockReq).getInputStream();
                 will(returnValue(dsis));
 
-                oneOf(mockStore).setResourceContent(mockTransaction, path, dsis, null, null);
+                oneOf(mockReq).getContentLengthLong();
+                will(returnValue(8L));
+
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockStore).checkStorage(mockTransaction, path, 8L);
+
+                oneOf(mockStore).setResourceContent(mockTransaction, path, dsis, null, null, 8L);
                 will(returnValue(8L));
 
                 fileSo = StoreObjectTestUtil.initStoredObject(false, RESOURCE_CONTENT);
@@ -236,6 +459,9 @@ public class DoPutTest {
                     RESOURCE_CONTENT
                 );
 
+                oneOf(mockReq).getContentLengthLong();
+                will(returnValue(8L));
+
                 oneOf(mockStore).getStoredObject(mockTransaction, parentPath);
                 will(returnValue(parentSo));
 
@@ -428,7 +654,15 @@ public class DoPutTest {
                 oneOf(mockReq).getInputStream();
                 will(returnValue(dsis));
 
-                oneOf(mockStore).setResourceContent(mockTransaction, path, dsis, null, null);
+                oneOf(mockReq).getContentLengthLong();
+                will(returnValue(8L));
+
+                oneOf(mockReq).getHeader("If-Match");
+                will(returnValue(null));
+
+                oneOf(mockStore).checkStorage(mockTransaction, path, 8L);
+
+                oneOf(mockStore).setResourceContent(mockTransaction, path, dsis, null, null, 8L);
                 will(returnValue(8L));
 
                 StoredObject newResourceSo = StoreObjectTestUtil.initStoredObject(false,
@@ -0,0 +1,335 @@
+package org.drjekyll.webdav.prop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletResponse;
+import org.drjekyll.webdav.Transaction;
+import org.drjekyll.webdav.WebdavStatus;
+import org.drjekyll.webdav.locking.ResourceLocks;
+import org.drjekyll.webdav.methods.ChangeJournal;
+import org.drjekyll.webdav.prop.Multistatus.Response;
+import org.drjekyll.webdav.store.LocalFileSystemStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.w3c.dom.Element;
+
+class DoPropfindStoreTest {
+
+    private static final String OK = "HTTP/1.1 200 OK";
+
+    private static final String NOT_FOUND = "HTTP/1.1 404 Not Found";
+
+    @TempDir
+    File root;
+
+    private LocalFileSystemStore store;
+
+    private Transaction transaction;
+
+    private DoPropfind doPropfind;
+
+    @BeforeEach
+    void setUp() {
+        store = new LocalFileSystemStore(root);
+        transaction = store.begin(null);
+        doPropfind = new DoPropfind(store, new ResourceLocks(), (transaction1, path) -> null);
+    }
+
+    @Test
+    void doPropFindWithMinimalNoRootPreference() throws Exception {
+
+        store.createFolder(transaction, "/folder");
+        store.createResource(transaction, "/folder/file1");
+        MockHttpServletRequest req = request("/folder", "1");
+        req.addHeader("Prefer", "return=minimal");
+        req.addHeader("Prefer", "depth-noroot");
+        setContent(req, "<D:propfind xmlns:D=\"DAV:\" xmlns:Z=\"urn:example\"><D:prop>"
+            + "<D:getcontentlength/><Z:win32attributes/></D:prop></D:propfind>");
+
+        MockHttpServletResponse resp = execute(req);
+
+        assertThat(resp.getHeader("Preference-Applied")).isEqualTo("return=minimal, depth-noroot");
+        assertThat(resp.getHeader("Vary")).isEqualTo("Prefer");
+        Multistatus multistatus = parse(resp);
+        assertThat(multistatus.getHrefs()).containsExactly("/folder/file1");
+        Response file = multistatus.getResponse("/folder/file1");
+        assertThat(file.getPropertyNames(OK)).containsExactly("DAV::getcontentlength");
+        assertThat(file.getPropertyNames(NOT_FOUND)).isEmpty();
+    }
+
+    @Test
+    void doPropFindWithCollectionTags() throws Exception {
+
+        store.createFolder(transaction, "/folder");
+        ChangeJournal changeJournal = new ChangeJournal(0);
+        changeJournal.record(transaction, "/folder/file1", false);
+        changeJournal.commit(transaction);
+        doPropfind.setChangeJournal(changeJournal);
+
+        Response folder = parse(execute(request("/folder", "0"))).getResponse("/folder/");
+
+        assertThat(folder.getPropertyText("http://calendarserver.org/ns/:getctag"))
+            .isEqualTo(changeJournal.getCollectionTag("/folder"));
+        assertThat(folder.getPropertyText("DAV::getetag"))
+            .isEqualTo(changeJournal.getCollectionETag("/folder"));
+
+        MockHttpServletRequest req = request("/folder", "0");
+        req.addHeader("If-None-Match", changeJournal.getCollectionETag("/folder"));
+
+        assertThat(execute(req).getStatus()).isEqualTo(HttpServletResponse.SC_PRECONDITION_FAILED);
+    }
+
+    @Test
+    void doPropFindFromCache() throws Exception {
+
+        store.createFolder(transaction, "/folder");
+        store.createResource(transaction, "/folder/file1");
+        ChangeJournal changeJournal = new ChangeJournal(0);
+        PropfindCache cache = new PropfindCache(changeJournal, 1024 * 1024);
+        doPropfind.setCache(cache);
+
+        String listed = execute(request("/folder", "1")).getContentAsString();
+        assertThat(execute(request("/folder", "1")).getContentAsString()).isEqualTo(listed);
+        assertThat(cache.getHits()).isEqualTo(1L);
+
+        store.createResource(transaction, "/folder/file2");
+        changeJournal.record(transaction, "/folder/file2", false);
+        changeJournal.commit(transaction);
+
+        assertThat(parse(execute(request("/folder", "1"))).getHrefs())
+            .containsExactlyInAnyOrder("/folder/", "/folder/file1", "/folder/file2");
+        assertThat(cache.getHits()).isEqualTo(1L);
+        assertThat(cache.getMisses()).isEqualTo(2L);
+    }
+
+    @Test
+    void doPropFindStreamsBodiesTooLargeToCache() throws Exception {
+
+        store.createFolder(transaction, "/folder");
+        for (int i = 0; i < 300; i++) {
+            store.createResource(transaction, "/folder/file" + i);
+        }
+        PropfindCache cache = new PropfindCache(new ChangeJournal(0), 8 * 1024);
+        doPropfind.setCache(cache);
+
+        MockHttpServletResponse resp = execute(request("/folder", "1"));
+
+        assertThat(resp.isCommitted()).isTrue();
+        assertThat(parse(resp).getHrefs()).hasSize(301);
+        assertThat(execute(request("/folder", "1")).getContentAsString())
+            .isEqualTo(resp.getContentAsString());
+        assertThat(cache.getHits()).isZero();
+    }
+
+    @Test
+    void doPropFindWritesSupportedLocksAndPropertyNames() throws Exception {
+
+        store.createFolder(transaction, "/folder");
+        store.createResource(transaction, "/folder/file1");
+
+        Response file = parse(execute(request("/folder/file1", "0"))).getResponse("/folder/file1");
+
+        List<String> lockScopes = new ArrayList<>();
+        for (Element lockEntry : Multistatus.getChildren(file.getProperty("DAV::supportedlock"),
+            "DAV::lockentry"
+        )) {
+            lockScopes.add(getChild(getChild(lockEntry, "DAV::lockscope"), null).getLocalName());
+            assertThat(getChild(lockEntry, "DAV::locktype").getFirstChild().getLocalName())
+                .isEqualTo("write");
+        }
+        assertThat(lockScopes).containsExactly("exclusive", "shared");
+
+        MockHttpServletRequest req = request("/folder/file1", "0");
+        setContent(req, "<D:propfind xmlns:D=\"DAV:\"><D:propname/></D:propfind>");
+        file = parse(execute(req)).getResponse("/folder/file1");
+
+        assertThat(file.getPropertyNames(OK)).containsExactly("DAV::creationdate",
+            "DAV::displayname",
+            "DAV::getcontentlanguage",
+            "DAV::getcontentlength",
+            "DAV::getcontenttype",
+            "DAV::getetag",
+            "DAV::getlastmodified",
+            "DAV::resourcetype",
+            "DAV::supportedlock",
+            "DAV::source"
+        );
+    }
+
+    @Test
+    void doPropFindWithCustomLiveProperty() throws Exception {
+
+        store.createFolder(transaction, "/folder");
+        store.createResource(transaction, "/folder/file1");
+        doPropfind.addLiveProperty("http://example.com/ns/:quota", (resource, generatedXML) -> {
+            if (!resource.getStoredObject().isFolder()) {
+                return false;
+            }
+            generatedXML.writeProperty("http://example.com/ns/:quota", "42");
+            return true;
+        });
+        MockHttpServletRequest req = request("/folder", "1");
+        setContent(req, "<D:propfind xmlns:D=\"DAV:\" xmlns:E=\"http://example.com/ns/\">"
+            + "<D:prop><E:quota/><D:resourcetype/></D:prop></D:propfind>");
+
+        Multistatus multistatus = parse(execute(req));
+
+        Response folder = multistatus.getResponse("/folder/");
+        assertThat(folder.getPropertyText("http://example.com/ns/:quota")).isEqualTo("42");
+        assertThat(folder.getPropertyStatus("http://example.com/ns/:quota")).isEqualTo(OK);
+        Response file = multistatus.getResponse("/folder/file1");
+        assertThat(file.getPropertyStatus("http://example.com/ns/:quota")).isEqualTo(NOT_FOUND);
+        assertThat(file.getPropertyStatus("DAV::resourcetype")).isEqualTo(OK);
+    }
+
+    @Test
+    void doPropFindInPages() throws Exception {
+
+        store.createFolder(transaction, "/folder");
+        for (String name : new String[]{"e", "b", "d", "a", "c"}) {
+            store.createResource(transaction, "/folder/" + name);
+        }
+        doPropfind.setMaxPageSize(100);
+
+        List<String> listed = new ArrayList<>();
+        String pageToken = "";
+        int pages = 0;
+        do {
+            MockHttpServletRequest req = request("/folder", "1");
+            req.addHeader("Prefer", "page-size=2, page-token=" + pageToken);
+            MockHttpServletResponse resp = execute(req);
+            pages++;
+
+            assertThat(resp.getHeader("Preference-Applied")).isEqualTo("page-size=2");
+            Multistatus multistatus = parse(resp);
+            listed.addAll(multistatus.getHrefs());
+            pageToken = multistatus.getText("http://drjekyll.org/ns/:next-page-token");
+        } while (pageToken != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(listed).containsExactly("/folder/",
+            "/folder/a",
+            "/folder/b",
+            "/folder/c",
+            "/folder/d",
+            "/folder/e"
+        );
+    }
+
+    @Test
+    void doPropFindWithPrefetchingKeepsOrder() throws Exception {
+
+        for (int i = 0; i < 5; i++) {
+            store.createFolder(transaction, "/folder" + i);
+            for (int j = 0; j < 40; j++) {
+                store.createResource(transaction, "/folder" + i + "/file" + j);
+            }
+            store.createFolder(transaction, "/folder" + i + "/sub");
+            store.createResource(transaction, "/folder" + i + "/sub/file");
+        }
+
+        List<String> sequential = parse(execute(request("/", "infinity"))).getHrefs();
+        ExecutorService prefetchExecutor = Executors.newFixedThreadPool(4);
+        try {
+            doPropfind.setPrefetchExecutor(prefetchExecutor);
+            List<String> prefetched = parse(execute(request("/", "infinity"))).getHrefs();
+
+            assertThat(prefetched)
+                .hasSize(5 * 43 + 1)
+                .isEqualTo(sequential)
+                .contains("/folder4/sub/file");
+        } finally {
+            prefetchExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    void doPropFindWithPolicy() throws Exception {
+
+        store.createFolder(transaction, "/folder");
+        for (int i = 0; i < 10; i++) {
+            store.createResource(transaction, "/folder/file" + i);
+        }
+        doPropfind.setPolicy(PropfindPolicy.parse("/ * reject 0, /folder * allow 5"));
+
+        MockHttpServletResponse resp = execute(request("/", "infinity"));
+
+        assertThat(resp.getStatus()).isEqualTo(HttpServletResponse.SC_FORBIDDEN);
+        Multistatus error = Multistatus.parse(resp);
+        assertThat(error.getName()).isEqualTo("DAV::error");
+        assertThat(error.contains("DAV::propfind-finite-depth")).isTrue();
+
+        List<Response> responses = parse(execute(request("/folder", "infinity"))).getResponses();
+
+        assertThat(responses).hasSize(6);
+        Response limitReached = responses.get(responses.size() - 1);
+        assertThat(limitReached.getStatus()).isEqualTo("HTTP/1.1 507 Insufficient Storage");
+        assertThat(limitReached.hasError("DAV::number-of-matches-within-limits")).isTrue();
+    }
+
+    @Test
+    void doPropFindWithDowngradedDepth() throws Exception {
+
+        store.createFolder(transaction, "/folder");
+        store.createFolder(transaction, "/folder/sub");
+        store.createResource(transaction, "/folder/sub/file");
+        doPropfind.setPolicy(PropfindPolicy.parse("/ * downgrade 0"));
+        doPropfind.addLiveProperty("http://example.com/ns/:depth", (resource, generatedXML) -> {
+            generatedXML.writeProperty("http://example.com/ns/:depth",
+                String.valueOf(resource.getDepth())
+            );
+            return true;
+        });
+        MockHttpServletRequest req = request("/folder", "infinity");
+        setContent(req, "<D:propfind xmlns:D=\"DAV:\" xmlns:E=\"http://example.com/ns/\">"
+            + "<D:prop><E:depth/></D:prop></D:propfind>");
+
+        Multistatus multistatus = parse(execute(req));
+
+        assertThat(multistatus.getHrefs()).containsExactly("/folder/", "/folder/sub/");
+        assertThat(multistatus
+            .getResponse("/folder/sub/")
+            .getPropertyText("http://example.com/ns/:depth")).isEqualTo("1");
+        assertThat(parse(execute(request("/folder", "0"))).getHrefs()).containsExactly("/folder/");
+    }
+
+    private static MockHttpServletRequest request(String path, String depth) {
+        MockHttpServletRequest req = new MockHttpServletRequest("PROPFIND", path);
+        req.setPathInfo(path);
+        req.addHeader("Depth", depth);
+        return req;
+    }
+
+    private static void setContent(MockHttpServletRequest req, String propfind) {
+        req.setContent(("<?xml version=\"1.0\" encoding=\"utf-8\" ?>" + propfind).getBytes(
+            StandardCharsets.UTF_8));
+    }
+
+    private MockHttpServletResponse execute(MockHttpServletRequest req) throws Exception {
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+        doPropfind.execute(transaction, req, resp);
+        return resp;
+    }
+
+    private static Element getChild(Element parent, @Nullable String name) {
+        List<Element> children = Multistatus.getChildren(parent, name);
+        assertThat(children).hasSize(1);
+        return children.get(0);
+    }
+
+    private static Multistatus parse(MockHttpServletResponse resp) throws Exception {
+        assertThat(resp.getStatus()).isEqualTo(WebdavStatus.SC_MULTI_STATUS);
+        return Multistatus.parse(resp);
+    }
+
+}
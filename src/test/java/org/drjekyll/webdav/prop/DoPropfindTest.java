@@ -78,6 +78,9 @@ public class DoPropfindTest {
                 will(returnValue(0));
                 // no content, which means it is a allprop request
 
+                allowing(mockReq).getHeaders("Prefer");
+                will(returnValue(null));
+
                 oneOf(mockRes).setStatus(WebdavStatus.SC_MULTI_STATUS);
 
                 oneOf(mockRes).setContentType("text/xml; charset=UTF-8");
@@ -85,9 +88,6 @@ public class DoPropfindTest {
                 oneOf(mockRes).getWriter();
                 will(returnValue(null));
 
-                oneOf(mockMimeTyper).getMimeType(with(any(Transaction.class)), with(equal(path)));
-                will(returnValue("text/xml; charset=UTF-8"));
-
                 oneOf(mockStore).getStoredObject(mockTransaction, path);
                 will(returnValue(rootSo));
 
@@ -107,6 +107,9 @@ public class DoPropfindTest {
                 oneOf(mockStore).getStoredObject(mockTransaction, path + "file1");
                 will(returnValue(file1So));
 
+                oneOf(mockMimeTyper).getMimeType(mockTransaction, path + "file1", file1So);
+                will(returnValue("text/plain"));
+
                 oneOf(mockReq).getContextPath();
                 will(returnValue(""));
 
@@ -123,6 +126,9 @@ public class DoPropfindTest {
                 oneOf(mockStore).getStoredObject(mockTransaction, path + "file2");
                 will(returnValue(file2So));
 
+                oneOf(mockMimeTyper).getMimeType(mockTransaction, path + "file2", file2So);
+                will(returnValue("text/plain"));
+
                 oneOf(mockReq).getContextPath();
                 will(returnValue(""));
 
@@ -170,6 +176,9 @@ public class DoPropfindTest {
                 will(returnValue(0));
                 // no content, which means it is a allprop request
 
+                allowing(mockReq).getHeaders("Prefer");
+                will(returnValue(null));
+
                 oneOf(mockRes).setStatus(WebdavStatus.SC_MULTI_STATUS);
 
                 oneOf(mockRes).setContentType("text/xml; charset=UTF-8");
@@ -177,9 +186,6 @@ public class DoPropfindTest {
                 oneOf(mockRes).getWriter();
                 will(returnValue(null));
 
-                oneOf(mockMimeTyper).getMimeType(with(any(Transaction.class)), with(equal(path)));
-                will(returnValue("text/xml; charset=UTF-8"));
-
                 oneOf(mockStore).getStoredObject(mockTransaction, path);
                 will(returnValue(fileSo));
 
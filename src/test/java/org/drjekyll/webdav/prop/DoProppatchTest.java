@@ -1,13 +1,20 @@
 package org.drjekyll.webdav.prop;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.drjekyll.webdav.StoreObjectTestUtil;
 import org.drjekyll.webdav.Transaction;
 import org.drjekyll.webdav.WebdavStatus;
 import org.drjekyll.webdav.locking.ResourceLocks;
+import org.drjekyll.webdav.methods.ChangeJournal;
+import org.drjekyll.webdav.store.LocalFileSystemStore;
+import org.drjekyll.webdav.store.LocalPropertyStore;
 import org.drjekyll.webdav.store.StoredObject;
 import org.drjekyll.webdav.store.WebdavStore;
 import org.jmock.Expectations;
@@ -15,7 +22,10 @@ import org.jmock.Mockery;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.mock.web.DelegatingServletInputStream;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 
 public class DoProppatchTest {
 
@@ -196,4 +206,107 @@ public class DoProppatchTest {
         mockery.assertIsSatisfied();
     }
 
+    @Test
+    public void doProppatchStoresDeadProperties(@TempDir File root) throws Exception {
+
+        LocalFileSystemStore store = new LocalFileSystemStore(new File(root, "content"));
+        Transaction transaction = store.begin(null);
+        store.createFolder(transaction, "/folder");
+        store.createResource(transaction, "/folder/file1");
+        LocalPropertyStore propertyStore = new LocalPropertyStore(new File(root, "props"), 10);
+        DoProppatch doProppatch = new DoProppatch(store, new ResourceLocks(), false);
+        doProppatch.setPropertyStore(propertyStore);
+        DoPropfind doPropfind =
+            new DoPropfind(store, new ResourceLocks(), (transaction1, path) -> null);
+        doPropfind.setPropertyStore(propertyStore);
+
+        MockHttpServletResponse resp = proppatch(doProppatch, transaction, "/folder/file1",
+            "<D:set><D:prop>"
+            + "<E:color>red</E:color><E:tags><E:tag>a &amp; b</E:tag></E:tags>"
+            + "</D:prop></D:set>");
+
+        assertThat(resp.getStatus()).isEqualTo(WebdavStatus.SC_MULTI_STATUS);
+        assertThat(resp.getContentAsString()).contains("HTTP/1.1 200 OK");
+
+        MockHttpServletRequest req = new MockHttpServletRequest("PROPFIND", "/folder");
+        req.setPathInfo("/folder");
+        req.addHeader("Depth", "1");
+        resp = new MockHttpServletResponse();
+        doPropfind.execute(transaction, req, resp);
+
+        String multistatus = resp.getContentAsString();
+        assertThat(multistatus.substring(multistatus.indexOf("/folder/file1"))).contains(
+            "<color xmlns=\"http://example.com/ns/\">red</color>",
+            "a &amp; b"
+        );
+
+        resp = proppatch(doProppatch,
+            transaction,
+            "/folder/file1",
+            "<D:remove><D:prop><E:color/></D:prop></D:remove>"
+                + "<D:set><D:prop><D:getetag>x</D:getetag></D:prop></D:set>"
+        );
+
+        assertThat(resp.getContentAsString()).contains("403 Forbidden", "424 Failed Dependency");
+        assertThat(propertyStore.getProperties(transaction, "/folder/file1")).containsEntry(
+            "http://example.com/ns/:color",
+            "red"
+        );
+    }
+
+    @Test
+    public void doProppatchOnCollectionChangesCachedListing(@TempDir File root) throws Exception {
+
+        LocalFileSystemStore store = new LocalFileSystemStore(new File(root, "content"));
+        Transaction transaction = store.begin(null);
+        store.createFolder(transaction, "/folder");
+        LocalPropertyStore propertyStore = new LocalPropertyStore(new File(root, "props"), 10);
+        ChangeJournal changeJournal = new ChangeJournal(0);
+        PropfindCache cache = new PropfindCache(changeJournal, 1024 * 1024);
+        DoProppatch doProppatch = new DoProppatch(store, new ResourceLocks(), false);
+        doProppatch.setPropertyStore(propertyStore);
+        doProppatch.setChangeJournal(changeJournal);
+        DoPropfind doPropfind =
+            new DoPropfind(store, new ResourceLocks(), (transaction1, path) -> null);
+        doPropfind.setPropertyStore(propertyStore);
+        doPropfind.setCache(cache);
+
+        assertThat(propfindFolder(doPropfind, transaction)).doesNotContain("color");
+
+        proppatch(doProppatch, transaction, "/folder",
+            "<D:set><D:prop><E:color>red</E:color></D:prop></D:set>"
+        );
+        changeJournal.commit(transaction);
+
+        assertThat(propfindFolder(doPropfind, transaction)).contains(
+            "<color xmlns=\"http://example.com/ns/\">red</color>"
+        );
+        assertThat(cache.getHits()).isZero();
+        assertThat(cache.getMisses()).isEqualTo(2L);
+    }
+
+    private static String propfindFolder(DoPropfind doPropfind, Transaction transaction)
+        throws Exception {
+        MockHttpServletRequest req = new MockHttpServletRequest("PROPFIND", "/folder");
+        req.setPathInfo("/folder");
+        req.addHeader("Depth", "0");
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+        doPropfind.execute(transaction, req, resp);
+        return resp.getContentAsString();
+    }
+
+    private static MockHttpServletResponse proppatch(
+        DoProppatch doProppatch, Transaction transaction, String path, String instructions
+    ) throws Exception {
+        MockHttpServletRequest req = new MockHttpServletRequest("PROPPATCH", path);
+        req.setPathInfo(path);
+        req.setContent(("<?xml version=\"1.0\" encoding=\"utf-8\" ?>"
+            + "<D:propertyupdate xmlns:D=\"DAV:\" xmlns:E=\"http://example.com/ns/\">"
+            + instructions
+            + "</D:propertyupdate>").getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+        doProppatch.execute(transaction, req, resp);
+        return resp;
+    }
+
 }
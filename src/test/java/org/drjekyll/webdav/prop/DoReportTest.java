@@ -0,0 +1,139 @@
+package org.drjekyll.webdav.prop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletResponse;
+import org.drjekyll.webdav.Transaction;
+import org.drjekyll.webdav.WebdavStatus;
+import org.drjekyll.webdav.locking.ResourceLocks;
+import org.drjekyll.webdav.methods.ChangeJournal;
+import org.drjekyll.webdav.store.LocalFileSystemStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class DoReportTest {
+
+    private static final Pattern SYNC_TOKEN = Pattern.compile("<D:sync-token>([^<]*)<");
+
+    @TempDir
+    File root;
+
+    private LocalFileSystemStore store;
+
+    private Transaction transaction;
+
+    private ChangeJournal changeJournal;
+
+    private DoReport doReport;
+
+    @BeforeEach
+    void setUp() {
+        store = new LocalFileSystemStore(root);
+        transaction = store.begin(null);
+        changeJournal = new ChangeJournal(100);
+        doReport = new DoReport(store,
+            new DoPropfind(store, new ResourceLocks(), (transaction1, path) -> "text/plain"),
+            changeJournal
+        );
+        store.createFolder(transaction, "/calendar");
+        store.createResource(transaction, "/calendar/a.ics");
+        store.createResource(transaction, "/calendar/b.ics");
+    }
+
+    @Test
+    void reportsOnlyChangesSinceToken() throws Exception {
+
+        MockHttpServletResponse initial = report("");
+        assertThat(initial.getStatus()).isEqualTo(WebdavStatus.SC_MULTI_STATUS);
+        assertThat(initial.getContentAsString()).contains("/calendar/a.ics", "/calendar/b.ics");
+
+        store.createResource(transaction, "/calendar/c.ics");
+        changeJournal.record(transaction, "/calendar/c.ics", false);
+        store.removeObject(transaction, "/calendar/a.ics");
+        changeJournal.record(transaction, "/calendar/a.ics", true);
+        changeJournal.record(transaction, "/other/d.ics", false);
+        changeJournal.commit(transaction);
+
+        String incremental = report(getToken(initial)).getContentAsString();
+
+        assertThat(incremental).contains("/calendar/c.ics", "/calendar/a.ics", "404");
+        assertThat(incremental).doesNotContain("/calendar/b.ics", "/other/d.ics");
+        assertThat(getToken(report(getToken(initial)))).isNotEqualTo(getToken(initial));
+    }
+
+    @Test
+    void rejectsUnknownToken() throws Exception {
+
+        MockHttpServletResponse resp = report("http://drjekyll.org/ns/sync/0-0");
+
+        assertThat(resp.getStatus()).isEqualTo(HttpServletResponse.SC_FORBIDDEN);
+        assertThat(resp.getContentAsString()).contains("valid-sync-token");
+    }
+
+    @Test
+    void ignoresChangesOfRolledBackTransactions() throws Exception {
+
+        String token = getToken(report(""));
+        changeJournal.record(transaction, "/calendar/b.ics", false);
+        changeJournal.rollback(transaction);
+
+        assertThat(report(token).getContentAsString()).doesNotContain("/calendar/b.ics");
+    }
+
+    @Test
+    void appliesPropfindPolicyToInitialSync() throws Exception {
+
+        store.createFolder(transaction, "/calendar/archive");
+        store.createResource(transaction, "/calendar/archive/c.ics");
+
+        doReport.setPolicy(PropfindPolicy.parse("/ * reject 0"));
+        MockHttpServletResponse rejected = report("", "infinite");
+
+        assertThat(rejected.getStatus()).isEqualTo(HttpServletResponse.SC_FORBIDDEN);
+        assertThat(rejected.getContentAsString()).contains("sync-traversal-supported");
+
+        doReport.setPolicy(PropfindPolicy.parse("/ * downgrade 0"));
+        String downgraded = report("", "infinite").getContentAsString();
+
+        assertThat(downgraded).contains("/calendar/archive");
+        assertThat(downgraded).doesNotContain("/calendar/archive/c.ics");
+
+        doReport.setPolicy(PropfindPolicy.parse("/ * allow 2"));
+        MockHttpServletResponse limited = report("", "infinite");
+
+        assertThat(limited.getStatus()).isEqualTo(HttpServletResponse.SC_FORBIDDEN);
+        assertThat(limited.getContentAsString()).contains("number-of-matches-within-limits");
+    }
+
+    private MockHttpServletResponse report(String token) throws Exception {
+        return report(token, "1");
+    }
+
+    private MockHttpServletResponse report(String token, String level) throws Exception {
+        MockHttpServletRequest req = new MockHttpServletRequest("REPORT", "/calendar");
+        req.setPathInfo("/calendar");
+        req.setContent(("<?xml version=\"1.0\" encoding=\"utf-8\" ?>"
+            + "<D:sync-collection xmlns:D=\"DAV:\">"
+            + "<D:sync-token>" + token + "</D:sync-token>"
+            + "<D:sync-level>" + level + "</D:sync-level>"
+            + "<D:prop><D:getetag/></D:prop>"
+            + "</D:sync-collection>").getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+        doReport.execute(transaction, req, resp);
+        return resp;
+    }
+
+    private static String getToken(MockHttpServletResponse resp) throws Exception {
+        Matcher matcher = SYNC_TOKEN.matcher(resp.getContentAsString());
+        assertThat(matcher.find()).isTrue();
+        return matcher.group(1);
+    }
+
+}
@@ -0,0 +1,201 @@
+package org.drjekyll.webdav.prop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * A parsed multistatus (or error) body, so that tests assert on its elements instead of its
+ * serialization. Elements are named by namespace and local name, e.g. {@code DAV::getetag}.
+ */
+final class Multistatus {
+
+    private static final String DAV = "DAV:";
+
+    private final Element root;
+
+    private Multistatus(Element root) {
+        this.root = root;
+    }
+
+    static Multistatus parse(MockHttpServletResponse resp) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return new Multistatus(factory
+            .newDocumentBuilder()
+            .parse(new InputSource(new StringReader(resp.getContentAsString())))
+            .getDocumentElement());
+    }
+
+    String getName() {
+        return getName(root);
+    }
+
+    List<Response> getResponses() {
+        List<Response> responses = new ArrayList<>();
+        for (Element response : getChildren(root, "DAV::response")) {
+            responses.add(new Response(response));
+        }
+        return responses;
+    }
+
+    List<String> getHrefs() {
+        List<String> hrefs = new ArrayList<>();
+        for (Response response : getResponses()) {
+            hrefs.add(response.getHref());
+        }
+        return hrefs;
+    }
+
+    Response getResponse(String href) {
+        for (Response response : getResponses()) {
+            if (response.getHref().equals(href)) {
+                return response;
+            }
+        }
+        assertThat(getHrefs()).contains(href);
+        throw new IllegalStateException(href);
+    }
+
+    /**
+     * @return the text of the first element with the name anywhere in the body, {@code null} if
+     * there is none
+     */
+    @Nullable
+    String getText(String name) {
+        Element element = find(root, name);
+        return element == null ? null : element.getTextContent();
+    }
+
+    boolean contains(String name) {
+        return find(root, name) != null;
+    }
+
+    static final class Response {
+
+        private final Element element;
+
+        private Response(Element element) {
+            this.element = element;
+        }
+
+        String getHref() {
+            return getChildren(element, "DAV::href").get(0).getTextContent();
+        }
+
+        /**
+         * @return the status of the whole response, {@code null} if it has propstats instead
+         */
+        @Nullable
+        String getStatus() {
+            List<Element> status = getChildren(element, "DAV::status");
+            return status.isEmpty() ? null : status.get(0).getTextContent();
+        }
+
+        boolean hasError(String name) {
+            for (Element error : getChildren(element, "DAV::error")) {
+                if (!getChildren(error, name).isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the property element, {@code null} if the response does not list it
+         */
+        @Nullable
+        Element getProperty(String name) {
+            for (Element propstat : getChildren(element, "DAV::propstat")) {
+                for (Element prop : getChildren(propstat, "DAV::prop")) {
+                    List<Element> properties = getChildren(prop, name);
+                    if (!properties.isEmpty()) {
+                        return properties.get(0);
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Nullable
+        String getPropertyText(String name) {
+            Element property = getProperty(name);
+            return property == null ? null : property.getTextContent();
+        }
+
+        /**
+         * @return the status of the propstat listing the property, {@code null} if there is none
+         */
+        @Nullable
+        String getPropertyStatus(String name) {
+            for (Element propstat : getChildren(element, "DAV::propstat")) {
+                for (Element prop : getChildren(propstat, "DAV::prop")) {
+                    if (!getChildren(prop, name).isEmpty()) {
+                        return getChildren(propstat, "DAV::status").get(0).getTextContent();
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the names of the properties listed with the status, in order
+         */
+        List<String> getPropertyNames(String status) {
+            List<String> names = new ArrayList<>();
+            for (Element propstat : getChildren(element, "DAV::propstat")) {
+                if (!getChildren(propstat, "DAV::status").get(0).getTextContent().equals(status)) {
+                    continue;
+                }
+                for (Element prop : getChildren(propstat, "DAV::prop")) {
+                    for (Element property : getChildren(prop, null)) {
+                        names.add(getName(property));
+                    }
+                }
+            }
+            return names;
+        }
+
+    }
+
+    /**
+     * @param name the name of the children, {@code null} for all
+     */
+    static List<Element> getChildren(Element parent, @Nullable String name) {
+        List<Element> children = new ArrayList<>();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && (name == null || name.equals(getName(child)))) {
+                children.add((Element) child);
+            }
+        }
+        return children;
+    }
+
+    @Nullable
+    private static Element find(Element parent, String name) {
+        if (name.equals(getName(parent))) {
+            return parent;
+        }
+        for (Element child : getChildren(parent, null)) {
+            Element found = find(child, name);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private static String getName(Node node) {
+        String namespace = node.getNamespaceURI();
+        return (namespace == null ? DAV : namespace) + ':' + node.getLocalName();
+    }
+
+}
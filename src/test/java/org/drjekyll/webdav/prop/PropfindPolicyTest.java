@@ -0,0 +1,39 @@
+package org.drjekyll.webdav.prop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.security.Principal;
+import org.drjekyll.webdav.exceptions.WebdavException;
+import org.junit.jupiter.api.Test;
+
+class PropfindPolicyTest {
+
+    private final PropfindPolicy policy = PropfindPolicy.parse(
+        "/ * reject 10000; /archive * downgrade 500; / backup allow 0");
+
+    @Test
+    void appliesMostSpecificRule() {
+
+        Principal backup = () -> "backup";
+
+        assertThat(policy.getRule("/docs/", null).getInfinity())
+            .isEqualTo(PropfindPolicy.Infinity.REJECT);
+        assertThat(policy.getRule("/archive/2020", null).getMaxNodes()).isEqualTo(500);
+        assertThat(policy.getRule("/archived", null).getMaxNodes()).isEqualTo(10000);
+        assertThat(policy.getRule("/", backup).getInfinity())
+            .isEqualTo(PropfindPolicy.Infinity.ALLOW);
+        assertThat(policy.getRule("/archive", backup).getInfinity())
+            .isEqualTo(PropfindPolicy.Infinity.DOWNGRADE);
+    }
+
+    @Test
+    void rejectsMalformedRules() {
+
+        assertThatThrownBy(() -> PropfindPolicy.parse("/ * forbid 10"))
+            .isInstanceOf(WebdavException.class);
+        assertThatThrownBy(() -> PropfindPolicy.parse("/ reject 10"))
+            .isInstanceOf(WebdavException.class);
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.drjekyll.webdav.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.drjekyll.webdav.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ChunkingStoreTest {
+
+    @TempDir
+    File root;
+
+    private ChunkingStore store;
+
+    private Transaction transaction;
+
+    @BeforeEach
+    void setUp() {
+        store = new ChunkingStore(root, 1024, Duration.ofHours(1L), Duration.ZERO);
+        transaction = store.begin(null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.destroy();
+    }
+
+    @Test
+    void storesOnlyChangedChunks() throws Exception {
+
+        byte[] content = new byte[256 * 1024];
+        new Random(42L).nextBytes(content);
+        put("/image.bin", content);
+        long chunks = countChunks();
+
+        byte[] updated = new byte[content.length + 3];
+        System.arraycopy(content, 0, updated, 0, 100_000);
+        System.arraycopy(content, 100_000, updated, 100_003, content.length - 100_000);
+        put("/image.bin", updated);
+
+        assertThat(countChunks() - chunks).isBetween(1L, 3L);
+        assertThat(store.getResourceLength(transaction, "/image.bin")).isEqualTo(updated.length);
+        try (InputStream stored = store.getResourceContent(transaction, "/image.bin")) {
+            assertThat(stored).hasBinaryContent(updated);
+        }
+        assertThat(store.getBlobStore().collectGarbage()).isBetween(1, 2);
+    }
+
+    @Test
+    void copiesByReference() throws Exception {
+
+        byte[] content = new byte[8192];
+        new Random(7L).nextBytes(content);
+        put("/a.bin", content);
+        long chunks = countChunks();
+
+        store.createResource(transaction, "/copy.bin");
+        store.setResourceContent(transaction,
+            "/copy.bin",
+            store.getResourceContent(transaction, "/a.bin"),
+            null,
+            null
+        );
+        store.removeObject(transaction, "/a.bin");
+
+        assertThat(countChunks()).isEqualTo(chunks);
+        assertThat(store.getBlobStore().collectGarbage()).isZero();
+        try (InputStream stored = store.getResourceContent(transaction, "/copy.bin")) {
+            assertThat(stored).hasBinaryContent(content);
+        }
+    }
+
+    private void put(String path, byte[] content) {
+        if (store.getStoredObject(transaction, path) == null) {
+            store.createResource(transaction, path);
+        }
+        store.setResourceContent(transaction, path, new ByteArrayInputStream(content), null, null);
+    }
+
+    private long countChunks() throws IOException {
+        try (Stream<Path> files = Files.walk(new File(root, ChunkingStore.CHUNKS_DIR).toPath())) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+}
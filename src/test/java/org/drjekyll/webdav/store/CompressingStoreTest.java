@@ -0,0 +1,181 @@
+package org.drjekyll.webdav.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import org.drjekyll.webdav.Transaction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CompressingStoreTest {
+
+    @TempDir
+    File root;
+
+    private CompressingStore store;
+
+    private Transaction transaction;
+
+    @BeforeEach
+    void setUp() {
+        store = new CompressingStore(root);
+        transaction = store.begin(null);
+    }
+
+    @Test
+    void reportsLogicalLengthOfCompressedContent() throws Exception {
+
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            log.append("{\"level\":\"INFO\",\"message\":\"request ").append(i).append("\"}\n");
+        }
+        byte[] content = log.toString().getBytes(StandardCharsets.UTF_8);
+
+        long length = put("/app.log", content);
+
+        assertThat(length).isEqualTo(content.length);
+        assertThat(store.getResourceLength(transaction, "/app.log")).isEqualTo(content.length);
+        assertThat(store.getStoredObject(transaction, "/app.log").getResourceLength())
+            .isEqualTo(content.length);
+        assertThat(new File(root, "app.log").length()).isLessThan(content.length / 4);
+        try (InputStream stored = store.getResourceContent(transaction, "/app.log")) {
+            assertThat(stored).hasBinaryContent(content);
+        }
+    }
+
+    @Test
+    void skipsWithinCompressedContent() throws Exception {
+
+        byte[] content = new byte[5 * CompressingStore.BLOCK_SIZE + 123];
+        Random random = new Random(3L);
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(4));
+        }
+        put("/data.txt", content);
+
+        try (InputStream stored = store.getResourceContent(transaction, "/data.txt")) {
+            assertThat(stored.skip(100L)).isEqualTo(100L);
+            assertThat(stored.read()).isEqualTo(content[100] & 0xFF);
+            long offset = 3L * CompressingStore.BLOCK_SIZE + 7L;
+            assertThat(stored.skip(offset - 101L)).isEqualTo(offset - 101L);
+            assertThat(stored).hasBinaryContent(Arrays.copyOfRange(content,
+                (int) offset,
+                content.length
+            ));
+        }
+    }
+
+    @Test
+    void storesIncompressibleContentAsItIs() throws Exception {
+
+        byte[] content = new byte[CompressingStore.BLOCK_SIZE + 10];
+        new Random(5L).nextBytes(content);
+
+        put("/random.bin", content);
+
+        assertThat(store.getResourceLength(transaction, "/random.bin")).isEqualTo(content.length);
+        try (InputStream stored = store.getResourceContent(transaction, "/random.bin")) {
+            assertThat(stored).hasBinaryContent(content);
+        }
+    }
+
+    @Test
+    void readsUncompressedContent() throws Exception {
+
+        byte[] content = "stored before".getBytes(StandardCharsets.UTF_8);
+        Files.write(new File(root, "old.txt").toPath(), content);
+
+        assertThat(store.getResourceLength(transaction, "/old.txt")).isEqualTo(content.length);
+        try (InputStream stored = store.getResourceContent(transaction, "/old.txt")) {
+            assertThat(stored).hasBinaryContent(content);
+        }
+    }
+
+    @Test
+    void readsLayoutOnceWithSingleOpen() {
+
+        int[] opens = new int[1];
+        LocalFileSystemStore delegate = new LocalFileSystemStore(root) {
+            @Override
+            public InputStream getResourceContent(Transaction transaction, String resourceUri) {
+                opens[0]++;
+                return super.getResourceContent(transaction, resourceUri);
+            }
+        };
+        store = new CompressingStore(delegate, 16);
+        byte[] content = new byte[3 * CompressingStore.BLOCK_SIZE];
+        put("/zeros", content);
+        store.commit(transaction);
+        transaction = store.begin(null);
+
+        assertThat(store.getStoredObject(transaction, "/zeros").getResourceLength())
+            .isEqualTo(content.length);
+        assertThat(opens[0]).isOne();
+        assertThat(store.getStoredObject(transaction, "/zeros").getResourceLength())
+            .isEqualTo(content.length);
+        assertThat(opens[0]).isOne();
+    }
+
+    @Test
+    void cachesLayoutsOfCommittedContentOnly() {
+
+        int[] opens = new int[1];
+        Properties parameters = new Properties();
+        parameters.setProperty("transactional", "true");
+        LocalFileSystemStore delegate = new LocalFileSystemStore(root, parameters) {
+            @Override
+            public InputStream getResourceContent(Transaction transaction, String resourceUri) {
+                opens[0]++;
+                return super.getResourceContent(transaction, resourceUri);
+            }
+        };
+        store = new CompressingStore(delegate, 16);
+        transaction = store.begin(null);
+        put("/zeros", new byte[3 * CompressingStore.BLOCK_SIZE]);
+        store.commit(transaction);
+        transaction = store.begin(null);
+        byte[] content = new byte[2 * CompressingStore.BLOCK_SIZE];
+        store.setResourceContent(transaction,
+            "/zeros",
+            new ByteArrayInputStream(content),
+            null,
+            null
+        );
+
+        Transaction reader = store.begin(null);
+        assertThat(store.getResourceLength(reader, "/zeros"))
+            .isEqualTo(3 * CompressingStore.BLOCK_SIZE);
+        assertThat(store.getResourceLength(transaction, "/zeros")).isEqualTo(content.length);
+        assertThat(store.getResourceLength(transaction, "/zeros")).isEqualTo(content.length);
+        assertThat(opens[0]).isEqualTo(3);
+        assertThat(store.getResourceLength(reader, "/zeros"))
+            .isEqualTo(3 * CompressingStore.BLOCK_SIZE);
+        assertThat(opens[0]).isEqualTo(3);
+
+        store.commit(transaction);
+
+        assertThat(store.getResourceLength(reader, "/zeros")).isEqualTo(content.length);
+        assertThat(store.getResourceLength(reader, "/zeros")).isEqualTo(content.length);
+        assertThat(opens[0]).isEqualTo(4);
+        store.commit(reader);
+    }
+
+    private long put(String path, byte[] content) {
+        store.createResource(transaction, path);
+        return store.setResourceContent(transaction,
+            path,
+            new ByteArrayInputStream(content),
+            null,
+            null
+        );
+    }
+
+}
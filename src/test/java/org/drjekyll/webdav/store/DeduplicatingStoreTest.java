@@ -0,0 +1,143 @@
+package org.drjekyll.webdav.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import org.drjekyll.webdav.Transaction;
+import org.drjekyll.webdav.exceptions.WebdavException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DeduplicatingStoreTest {
+
+    private static final byte[] CONTENT = "installer".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    File root;
+
+    private DeduplicatingStore store;
+
+    private Transaction transaction;
+
+    @BeforeEach
+    void setUp() {
+        store = new DeduplicatingStore(root, Duration.ofHours(1L), Duration.ZERO);
+        transaction = store.begin(null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.destroy();
+    }
+
+    @Test
+    void sharesBlobsOfIdenticalContent() throws Exception {
+
+        put("/a.bin", CONTENT);
+        put("/b.bin", CONTENT);
+
+        String hash = BlobStore.toHex(BlobStore.newDigest().digest(CONTENT));
+        assertThat(store.getBlobStore().getReferences(hash)).isEqualTo(2);
+        assertThat(store.getResourceLength(transaction, "/b.bin")).isEqualTo(CONTENT.length);
+        try (InputStream content = store.getResourceContent(transaction, "/b.bin")) {
+            assertThat(content).hasBinaryContent(CONTENT);
+        }
+    }
+
+    @Test
+    void copiesByReference() throws Exception {
+
+        put("/a.bin", CONTENT);
+        store.createResource(transaction, "/copy.bin");
+        store.setResourceContent(transaction,
+            "/copy.bin",
+            store.getResourceContent(transaction, "/a.bin"),
+            null,
+            null
+        );
+
+        String hash = BlobStore.toHex(BlobStore.newDigest().digest(CONTENT));
+        assertThat(store.getBlobStore().getReferences(hash)).isEqualTo(2);
+        assertThat(new File(root, DeduplicatingStore.BLOBS_DIR + "/tmp").list()).isEmpty();
+    }
+
+    @Test
+    void collectsUnreferencedBlobs() throws Exception {
+
+        put("/a.bin", CONTENT);
+        put("/a.bin", "updated".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(store.getBlobStore().collectGarbage()).isEqualTo(1);
+
+        store.removeObject(transaction, "/a.bin");
+
+        assertThat(store.getBlobStore().collectGarbage()).isEqualTo(1);
+        assertThat(store.getChildrenNames(transaction, "/")).isEmpty();
+    }
+
+    @Test
+    void linksKnownContentByDigest() throws Exception {
+
+        put("/a.bin", CONTENT);
+        store.createResource(transaction, "/link.bin");
+
+        byte[] digest = BlobStore.newDigest().digest(CONTENT);
+        long length = store.linkResourceContent(transaction, "/link.bin", "sha-256", digest);
+
+        assertThat(length).isEqualTo(CONTENT.length);
+        assertThat(store.getBlobStore().getReferences(BlobStore.toHex(digest))).isEqualTo(2);
+        assertThat(store.linkResourceContent(transaction,
+            "/link.bin",
+            "sha-256",
+            BlobStore.newDigest().digest(new byte[0])
+        )).isEqualTo(-1L);
+        assertThat(store.linkResourceContent(transaction, "/link.bin", "md5", digest))
+            .isEqualTo(-1L);
+    }
+
+    @Test
+    void rejectsDigestOfWrongLength() {
+
+        store.createResource(transaction, "/link.bin");
+
+        assertThatThrownBy(() -> store.linkResourceContent(transaction,
+            "/link.bin",
+            "sha-256",
+            new byte[1]
+        )).isInstanceOf(WebdavException.class);
+        assertThatThrownBy(() -> store.linkResourceContent(transaction,
+            "/link.bin",
+            "sha-256",
+            new byte[0]
+        )).isInstanceOf(WebdavException.class);
+    }
+
+    @Test
+    void rebuildsReferencesOnStart() throws Exception {
+
+        put("/a.bin", CONTENT);
+        store.destroy();
+
+        store = new DeduplicatingStore(root, Duration.ofHours(1L), Duration.ZERO);
+
+        assertThat(store.getBlobStore().collectGarbage()).isZero();
+        try (InputStream content = store.getResourceContent(transaction, "/a.bin")) {
+            assertThat(content).hasBinaryContent(CONTENT);
+        }
+    }
+
+    private void put(String path, byte[] content) {
+        if (store.getStoredObject(transaction, path) == null) {
+            store.createResource(transaction, path);
+        }
+        store.setResourceContent(transaction, path, new ByteArrayInputStream(content), null, null);
+    }
+
+}
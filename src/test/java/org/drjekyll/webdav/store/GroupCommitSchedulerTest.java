@@ -0,0 +1,101 @@
+package org.drjekyll.webdav.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GroupCommitSchedulerTest {
+
+    @TempDir
+    File root;
+
+    private GroupCommitScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new GroupCommitScheduler(Duration.ofMillis(20L));
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.destroy();
+    }
+
+    @Test
+    void completesConcurrentCommitsTogether() throws Exception {
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Path file = Files.write(root.toPath().resolve("file" + i), new byte[]{(byte) i});
+            futures.add(scheduler.sync(Collections.singleton(file)));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5L, TimeUnit.SECONDS);
+
+        assertThat(futures).allMatch(future -> future.isDone() && !future.isCompletedExceptionally());
+    }
+
+    @Test
+    void completesAllCommitsOnDestroy() throws Exception {
+
+        Path file = Files.write(root.toPath().resolve("file"), new byte[]{'x'});
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        Thread committer = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                futures.add(scheduler.sync(Collections.singleton(file)));
+            }
+        });
+        committer.start();
+
+        scheduler.destroy();
+        committer.join();
+
+        assertThat(futures).hasSize(1000);
+        CompletableFuture<?>[] all = futures.toArray(new CompletableFuture[0]);
+        assertThat(CompletableFuture.allOf(all).handle((result, e) -> true).get(5L, TimeUnit.SECONDS))
+            .isTrue();
+        assertThat(scheduler.sync(Collections.singleton(file))).isCompletedExceptionally();
+    }
+
+    @Test
+    void commitsThroughStore() throws Exception {
+
+        LocalFileSystemStore store = new LocalFileSystemStore(root,
+            true,
+            FsyncPolicy.GROUP_COMMIT,
+            Duration.ofMillis(1L)
+        );
+        try {
+            LocalFileSystemTransaction transaction =
+                (LocalFileSystemTransaction) store.begin(null);
+            store.setResourceContent(transaction,
+                "/file.txt",
+                new ByteArrayInputStream(new byte[]{'x'}),
+                null,
+                null
+            );
+            assertThat(transaction.getPendingSyncs()).hasSize(1);
+
+            store.commit(transaction);
+
+            assertThat(transaction.getPendingSyncs()).isEmpty();
+            assertThat(new File(root, "file.txt")).hasContent("x");
+        } finally {
+            store.destroy();
+        }
+    }
+
+}
@@ -0,0 +1,254 @@
+package org.drjekyll.webdav.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import org.drjekyll.webdav.Transaction;
+import org.drjekyll.webdav.exceptions.InsufficientStorageException;
+import org.drjekyll.webdav.exceptions.WebdavException;
+import org.drjekyll.webdav.store.LocalFileSystemTransaction.Change;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LocalFileSystemStoreTest {
+
+    @TempDir
+    File root;
+
+    @Test
+    void replacesContentAtomically() throws Exception {
+
+        LocalFileSystemStore store = new LocalFileSystemStore(root, true, FsyncPolicy.PER_FILE);
+        Transaction transaction = store.begin(null);
+        store.createResource(transaction, "/file.txt");
+
+        long length = store.setResourceContent(transaction,
+            "/file.txt",
+            new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)),
+            null,
+            null
+        );
+        store.commit(transaction);
+
+        assertThat(length).isEqualTo(5L);
+        assertThat(new File(root, "file.txt")).hasContent("hello");
+        assertThat(root.list()).containsExactly("file.txt");
+    }
+
+    @Test
+    void keepsPreviousContentOnFailedUpload() throws Exception {
+
+        LocalFileSystemStore store = new LocalFileSystemStore(root, true, FsyncPolicy.GROUP_COMMIT);
+        Files.write(new File(root, "file.txt").toPath(), "old".getBytes(StandardCharsets.UTF_8));
+        Transaction transaction = store.begin(null);
+
+        InputStream failing = new InputStream() {
+
+            private int count;
+
+            @Override
+            public int read() throws IOException {
+                if (count++ < 2) {
+                    return 'x';
+                }
+                throw new IOException("connection reset");
+            }
+        };
+
+        assertThatThrownBy(() -> store.setResourceContent(transaction,
+            "/file.txt",
+            failing,
+            null,
+            null
+        )).isInstanceOf(WebdavException.class);
+        store.rollback(transaction);
+
+        assertThat(new File(root, "file.txt")).hasContent("old");
+        assertThat(store.getChildrenNames(transaction, "/")).containsExactly("file.txt");
+        assertThat(root.list()).containsExactly("file.txt");
+    }
+
+    @Test
+    void stagesChangesUntilCommit() throws Exception {
+
+        LocalFileSystemStore store = newTransactionalStore();
+        Transaction transaction = store.begin(null);
+        store.createFolder(transaction, "/folder");
+        store.createResource(transaction, "/folder/file.txt");
+        store.setResourceContent(transaction,
+            "/folder/file.txt",
+            new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)),
+            null,
+            null
+        );
+
+        assertThat(store.getChildrenNames(transaction, "/folder")).containsExactly("file.txt");
+        assertThat(store.getResourceLength(transaction, "/folder/file.txt")).isEqualTo(5L);
+        try (InputStream content = store.getResourceContent(transaction, "/folder/file.txt")) {
+            assertThat(content).hasContent("hello");
+        }
+        Transaction other = store.begin(null);
+        assertThat(store.getStoredObject(other, "/folder")).isNull();
+        assertThat(store.getChildrenNames(other, "/")).isEmpty();
+
+        store.commit(transaction);
+
+        assertThat(new File(root, "folder/file.txt")).hasContent("hello");
+        assertThat(store.getChildrenNames(other, "/")).containsExactly("folder");
+        assertThat(new File(root, LocalFileSystemStore.STAGING_DIR).list()).isEmpty();
+    }
+
+    @Test
+    void discardsChangesOnRollback() throws Exception {
+
+        Files.write(new File(root, "file.txt").toPath(), "old".getBytes(StandardCharsets.UTF_8));
+        LocalFileSystemStore store = newTransactionalStore();
+        Transaction transaction = store.begin(null);
+        store.removeObject(transaction, "/file.txt");
+        store.createFolder(transaction, "/file.txt");
+
+        assertThat(store.getStoredObject(transaction, "/file.txt").isFolder()).isTrue();
+
+        store.rollback(transaction);
+
+        assertThat(new File(root, "file.txt")).hasContent("old");
+        assertThat(new File(root, LocalFileSystemStore.STAGING_DIR).list()).isNullOrEmpty();
+    }
+
+    @Test
+    void commitsFoldersWithGroupCommit() {
+
+        LocalFileSystemStore store = new LocalFileSystemStore(root,
+            true,
+            FsyncPolicy.GROUP_COMMIT,
+            Duration.ofMillis(1L),
+            true
+        );
+        try {
+            Transaction transaction = store.begin(null);
+            store.createFolder(transaction, "/folder");
+            store.createResource(transaction, "/folder/file.txt");
+            store.setResourceContent(transaction,
+                "/folder/file.txt",
+                new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)),
+                null,
+                null
+            );
+            store.createFolder(transaction, "/empty");
+
+            store.commit(transaction);
+
+            assertThat(new File(root, "folder/file.txt")).hasContent("hello");
+            assertThat(new File(root, "empty")).isDirectory();
+        } finally {
+            store.destroy();
+        }
+    }
+
+    @Test
+    void completesInterruptedCommitOnStart() throws Exception {
+
+        File stagingDir = new File(new File(root, LocalFileSystemStore.STAGING_DIR), "tx");
+        Files.createDirectories(stagingDir.toPath());
+        Files.write(new File(stagingDir, "1").toPath(), "new".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(root, "obsolete.txt").toPath(), new byte[0]);
+        CommitLog.write(stagingDir, Arrays.asList(
+            new Change(Change.Type.CREATE_FOLDER, "folder", null),
+            new Change(Change.Type.WRITE, "folder/file.txt", "1"),
+            new Change(Change.Type.REMOVE, "obsolete.txt", null)
+        ), false);
+        File uncommitted = new File(new File(root, LocalFileSystemStore.STAGING_DIR), "other");
+        Files.createDirectories(uncommitted.toPath());
+
+        newTransactionalStore();
+
+        assertThat(new File(root, "folder/file.txt")).hasContent("new");
+        assertThat(new File(root, "obsolete.txt")).doesNotExist();
+        assertThat(new File(root, LocalFileSystemStore.STAGING_DIR).list()).isEmpty();
+    }
+
+    @Test
+    void completesFailedCommitOnStartInsteadOfRollingBack() throws Exception {
+
+        LocalFileSystemStore store = newTransactionalStore();
+        Transaction transaction = store.begin(null);
+        store.createResource(transaction, "/a.txt");
+        store.setResourceContent(transaction,
+            "/a.txt",
+            new ByteArrayInputStream("a".getBytes(StandardCharsets.UTF_8)),
+            null,
+            null
+        );
+        store.createResource(transaction, "/b.txt");
+        // a folder that is not empty cannot be replaced by the staged file
+        File obstacle = new File(root, "b.txt");
+        Files.createDirectories(obstacle.toPath());
+        Files.write(new File(obstacle, "x").toPath(), new byte[0]);
+
+        assertThatThrownBy(() -> store.commit(transaction)).isInstanceOf(WebdavException.class);
+        store.rollback(transaction);
+
+        assertThat(new File(root, "a.txt")).hasContent("a");
+        assertThat(new File(root, LocalFileSystemStore.STAGING_DIR).list()).hasSize(1);
+
+        Files.delete(new File(obstacle, "x").toPath());
+        newTransactionalStore();
+
+        assertThat(new File(root, "b.txt")).isFile();
+        assertThat(new File(root, LocalFileSystemStore.STAGING_DIR).list()).isEmpty();
+    }
+
+    @Test
+    void preallocatesAndTruncatesToWrittenLength() {
+
+        LocalFileSystemStore store = new LocalFileSystemStore(root);
+        store.setPreallocationThreshold(0L);
+        Transaction transaction = store.begin(null);
+
+        long length = store.setResourceContent(transaction,
+            "/file.txt",
+            new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)),
+            null,
+            null,
+            4096L
+        );
+
+        assertThat(length).isEqualTo(5L);
+        assertThat(new File(root, "file.txt")).hasContent("hello");
+    }
+
+    @Test
+    void rejectsContentExceedingFreeSpace() {
+
+        LocalFileSystemStore store = new LocalFileSystemStore(root);
+        store.setMinFreeSpace(Long.MAX_VALUE / 2);
+        Transaction transaction = store.begin(null);
+
+        assertThatThrownBy(() -> store.setResourceContent(transaction,
+            "/file.txt",
+            new ByteArrayInputStream(new byte[0]),
+            null,
+            null,
+            1L
+        )).isInstanceOf(InsufficientStorageException.class);
+        assertThat(new File(root, "file.txt")).doesNotExist();
+    }
+
+    private LocalFileSystemStore newTransactionalStore() {
+        return new LocalFileSystemStore(root,
+            false,
+            FsyncPolicy.NONE,
+            Duration.ofMillis(1L),
+            true
+        );
+    }
+
+}
@@ -0,0 +1,90 @@
+package org.drjekyll.webdav.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Collections;
+import org.drjekyll.webdav.Transaction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LocalPropertyStoreTest {
+
+    private static final String COLOR = "http://example.com/ns/:color";
+
+    private final Transaction transaction = () -> null;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void keepsPropertiesAcrossInstances() {
+
+        LocalPropertyStore store = new LocalPropertyStore(dir, 10);
+        store.setProperties(transaction, "/a/b", Collections.singletonMap(COLOR, "red"),
+            Collections.emptyList()
+        );
+        store.setProperties(transaction, "/", Collections.singletonMap(COLOR, "blue"),
+            Collections.emptyList()
+        );
+
+        store.commit(transaction);
+        LocalPropertyStore reopened = new LocalPropertyStore(dir, 10);
+
+        assertThat(reopened.getProperties(null, "/a/b/")).containsEntry(COLOR, "red");
+        assertThat(reopened.getProperties(null, "/")).containsEntry(COLOR, "blue");
+        assertThat(reopened.getProperties(null, "/a")).isEmpty();
+    }
+
+    @Test
+    void copiesAndRemovesProperties() {
+
+        LocalPropertyStore store = new LocalPropertyStore(dir, 1);
+        store.setProperties(transaction, "/a/b", Collections.singletonMap(COLOR, "red"),
+            Collections.emptyList()
+        );
+        store.copyProperties(transaction, "/a/b", "/c/d");
+        store.removeProperties(transaction, "/a/b");
+        store.setProperties(transaction, "/c/d", Collections.emptyMap(),
+            Collections.singletonList("http://example.com/ns/:size")
+        );
+
+        assertThat(store.getProperties(transaction, "/a/b")).isEmpty();
+        assertThat(store.getProperties(transaction, "/c/d")).containsEntry(COLOR, "red");
+
+        store.setProperties(transaction, "/c/d", Collections.emptyMap(),
+            Collections.singletonList(COLOR)
+        );
+        store.commit(transaction);
+
+        assertThat(new LocalPropertyStore(dir, 1).getProperties(null, "/c/d")).isEmpty();
+    }
+
+    @Test
+    void appliesChangesOnCommitOnly() {
+
+        LocalPropertyStore store = new LocalPropertyStore(dir, 10);
+        store.setProperties(transaction, "/a/b", Collections.singletonMap(COLOR, "red"),
+            Collections.emptyList()
+        );
+        store.commit(transaction);
+        store.removeProperties(transaction, "/a");
+        store.setProperties(transaction, "/a/c", Collections.singletonMap(COLOR, "blue"),
+            Collections.emptyList()
+        );
+        Transaction other = () -> null;
+
+        assertThat(store.getProperties(transaction, "/a/b")).isEmpty();
+        assertThat(store.getProperties(transaction, "/a/c")).containsEntry(COLOR, "blue");
+        assertThat(store.getProperties(other, "/a/b")).containsEntry(COLOR, "red");
+        assertThat(store.getProperties(other, "/a/c")).isEmpty();
+
+        store.rollback(transaction);
+
+        assertThat(store.getProperties(transaction, "/a/b")).containsEntry(COLOR, "red");
+        assertThat(store.getProperties(transaction, "/a/c")).isEmpty();
+        assertThat(new LocalPropertyStore(dir, 10).getProperties(other, "/a/b"))
+            .containsEntry(COLOR, "red");
+    }
+
+}
@@ -0,0 +1,192 @@
+package org.drjekyll.webdav.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.drjekyll.webdav.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PackingStoreTest {
+
+    @TempDir
+    File root;
+
+    private PackingStore store;
+
+    private Transaction transaction;
+
+    @BeforeEach
+    void setUp() {
+        store = newStore();
+        transaction = store.begin(null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.destroy();
+    }
+
+    @Test
+    void packsSmallContentAndStoresLargeContentSeparately() throws Exception {
+
+        store.createFolder(transaction, "/folder");
+        put("/folder/small.txt", "hello");
+        put("/folder/large.txt", "content exceeding the threshold");
+        store.commit(transaction);
+
+        assertThat(store.getChildrenNames(transaction, "/folder"))
+            .containsExactly("large.txt", "small.txt");
+        assertThat(store.getResourceLength(transaction, "/folder/small.txt")).isEqualTo(5L);
+        assertContent("/folder/small.txt", "hello");
+        assertContent("/folder/large.txt", "content exceeding the threshold");
+        assertThat(new File(root, PackingStore.LARGE_DIR).list()).hasSize(1);
+    }
+
+    @Test
+    void replaysLogAndTruncatesTornRecord() throws Exception {
+
+        store.createFolder(transaction, "/folder");
+        put("/folder/a.txt", "a");
+        put("/folder/b.txt", "b");
+        store.removeObject(transaction, "/folder/b.txt");
+        store.commit(transaction);
+        File segment = new File(root, PackingStore.SEGMENTS_DIR).listFiles()[0];
+        long length = segment.length();
+        Files.write(segment.toPath(), new byte[] {0, 0, 0, 42, 1}, StandardOpenOption.APPEND);
+
+        // no checkpoint yet, the whole log is replayed
+        store = newStore();
+
+        assertThat(store.getChildrenNames(transaction, "/folder")).containsExactly("a.txt");
+        assertContent("/folder/a.txt", "a");
+        assertThat(segment.length()).isEqualTo(length);
+    }
+
+    @Test
+    void compactsOverwrittenContent() throws Exception {
+
+        for (int i = 0; i < 20; i++) {
+            put("/file.txt", "version" + i);
+        }
+        put("/other.txt", "kept");
+        int segments = store.getSegmentCount();
+
+        assertThat(store.compact()).isPositive();
+
+        assertThat(store.getSegmentCount()).isLessThan(segments);
+        assertContent("/file.txt", "version19");
+        assertContent("/other.txt", "kept");
+
+        store.destroy();
+        store = newStore();
+
+        assertThat(store.getChildrenNames(transaction, "/"))
+            .containsExactly("file.txt", "other.txt");
+        assertContent("/file.txt", "version19");
+    }
+
+    @Test
+    void compactsWhileWriting() throws Exception {
+
+        for (int i = 0; i < 20; i++) {
+            put("/file.txt", "version" + i);
+        }
+        AtomicInteger compacted = new AtomicInteger();
+        Thread compaction = new Thread(() -> {
+            try {
+                compacted.set(store.compact());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        compaction.start();
+        for (int i = 0; i < 20; i++) {
+            put("/other" + i + ".txt", "content" + i);
+        }
+        compaction.join();
+
+        assertThat(compacted.get()).isPositive();
+        store.destroy();
+        store = newStore();
+
+        assertContent("/file.txt", "version19");
+        for (int i = 0; i < 20; i++) {
+            assertContent("/other" + i + ".txt", "content" + i);
+        }
+    }
+
+    @Test
+    void keepsSegmentsOfLiveContent() throws Exception {
+
+        store.destroy();
+        store = new PackingStore(root, 64, 512L, Duration.ofHours(1L));
+        for (int i = 0; i < 50; i++) {
+            store.createResource(transaction, "/file" + i + ".txt");
+            put("/file" + i + ".txt", "content of thirty bytes, #" + (i % 10) + "..");
+        }
+        store.commit(transaction);
+
+        assertThat(store.getSegmentCount()).isGreaterThan(1);
+        assertThat(store.compact()).isZero();
+
+        store.createResource(transaction, "/empty.txt");
+        store.commit(transaction);
+        store.destroy();
+        store = newStore();
+
+        assertThat(store.getResourceLength(transaction, "/empty.txt")).isZero();
+        assertContent("/file49.txt", "content of thirty bytes, #9..");
+    }
+
+    @Test
+    void keepsResourcesCreatedWithoutContentPerTransaction() throws Exception {
+
+        Transaction other = store.begin(null);
+        store.createResource(transaction, "/pending.txt");
+        store.createResource(other, "/committed.txt");
+        store.commit(other);
+
+        store.rollback(transaction);
+
+        assertThat(store.getChildrenNames(transaction, "/")).containsExactly("committed.txt");
+
+        store.createResource(transaction, "/pending.txt");
+        store.destroy();
+        store = newStore();
+
+        assertThat(store.getChildrenNames(transaction, "/")).containsExactly("committed.txt");
+        assertThat(store.getResourceLength(transaction, "/committed.txt")).isZero();
+    }
+
+    private PackingStore newStore() {
+        return new PackingStore(root, 16, 128L, Duration.ofHours(1L));
+    }
+
+    private void put(String path, String content) {
+        store.setResourceContent(transaction,
+            path,
+            new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)),
+            null,
+            null
+        );
+    }
+
+    private void assertContent(String path, String expected) throws Exception {
+        try (InputStream content = store.getResourceContent(transaction, path)) {
+            assertThat(content).hasContent(expected);
+        }
+    }
+
+}